@@ -0,0 +1,60 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculateRewardsBenchmark {
+	@Param({ "10", "1000", "10000" })
+	public int historySize;
+
+	private RewardsService  rewardsService;
+	private User            user;
+	private VisitedLocation newLocation;
+
+	@Setup
+	public void setUp() {
+		rewardsService = Fixtures.rewardsService(new StubGpsUtil());
+		user = Fixtures.user(1, historySize);
+		newLocation = new VisitedLocation(user.getUserId(), StubGpsUtil.randomLocation(-1), new Date());
+		rewardsService.calculateRewards(user);
+	}
+
+	/**
+	 * Rescans the whole history, as after a catalog change.
+	 */
+	@Benchmark
+	public User recalculateRewards() {
+		return rewardsService.recalculateRewards(user);
+	}
+
+	/**
+	 * One tracking step: a new location is added and only that one is checked.
+	 * The history grows by one location per call.
+	 */
+	@Benchmark
+	public User calculateRewardsAfterNewLocation() {
+		user.addToVisitedLocations(newLocation);
+		return rewardsService.calculateRewards(user);
+	}
+}
@@ -0,0 +1,67 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import com.openclassrooms.tourguide.geo.DistanceKernel;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.service.RewardsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+	private RewardsService rewardsService;
+	private DistanceKernel kernel;
+	private Location[]     locations;
+	private int[]          indexes;
+	private double[]       distances;
+	private int            next;
+
+	@Setup
+	public void setUp() {
+		rewardsService = Fixtures.rewardsService(new StubGpsUtil());
+		locations = new Location[1024];
+		for (int i = 0; i < locations.length; i++) {
+			locations[i] = StubGpsUtil.randomLocation(i);
+		}
+		kernel = new DistanceKernel(Arrays.asList(locations));
+		indexes = new int[locations.length];
+		distances = new double[locations.length];
+	}
+
+	@Benchmark
+	public double getDistance() {
+		int i = next++ & (locations.length - 1);
+		return rewardsService.getDistance(locations[i], locations[(i + 1) & (locations.length - 1)]);
+	}
+
+	/**
+	 * One location against the 1024 others, most of them rejected by the bounding box.
+	 */
+	@Benchmark
+	public int withinMiles() {
+		int i = next++ & (locations.length - 1);
+		return kernel.withinMiles(locations[i], 500, indexes, distances);
+	}
+
+	@Benchmark
+	public double[] distancesMiles() {
+		int i = next++ & (locations.length - 1);
+		kernel.distancesMiles(locations[i], distances);
+		return distances;
+	}
+}
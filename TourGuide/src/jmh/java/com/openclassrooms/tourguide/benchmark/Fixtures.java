@@ -0,0 +1,52 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.helper.InternalUserGenerator;
+import com.openclassrooms.tourguide.persistence.UserSnapshotStore;
+import com.openclassrooms.tourguide.persistence.WriteAheadLog;
+import com.openclassrooms.tourguide.repository.InMemoryUserRepository;
+import com.openclassrooms.tourguide.rewardCentral.RewardPointsCache;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracker.TrackingEngine;
+import com.openclassrooms.tourguide.tracker.TrackingPipeline;
+import com.openclassrooms.tourguide.user.RetentionPolicy;
+import com.openclassrooms.tourguide.user.User;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Builds the services used by the benchmarks on top of the zero-latency stubs.
+ */
+final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	static RewardsService rewardsService(GpsUtil gpsUtil) {
+		// the stub answers at once, its calls run on the caller
+		return new RewardsService(gpsUtil, new RewardPointsCache(new StubRewardCentral(), Runnable::run));
+	}
+
+	static TourGuideService tourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, TrackingEngine trackingEngine) {
+		InternalTestHelper.setInternalUserNumber(0);
+		return new TourGuideService(gpsUtil, rewardsService, new StubTripPricer(), trackingEngine,
+				new TrackingPipeline(trackingEngine), new InMemoryUserRepository(), RetentionPolicy.unbounded(), new InternalUserGenerator(), UserSnapshotStore.disabled(),
+				WriteAheadLog.disabled());
+	}
+
+	/**
+	 * Creates a user with a reproducible location history of the given size.
+	 */
+	static User user(int index, int historySize) {
+		User user = new User(new UUID(0, index), "user" + index, "000", "user" + index + "@tourGuide.com");
+		for (int i = 0; i < historySize; i++) {
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(),
+					StubGpsUtil.randomLocation(31L * index + i), new Date(i * 300_000L)));
+		}
+		return user;
+	}
+}
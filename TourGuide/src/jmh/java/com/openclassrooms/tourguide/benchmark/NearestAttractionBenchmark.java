@@ -0,0 +1,53 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.models.ClosestAttractionsDTO;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NearestAttractionBenchmark {
+	// 0 is the real catalog of 26 attractions
+	@Param({ "0", "10000" })
+	public int attractionCount;
+
+	private RewardsService rewardsService;
+	private User           user;
+	private Location[]     locations;
+	private int            next;
+
+	@Setup
+	public void setUp() {
+		rewardsService = Fixtures.rewardsService(new StubGpsUtil(attractionCount));
+		user = Fixtures.user(0, 0);
+		// a small set of locations, so the reward points of their neighbours end up cached
+		locations = new Location[64];
+		for (int i = 0; i < locations.length; i++) {
+			locations[i] = StubGpsUtil.randomLocation(i);
+		}
+	}
+
+	@Benchmark
+	public List<ClosestAttractionsDTO> getTopFiveNearestAttraction() {
+		return rewardsService.getTopFiveNearestAttraction(user, locations[next++ & (locations.length - 1)]);
+	}
+}
@@ -0,0 +1,68 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * GpsUtil without rate limiter nor simulated network latency.
+ * The attraction catalog is the real one, or a random one of the requested size.
+ */
+public class StubGpsUtil extends GpsUtil {
+	private final List<Attraction> attractions;
+
+	public StubGpsUtil() {
+		this(0);
+	}
+
+	/**
+	 * @param attractionCount size of a random catalog, or 0 for the real catalog
+	 */
+	public StubGpsUtil(int attractionCount) {
+		attractions = attractionCount == 0 ? super.getAttractions() : randomAttractions(attractionCount);
+	}
+
+	@Override
+	public VisitedLocation getUserLocation(UUID userId) {
+		return new VisitedLocation(userId, randomLocation(ThreadLocalRandom.current().nextLong()), new Date());
+	}
+
+	@Override
+	public Map<UUID, VisitedLocation> getUserLocations(Collection<UUID> userIds) {
+		Map<UUID, VisitedLocation> visitedLocations = new LinkedHashMap<>();
+		for (UUID userId : userIds) {
+			visitedLocations.put(userId, getUserLocation(userId));
+		}
+		return visitedLocations;
+	}
+
+	@Override
+	public List<Attraction> getAttractions() {
+		return new ArrayList<>(attractions);
+	}
+
+	public static Location randomLocation(long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		return new Location(random.nextDouble(-85.05112878, 85.05112878), random.nextDouble(-180.0, 180.0));
+	}
+
+	private static List<Attraction> randomAttractions(int count) {
+		List<Attraction> attractions = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Location location = randomLocation(i);
+			attractions.add(new Attraction("Attraction" + i, "City", "ST", location.latitude, location.longitude));
+		}
+		return attractions;
+	}
+}
@@ -0,0 +1,16 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import com.openclassrooms.tourguide.rewardCentral.RewardCentral;
+
+import java.util.UUID;
+
+/**
+ * RewardCentral without simulated network latency.
+ */
+public class StubRewardCentral extends RewardCentral {
+
+	@Override
+	public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+		return 1 + Math.floorMod(attractionId.hashCode() ^ userId.hashCode(), 999);
+	}
+}
@@ -0,0 +1,24 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import com.openclassrooms.tourguide.tripPricer.Provider;
+import com.openclassrooms.tourguide.tripPricer.TripPricer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * TripPricer without simulated network latency.
+ */
+public class StubTripPricer extends TripPricer {
+
+	@Override
+	public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay, int rewardsPoints) {
+		List<Provider> providers = new ArrayList<>(5);
+		for (int i = 0; i < 5; i++) {
+			double price = Math.max(0, (100 + 100 * i) * adults + 0.99 - rewardsPoints);
+			providers.add(new Provider(attractionId, getProviderName(apiKey, i + 1), price));
+		}
+		return providers;
+	}
+}
@@ -0,0 +1,77 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracker.SweepReport;
+import com.openclassrooms.tourguide.tracker.TrackingEngine;
+import com.openclassrooms.tourguide.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk tracking of many users. With zero-latency stubs this measures the overhead
+ * of the executors and of the per-user bookkeeping. Every call adds one location per user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrackingBenchmark {
+	@Param({ "10000" })
+	public int userCount;
+
+	@Param({ "VIRTUAL_THREAD_PER_TASK", "FIXED_THREAD_POOL" })
+	public TrackingEngine.ExecutorMode executorMode;
+
+	private TrackingEngine   trackingEngine;
+	private TourGuideService tourGuideService;
+	private List<User>       users;
+
+	@Setup
+	public void setUp() {
+		GpsUtil gpsUtil = new StubGpsUtil();
+		trackingEngine = new TrackingEngine(executorMode, TrackingEngine.DEFAULT_POOL_SIZE, TrackingEngine.DEFAULT_MAX_IN_FLIGHT);
+		tourGuideService = Fixtures.tourGuideService(gpsUtil, Fixtures.rewardsService(gpsUtil), trackingEngine);
+		users = new ArrayList<>(userCount);
+		for (int i = 0; i < userCount; i++) {
+			User user = Fixtures.user(i, 3);
+			users.add(user);
+			tourGuideService.addUser(user);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		tourGuideService.tracker.stopTracking();
+		trackingEngine.close();
+	}
+
+	@Benchmark
+	public Map<UUID, VisitedLocation> trackAllUsersLocation() {
+		return tourGuideService.trackAllUsersLocation(users);
+	}
+
+	@Benchmark
+	public SweepReport trackUsersLocation() {
+		return tourGuideService.trackUsersLocation(tourGuideService.getUserRepository().findAll());
+	}
+}
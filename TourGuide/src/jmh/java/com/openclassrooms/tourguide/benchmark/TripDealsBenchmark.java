@@ -0,0 +1,49 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracker.TrackingEngine;
+import com.openclassrooms.tourguide.tripPricer.Provider;
+import com.openclassrooms.tourguide.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TripDealsBenchmark {
+	private TourGuideService tourGuideService;
+	private User             user;
+
+	@Setup
+	public void setUp() {
+		GpsUtil gpsUtil = new StubGpsUtil();
+		tourGuideService = Fixtures.tourGuideService(gpsUtil, Fixtures.rewardsService(gpsUtil), new TrackingEngine());
+		user = Fixtures.user(3, 0);
+	}
+
+	@TearDown
+	public void tearDown() {
+		tourGuideService.tracker.stopTracking();
+	}
+
+	@Benchmark
+	public List<Provider> getTripDeals() {
+		return tourGuideService.getTripDeals(user);
+	}
+}
@@ -0,0 +1,52 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserReward;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserRewardBenchmark {
+	@Param({ "1", "26", "1000" })
+	public int rewardCount;
+
+	private User       user;
+	private UserReward reward;
+
+	@Setup
+	public void setUp() {
+		List<Attraction> attractions = new StubGpsUtil(rewardCount + 1).getAttractions();
+		user = Fixtures.user(2, 0);
+		VisitedLocation visitedLocation = new VisitedLocation(user.getUserId(), attractions.get(0), new Date());
+		for (int i = 0; i < rewardCount; i++) {
+			user.getUserRewards().add(new UserReward(visitedLocation, attractions.get(i), 10));
+		}
+		reward = new UserReward(visitedLocation, attractions.get(rewardCount), 10);
+	}
+
+	@Benchmark
+	public User addUserReward() {
+		user.addUserReward(reward);
+		return user;
+	}
+}
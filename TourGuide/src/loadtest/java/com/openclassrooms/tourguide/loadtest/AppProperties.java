@@ -0,0 +1,90 @@
+package com.openclassrooms.tourguide.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Settings of TourGuide read from the application.properties of the classpath, as the application reads them,
+ * so the load simulator sizes its executors, caches and stages the same way.
+ * A setting can be overridden with a system property of the same name, e.g. -Dtourguide.executors.rewards.pool-size=400.
+ */
+final class AppProperties {
+	private static final String RESOURCE = "application.properties";
+
+	private final Properties properties;
+
+	private AppProperties(Properties properties) {
+		this.properties = properties;
+	}
+
+	static AppProperties load() {
+		Properties properties;
+		try {
+			properties = PropertiesLoaderUtils.loadAllProperties(RESOURCE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read " + RESOURCE, e);
+		}
+		if (properties.isEmpty()) {
+			throw new IllegalStateException(RESOURCE + " is not on the classpath");
+		}
+		for (String name : properties.stringPropertyNames()) {
+			String override = System.getProperty(name);
+			if (override != null) {
+				properties.setProperty(name, override);
+			}
+		}
+		return new AppProperties(properties);
+	}
+
+	String get(String name) {
+		String value = properties.getProperty(name);
+		if (value == null) {
+			throw new IllegalArgumentException("Missing setting " + name + " in " + RESOURCE);
+		}
+		return value.trim();
+	}
+
+	int getInt(String name) {
+		return Integer.parseInt(get(name));
+	}
+
+	long getLong(String name) {
+		return Long.parseLong(get(name));
+	}
+
+	double getDouble(String name) {
+		return Double.parseDouble(get(name));
+	}
+
+	boolean getBoolean(String name) {
+		return Boolean.parseBoolean(get(name));
+	}
+
+	Duration getDuration(String name) {
+		return DurationStyle.detectAndParse(get(name));
+	}
+
+	<E extends Enum<E>> E getEnum(String name, Class<E> type) {
+		return Enum.valueOf(type, get(name));
+	}
+
+	/**
+	 * The tourguide settings, written to the report with the simulation settings.
+	 */
+	Map<String, String> asMap() {
+		Map<String, String> map = new TreeMap<>();
+		for (String name : properties.stringPropertyNames()) {
+			if (name.startsWith("tourguide.")) {
+				map.put(name, get(name));
+			}
+		}
+		return map;
+	}
+}
@@ -0,0 +1,87 @@
+package com.openclassrooms.tourguide.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a report with the report of a previous run: a throughput lower, or a latency or pause higher,
+ * than the baseline by more than the tolerance is a regression.
+ * Latencies which moved by less than a millisecond are ignored, they are within the noise of a run.
+ */
+public class BaselineComparison {
+	private static final double MIN_LATENCY_DELTA_MILLIS = 1;
+
+	private final double                    tolerance;
+	private final List<Map<String, Object>> regressions = new ArrayList<>();
+	private final List<Map<String, Object>> improvements = new ArrayList<>();
+
+	public BaselineComparison(JsonNode baseline, JsonNode current, double tolerance) {
+		this.tolerance = tolerance;
+		compareHigherIsBetter(baseline, current, "/phases/trackAllUsers/usersPerSecond");
+		compareHigherIsBetter(baseline, current, "/phases/rewardsAllUsers/usersPerSecond");
+		compareHigherIsBetter(baseline, current, "/phases/mix/throughput");
+		JsonNode operations = current.at("/phases/mix/operations");
+		for (Iterator<String> names = operations.fieldNames(); names.hasNext(); ) {
+			String prefix = "/phases/mix/operations/" + names.next();
+			compareHigherIsBetter(baseline, current, prefix + "/throughput");
+			compareLowerIsBetter(baseline, current, prefix + "/latencyMillis/p95");
+			compareLowerIsBetter(baseline, current, prefix + "/latencyMillis/p99");
+		}
+		compareLowerIsBetter(baseline, current, "/gc/maxPauseMillis");
+	}
+
+	public boolean hasRegressions() {
+		return !regressions.isEmpty();
+	}
+
+	public List<Map<String, Object>> getRegressions() {
+		return regressions;
+	}
+
+	/**
+	 * @return Map<String, Object> the comparison, as written in the report
+	 */
+	public Map<String, Object> toReport() {
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("tolerance", tolerance);
+		report.put("regressions", regressions);
+		report.put("improvements", improvements);
+		return report;
+	}
+
+	private void compareHigherIsBetter(JsonNode baseline, JsonNode current, String metric) {
+		compare(baseline, current, metric, true);
+	}
+
+	private void compareLowerIsBetter(JsonNode baseline, JsonNode current, String metric) {
+		compare(baseline, current, metric, false);
+	}
+
+	private void compare(JsonNode baseline, JsonNode current, String metric, boolean higherIsBetter) {
+		JsonNode before = baseline.at(metric);
+		JsonNode after = current.at(metric);
+		if (!before.isNumber() || !after.isNumber() || before.asDouble() == 0) {
+			return;
+		}
+		double change = (after.asDouble() - before.asDouble()) / before.asDouble();
+		boolean latency = !higherIsBetter && Math.abs(after.asDouble() - before.asDouble()) < MIN_LATENCY_DELTA_MILLIS;
+		if (Math.abs(change) <= tolerance || latency) {
+			return;
+		}
+		Map<String, Object> difference = new LinkedHashMap<>();
+		difference.put("metric", metric);
+		difference.put("baseline", before.asDouble());
+		difference.put("current", after.asDouble());
+		difference.put("change", OperationStats.round(change));
+		if ((change < 0) == higherIsBetter) {
+			regressions.add(difference);
+		} else {
+			improvements.add(difference);
+		}
+	}
+}
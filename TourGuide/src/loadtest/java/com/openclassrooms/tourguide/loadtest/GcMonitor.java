@@ -0,0 +1,125 @@
+package com.openclassrooms.tourguide.loadtest;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.HdrHistogram.Histogram;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records the garbage collections while it is started: the duration of every pause,
+ * and an estimate of the bytes allocated, the heap used before each collection minus the heap left after the previous one.
+ * The collections of the concurrent collectors which do not stop the application, their cycles, are not counted as pauses.
+ */
+public class GcMonitor implements NotificationListener, AutoCloseable {
+	private final List<NotificationEmitter> emitters = new ArrayList<>();
+	private final Set<String>               heapPools = new HashSet<>();
+	private final Histogram                 pauseMillis = new Histogram(3);
+	private long                            collectionCount;
+	private long                            heapUsedAfterLastCollection;
+	private long                            allocatedBytes;
+	private long                            startNanos;
+	private long                            stopNanos;
+
+	public synchronized void start() {
+		pauseMillis.reset();
+		collectionCount = 0;
+		allocatedBytes = 0;
+		heapUsedAfterLastCollection = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		startNanos = System.nanoTime();
+		stopNanos = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				heapPools.add(pool.getName());
+			}
+		}
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (collector instanceof NotificationEmitter) {
+				NotificationEmitter emitter = (NotificationEmitter) collector;
+				emitter.addNotificationListener(this, null, null);
+				emitters.add(emitter);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		for (NotificationEmitter emitter : emitters) {
+			try {
+				emitter.removeNotificationListener(this);
+			} catch (ListenerNotFoundException e) {
+				// already removed
+			}
+		}
+		emitters.clear();
+		if (stopNanos == 0) {
+			stopNanos = System.nanoTime();
+			allocatedBytes += Math.max(0, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() - heapUsedAfterLastCollection);
+		}
+	}
+
+	@Override
+	public synchronized void handleNotification(Notification notification, Object handback) {
+		if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+			return;
+		}
+		GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+		long before = heapUsed(info.getGcInfo().getMemoryUsageBeforeGc());
+		long after = heapUsed(info.getGcInfo().getMemoryUsageAfterGc());
+		allocatedBytes += Math.max(0, before - heapUsedAfterLastCollection);
+		heapUsedAfterLastCollection = after;
+		collectionCount++;
+		if (!info.getGcName().contains("Cycles") && !info.getGcAction().contains("cycle")) {
+			pauseMillis.recordValue(info.getGcInfo().getDuration());
+		}
+	}
+
+	/**
+	 * @return Map<String, Object> the collections recorded, as written in the report
+	 */
+	public synchronized Map<String, Object> toReport() {
+		double seconds = Math.max(1, (stopNanos == 0 ? System.nanoTime() : stopNanos) - startNanos) / 1e9;
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("collectors", ManagementFactory.getGarbageCollectorMXBeans().stream().map(GarbageCollectorMXBean::getName).toArray());
+		report.put("collections", collectionCount);
+		report.put("pauses", pauseMillis.getTotalCount());
+		report.put("totalPauseMillis", totalPauseMillis());
+		report.put("p99PauseMillis", pauseMillis.getValueAtPercentile(99));
+		report.put("maxPauseMillis", pauseMillis.getMaxValue());
+		report.put("allocatedBytes", allocatedBytes);
+		report.put("allocationRateBytesPerSecond", Math.round(allocatedBytes / seconds));
+		return report;
+	}
+
+	private long totalPauseMillis() {
+		long total = 0;
+		for (var value : pauseMillis.recordedValues()) {
+			total += value.getValueIteratedTo() * value.getCountAtValueIteratedTo();
+		}
+		return total;
+	}
+
+	private long heapUsed(Map<String, MemoryUsage> pools) {
+		long used = 0;
+		for (Map.Entry<String, MemoryUsage> pool : pools.entrySet()) {
+			if (heapPools.contains(pool.getKey())) {
+				used += pool.getValue().getUsed();
+			}
+		}
+		return used;
+	}
+}
@@ -0,0 +1,128 @@
+package com.openclassrooms.tourguide.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a simulated remote dependency, parsed from one of:
+ * <ul>
+ * <li>{@code real}: the real dependency, with its own latency and rate limits</li>
+ * <li>{@code none}: no latency at all</li>
+ * <li>{@code fixed:20ms}: always the same latency</li>
+ * <li>{@code uniform:1ms-1s}: uniformly distributed between two latencies</li>
+ * <li>{@code lognormal:50ms:1s}: log-normally distributed, with the given median and 99th percentile</li>
+ * </ul>
+ */
+public final class LatencyProfile {
+	// the 99th percentile of the standard normal distribution
+	private static final double NORMAL_P99 = 2.3263478740408408;
+
+	private enum Kind { REAL, NONE, FIXED, UNIFORM, LOGNORMAL }
+
+	private final String spec;
+	private final Kind   kind;
+	private final long   firstNanos;
+	private final long   secondNanos;
+	private final double sigma;
+
+	private LatencyProfile(String spec, Kind kind, long firstNanos, long secondNanos) {
+		this.spec = spec;
+		this.kind = kind;
+		this.firstNanos = firstNanos;
+		this.secondNanos = secondNanos;
+		this.sigma = kind == Kind.LOGNORMAL ? Math.log((double) secondNanos / firstNanos) / NORMAL_P99 : 0;
+	}
+
+	public static LatencyProfile parse(String spec) {
+		String[] parts = spec.trim().split(":", 2);
+		String kind = parts[0].toLowerCase();
+		try {
+			switch (kind) {
+				case "real":
+					return new LatencyProfile(spec, Kind.REAL, 0, 0);
+				case "none":
+					return new LatencyProfile(spec, Kind.NONE, 0, 0);
+				case "fixed":
+					return new LatencyProfile(spec, Kind.FIXED, nanos(parts[1]), 0);
+				case "uniform": {
+					String[] bounds = parts[1].split("-", 2);
+					long min = nanos(bounds[0]);
+					long max = nanos(bounds[1]);
+					if (max < min) {
+						throw new IllegalArgumentException("the maximum is below the minimum");
+					}
+					return new LatencyProfile(spec, Kind.UNIFORM, min, max);
+				}
+				case "lognormal": {
+					String[] percentiles = parts[1].split(":", 2);
+					long median = nanos(percentiles[0]);
+					long p99 = nanos(percentiles[1]);
+					if (median <= 0 || p99 < median) {
+						throw new IllegalArgumentException("the median must be positive and not above the 99th percentile");
+					}
+					return new LatencyProfile(spec, Kind.LOGNORMAL, median, p99);
+				}
+				default:
+					throw new IllegalArgumentException("unknown kind " + kind);
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Invalid latency profile " + spec + ": missing latencies");
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid latency profile " + spec + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return boolean true if the real dependency is used instead of a simulated one
+	 */
+	public boolean isReal() {
+		return kind == Kind.REAL;
+	}
+
+	/**
+	 * @return long a latency drawn from the profile, in nanoseconds
+	 */
+	public long nextNanos() {
+		switch (kind) {
+			case FIXED:
+				return firstNanos;
+			case UNIFORM:
+				return firstNanos == secondNanos ? firstNanos : ThreadLocalRandom.current().nextLong(firstNanos, secondNanos + 1);
+			case LOGNORMAL:
+				return (long) (firstNanos * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Sleeps for a latency drawn from the profile.
+	 */
+	public void pause() {
+		long nanos = nextNanos();
+		if (nanos <= 0) {
+			return;
+		}
+		try {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return spec;
+	}
+
+	private static long nanos(String duration) {
+		Duration parsed = DurationStyle.detectAndParse(duration.trim());
+		if (parsed.isNegative()) {
+			throw new IllegalArgumentException("negative latency " + duration);
+		}
+		return parsed.toNanos();
+	}
+}
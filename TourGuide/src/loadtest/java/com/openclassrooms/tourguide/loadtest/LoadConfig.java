@@ -0,0 +1,197 @@
+package com.openclassrooms.tourguide.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Settings of a load simulation, read from {@code --name=value} arguments.
+ * Every setting has a default, see {@link #DEFAULTS}.
+ */
+public final class LoadConfig {
+	public static final int MAX_USERS = 1_000_000;
+
+	public static final String TRACK_ALL   = "track-all";
+	public static final String REWARDS_ALL = "rewards-all";
+	public static final String MIX         = "mix";
+
+	static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+	static {
+		// users generated from the seed, internalUser0 to internalUser[users - 1]
+		DEFAULTS.put("users", "100000");
+		DEFAULTS.put("seed", "42");
+		// track-all: locates every user once, rewards-all: calculates the rewards of every user once,
+		// mix: runs the controller calls of the mix for the duration
+		DEFAULTS.put("phases", TRACK_ALL + "," + REWARDS_ALL + "," + MIX);
+		DEFAULTS.put("track-all-budget", "15m");
+		DEFAULTS.put("rewards-all-budget", "20m");
+		DEFAULTS.put("duration", "60s");
+		DEFAULTS.put("warmup", "10s");
+		DEFAULTS.put("clients", "64");
+		DEFAULTS.put("think-time", "0ms");
+		DEFAULTS.put("mix", "getLocation:40,getNearbyAttractions:30,getRewards:15,getTripDeals:10,getLeaderboard:5");
+		// compact responses of getNearbyAttractions and getRewards
+		DEFAULTS.put("compact", "false");
+		// the Tracker sweeps all the users in the background during the mix
+		DEFAULTS.put("tracking", "true");
+		DEFAULTS.put("gps-latency", "real");
+		DEFAULTS.put("reward-central-latency", "real");
+		DEFAULTS.put("trip-pricer-latency", "real");
+		DEFAULTS.put("report", "target/loadtest/report.json");
+		// report of a previous run, the run fails if it is worse by more than the tolerance
+		DEFAULTS.put("baseline", "");
+		DEFAULTS.put("tolerance", "0.10");
+	}
+
+	private final Map<String, String> values;
+
+	private LoadConfig(Map<String, String> values) {
+		this.values = values;
+	}
+
+	public static LoadConfig parse(String[] args) {
+		Map<String, String> values = new LinkedHashMap<>(DEFAULTS);
+		for (String arg : args) {
+			if (arg.isBlank()) {
+				continue;
+			}
+			int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0) {
+				throw new IllegalArgumentException("Expected --name=value, got " + arg);
+			}
+			String name = arg.substring(2, equals);
+			if (!DEFAULTS.containsKey(name)) {
+				throw new IllegalArgumentException("Unknown setting " + name + ", expected one of " + DEFAULTS.keySet());
+			}
+			values.put(name, arg.substring(equals + 1));
+		}
+		LoadConfig config = new LoadConfig(values);
+		if (config.getUsers() < 1 || config.getUsers() > MAX_USERS) {
+			throw new IllegalArgumentException("users must be between 1 and " + MAX_USERS);
+		}
+		if (config.getClients() < 1) {
+			throw new IllegalArgumentException("clients must be positive");
+		}
+		config.getMix();
+		config.getGpsLatency();
+		config.getRewardCentralLatency();
+		config.getTripPricerLatency();
+		return config;
+	}
+
+	public int getUsers() {
+		return Integer.parseInt(values.get("users"));
+	}
+
+	public long getSeed() {
+		return Long.parseLong(values.get("seed"));
+	}
+
+	public Set<String> getPhases() {
+		return Arrays.stream(values.get("phases").split(","))
+				.map(String::trim)
+				.filter(phase -> !phase.isEmpty())
+				.collect(Collectors.toCollection(LinkedHashSet::new));
+	}
+
+	public Duration getTrackAllBudget() {
+		return duration("track-all-budget");
+	}
+
+	public Duration getRewardsAllBudget() {
+		return duration("rewards-all-budget");
+	}
+
+	public Duration getDuration() {
+		return duration("duration");
+	}
+
+	public Duration getWarmup() {
+		return duration("warmup");
+	}
+
+	public int getClients() {
+		return Integer.parseInt(values.get("clients"));
+	}
+
+	public Duration getThinkTime() {
+		return duration("think-time");
+	}
+
+	/**
+	 * @return Map<String, Integer> weight of every controller call, in the order given
+	 */
+	public Map<String, Integer> getMix() {
+		Map<String, Integer> mix = new LinkedHashMap<>();
+		for (String entry : values.get("mix").split(",")) {
+			String[] parts = entry.trim().split(":");
+			if (parts.length != 2 || !LoadSimulator.OPERATIONS.contains(parts[0])) {
+				throw new IllegalArgumentException("Invalid mix entry " + entry + ", expected one of "
+						+ LoadSimulator.OPERATIONS + " followed by :weight");
+			}
+			int weight = Integer.parseInt(parts[1]);
+			if (weight < 0) {
+				throw new IllegalArgumentException("Negative weight in mix entry " + entry);
+			}
+			mix.put(parts[0], weight);
+		}
+		if (mix.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+			throw new IllegalArgumentException("The mix has no call");
+		}
+		return mix;
+	}
+
+	public boolean isTracking() {
+		return Boolean.parseBoolean(values.get("tracking"));
+	}
+
+	public boolean isCompact() {
+		return Boolean.parseBoolean(values.get("compact"));
+	}
+
+	public LatencyProfile getGpsLatency() {
+		return LatencyProfile.parse(values.get("gps-latency"));
+	}
+
+	public LatencyProfile getRewardCentralLatency() {
+		return LatencyProfile.parse(values.get("reward-central-latency"));
+	}
+
+	public LatencyProfile getTripPricerLatency() {
+		return LatencyProfile.parse(values.get("trip-pricer-latency"));
+	}
+
+	public Path getReport() {
+		return Path.of(values.get("report"));
+	}
+
+	/**
+	 * @return Path of the baseline report, or null if there is none
+	 */
+	public Path getBaseline() {
+		String baseline = values.get("baseline");
+		return baseline.isBlank() ? null : Path.of(baseline);
+	}
+
+	public double getTolerance() {
+		return Double.parseDouble(values.get("tolerance"));
+	}
+
+	/**
+	 * @return Map<String, String> every setting, to be written in the report
+	 */
+	public Map<String, String> asMap() {
+		return new LinkedHashMap<>(values);
+	}
+
+	private Duration duration(String name) {
+		return DurationStyle.detectAndParse(values.get(name));
+	}
+}
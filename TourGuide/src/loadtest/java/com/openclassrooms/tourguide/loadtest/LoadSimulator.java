@@ -0,0 +1,485 @@
+package com.openclassrooms.tourguide.loadtest;
+
+import ch.qos.logback.classic.Level;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.openclassrooms.tourguide.TourGuideController;
+import com.openclassrooms.tourguide.executor.BoundedExecutor;
+import com.openclassrooms.tourguide.export.ResponseSerializers;
+import com.openclassrooms.tourguide.export.UserExporter;
+import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.helper.InternalUserGenerator;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+import com.openclassrooms.tourguide.persistence.UserSnapshotStore;
+import com.openclassrooms.tourguide.persistence.WriteAheadLog;
+import com.openclassrooms.tourguide.repository.InMemoryUserRepository;
+import com.openclassrooms.tourguide.rewardCentral.ResilientRewardCentral;
+import com.openclassrooms.tourguide.rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.rewardCentral.RewardPointsCache;
+import com.openclassrooms.tourguide.service.RewardsBatchReport;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracker.TrackingEngine;
+import com.openclassrooms.tourguide.tracker.TrackingPipeline;
+import com.openclassrooms.tourguide.tripPricer.TripPricer;
+import com.openclassrooms.tourguide.user.RetentionPolicy;
+import com.openclassrooms.tourguide.user.User;
+import org.apache.commons.lang3.time.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.MappingJacksonValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Capacity test of TourGuide on one machine, run with the loadtest Maven profile, see the readme.
+ * The services are wired as in TourGuideModule, with the internal users and the settings of application.properties,
+ * see {@link AppProperties}, and the remote dependencies either real or simulated with a latency profile.
+ * It runs the phases asked for:
+ * <ul>
+ * <li>track-all: locates every user once, which must fit in the track-all budget</li>
+ * <li>rewards-all: calculates the rewards of every user, after a visit to an attraction, which must fit in the rewards-all budget</li>
+ * <li>mix: clients call the TourGuideController in a loop for the duration, picking the calls by weight,
+ * while the Tracker sweeps the users in the background. The controller is called in process, its answers are
+ * serialized to JSON as the servlet would, and discarded</li>
+ * </ul>
+ * The throughputs, latency percentiles, garbage collections and allocation rate are written as JSON to the report file.
+ * The run exits with status 1 when a budget is exceeded, a user got no reward, or the report regresses from the baseline.
+ */
+public class LoadSimulator {
+	public static final Set<String> OPERATIONS = Set.of(
+			"getLocation", "getNearbyAttractions", "getRewards", "getTripDeals", "getLeaderboard");
+
+	private static final int LEADERBOARD_SIZE = 10;
+
+	private final Logger              logger = LoggerFactory.getLogger(LoadSimulator.class);
+	private final LoadConfig          config;
+	private final GpsUtil             gpsUtil;
+	private final RewardsService      rewardsService;
+	private final TourGuideService    tourGuideService;
+	private final TourGuideController controller;
+	private final List<AutoCloseable> resources = new ArrayList<>();
+	private final List<String>        failures = new ArrayList<>();
+	private final ObjectMapper        responseMapper = new ObjectMapper().registerModule(ResponseSerializers.module());
+
+	LoadSimulator(LoadConfig config, AppProperties properties) {
+		this.config = config;
+		gpsUtil = config.getGpsLatency().isReal() ? new GpsUtil() : new SimulatedGpsUtil(config.getGpsLatency());
+		RewardCentral rewardCentral = config.getRewardCentralLatency().isReal()
+				? new RewardCentral() : new SimulatedRewardCentral(config.getRewardCentralLatency());
+		TripPricer tripPricer = config.getTripPricerLatency().isReal()
+				? new TripPricer() : new SimulatedTripPricer(config.getTripPricerLatency());
+
+		Duration shutdownTimeout = properties.getDuration("tourguide.executors.shutdown-timeout");
+		BoundedExecutor gpsExecutor = executor(properties, "gps", shutdownTimeout);
+		BoundedExecutor rewardsExecutor = executor(properties, "rewards", shutdownTimeout);
+		BoundedExecutor pricingExecutor = executor(properties, "pricing", shutdownTimeout);
+		BoundedExecutor cpuExecutor = executor(properties, "cpu", shutdownTimeout);
+		BoundedExecutor requestExecutor = register(new BoundedExecutor("request",
+				properties.getInt("tourguide.requests.pool-size"), properties.getInt("tourguide.requests.queue-capacity"),
+				BoundedExecutor.RejectionPolicy.ABORT, shutdownTimeout));
+
+		RewardPointsCache rewardPointsCache = new RewardPointsCache(
+				new ResilientRewardCentral(rewardCentral, rewardsExecutor,
+						properties.getDuration("tourguide.reward-central.call-timeout"),
+						properties.getDouble("tourguide.reward-central.hedge-percentile"),
+						properties.getDuration("tourguide.reward-central.min-hedge-delay"),
+						properties.getInt("tourguide.reward-central.max-concurrent-calls")),
+				properties.getLong("tourguide.reward-points.cache.maximum-size"),
+				properties.getDuration("tourguide.reward-points.cache.time-to-live"),
+				properties.getDuration("tourguide.reward-points.cache.refresh-after"), rewardsExecutor);
+		rewardsService = new RewardsService(gpsUtil, rewardPointsCache, TourGuideMetrics.noop(), WriteAheadLog.disabled());
+		Duration rewardPointsBudget = properties.getDuration("tourguide.rewards.points-budget");
+		rewardsService.setRewardPointsBudget(rewardPointsBudget.isZero() ? null : rewardPointsBudget);
+		rewardsService.setBatchExecutor(cpuExecutor);
+		rewardsService.setNearestAttractionsCache(properties.getDouble("tourguide.nearest-attractions.cache.cell-degrees"),
+				properties.getLong("tourguide.nearest-attractions.cache.maximum-size"));
+
+		TrackingEngine trackingEngine = register(trackingEngine(properties, gpsExecutor));
+		TrackingPipeline trackingPipeline = register(new TrackingPipeline(trackingEngine,
+				properties.getInt("tourguide.pipeline.rewards.concurrency"),
+				properties.getInt("tourguide.pipeline.rewards.queue-capacity"),
+				properties.getBoolean("tourguide.pipeline.trip-deals.enabled"), pricingExecutor,
+				properties.getInt("tourguide.pipeline.trip-deals.concurrency"),
+				properties.getInt("tourguide.pipeline.trip-deals.queue-capacity")));
+
+		InternalTestHelper.setInternalUserNumber(config.getUsers());
+		// the users of the seed of the simulation, all generated before the phases start
+		tourGuideService = new TourGuideService(gpsUtil, rewardsService, tripPricer, trackingEngine, trackingPipeline,
+				new InMemoryUserRepository(properties.getInt("tourguide.users.stripe-count")),
+				new RetentionPolicy(properties.getInt("tourguide.history.raw-capacity"),
+						properties.getDuration("tourguide.history.bucket-duration"),
+						properties.getInt("tourguide.history.bucket-capacity")),
+				new InternalUserGenerator(config.getSeed(), InternalUserGenerator.Initialization.EAGER),
+				UserSnapshotStore.disabled(), WriteAheadLog.disabled());
+		// the mix runs its own sweeps, without the five minutes pause of the Tracker
+		tourGuideService.tracker.stopTracking();
+		controller = new TourGuideController(tourGuideService, requestExecutor, properties.getDuration("tourguide.requests.timeout"),
+				new UserExporter(new ObjectMapper()));
+	}
+
+	public static void main(String[] args) throws Exception {
+		setLogLevel(Level.INFO);
+		LoadConfig config = LoadConfig.parse(args);
+		System.exit(run(config));
+	}
+
+	/**
+	 * This method is used to run a simulation and write its report.
+	 * @param config
+	 * @return int the exit status, 1 if the run failed a budget or regressed from the baseline
+	 */
+	static int run(LoadConfig config) throws IOException {
+		ObjectMapper objectMapper = new ObjectMapper();
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("startedAt", Instant.now().toString());
+		report.put("config", config.asMap());
+		report.put("environment", environment());
+
+		AppProperties properties = AppProperties.load();
+		report.put("properties", properties.asMap());
+
+		StopWatch setup = StopWatch.createStarted();
+		LoadSimulator simulator = new LoadSimulator(config, properties);
+		report.put("setupMillis", setup.getTime());
+
+		try (GcMonitor gcMonitor = new GcMonitor()) {
+			gcMonitor.start();
+			report.put("phases", simulator.runPhases());
+			gcMonitor.close();
+			report.put("gc", gcMonitor.toReport());
+		} finally {
+			simulator.close();
+		}
+
+		Path baselinePath = config.getBaseline();
+		if (baselinePath != null) {
+			JsonNode baseline = objectMapper.readTree(baselinePath.toFile());
+			BaselineComparison comparison = new BaselineComparison(baseline, objectMapper.valueToTree(report), config.getTolerance());
+			report.put("comparison", comparison.toReport());
+			comparison.getRegressions().forEach(regression -> simulator.failures.add("Regression " + regression));
+		}
+		report.put("failures", simulator.failures);
+
+		Path reportPath = config.getReport();
+		if (reportPath.getParent() != null) {
+			Files.createDirectories(reportPath.getParent());
+		}
+		objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportPath.toFile(), report);
+		simulator.logger.info("Report written to " + reportPath.toAbsolutePath());
+		simulator.failures.forEach(simulator.logger::error);
+		return simulator.failures.isEmpty() ? 0 : 1;
+	}
+
+	private Map<String, Object> runPhases() {
+		Map<String, Object> phases = new LinkedHashMap<>();
+		Set<String> asked = new LinkedHashSet<>(config.getPhases());
+		if (asked.remove(LoadConfig.TRACK_ALL)) {
+			phases.put("trackAllUsers", trackAllUsers());
+		}
+		if (asked.remove(LoadConfig.REWARDS_ALL)) {
+			phases.put("rewardsAllUsers", rewardsAllUsers());
+		}
+		if (asked.remove(LoadConfig.MIX)) {
+			phases.put("mix", mix());
+		}
+		if (!asked.isEmpty()) {
+			throw new IllegalArgumentException("Unknown phases " + asked);
+		}
+		return phases;
+	}
+
+	/**
+	 * Locates every user once, as TestPerformance.highVolumeTrackLocation did.
+	 */
+	private Map<String, Object> trackAllUsers() {
+		List<User> users = tourGuideService.getAllUsers();
+		logger.info("Tracking " + users.size() + " users");
+		StopWatch stopWatch = StopWatch.createStarted();
+		tourGuideService.trackAllUsersLocation(users);
+		stopWatch.stop();
+
+		Map<String, Object> phase = budgetedPhase("track-all", users.size(), stopWatch.getTime(), config.getTrackAllBudget());
+		logger.info("Tracked all users: " + phase);
+		return phase;
+	}
+
+	/**
+	 * Calculates the rewards of every user after a visit to the first attraction,
+	 * as TestPerformance.highVolumeGetRewards did.
+	 */
+	private Map<String, Object> rewardsAllUsers() {
+		List<User> users = tourGuideService.getAllUsers();
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		users.forEach(u -> u.addToVisitedLocations(new VisitedLocation(u.getUserId(), attraction, new Date())));
+		logger.info("Calculating the rewards of " + users.size() + " users");
+		StopWatch stopWatch = StopWatch.createStarted();
+		RewardsBatchReport batchReport = rewardsService.calculateRewardsInBatch(users);
+		stopWatch.stop();
+
+		Map<String, Object> phase = budgetedPhase("rewards-all", users.size(), stopWatch.getTime(), config.getRewardsAllBudget());
+		long usersWithoutRewards = users.stream().filter(u -> u.getUserRewards().isEmpty()).count();
+		phase.put("usersWithoutRewards", usersWithoutRewards);
+		phase.put("failedUsers", batchReport.getFailureCount());
+		phase.put("rewards", batchReport.getRewardCount());
+		phase.put("collectMillis", batchReport.getCollectMillis());
+		phase.put("joinMillis", batchReport.getJoinMillis());
+		phase.put("lookupMillis", batchReport.getLookupMillis());
+		phase.put("applyMillis", batchReport.getApplyMillis());
+		if (usersWithoutRewards > 0) {
+			failures.add("rewards-all: " + usersWithoutRewards + " users without rewards");
+		}
+		logger.info("Calculated the rewards of all users: " + phase);
+		return phase;
+	}
+
+	private Map<String, Object> budgetedPhase(String name, int userCount, long elapsedMillis, Duration budget) {
+		Map<String, Object> phase = new LinkedHashMap<>();
+		phase.put("users", userCount);
+		phase.put("elapsedMillis", elapsedMillis);
+		phase.put("usersPerSecond", OperationStats.round(userCount * 1000.0 / Math.max(1, elapsedMillis)));
+		phase.put("budgetMillis", budget.toMillis());
+		phase.put("withinBudget", elapsedMillis <= budget.toMillis());
+		if (elapsedMillis > budget.toMillis()) {
+			failures.add(name + ": " + elapsedMillis + " ms, over the budget of " + budget.toMillis() + " ms");
+		}
+		return phase;
+	}
+
+	/**
+	 * Runs the clients for the warmup and the duration, only the calls made after the warmup are reported.
+	 */
+	private Map<String, Object> mix() {
+		Map<String, OperationStats> stats = new LinkedHashMap<>();
+		config.getMix().keySet().forEach(operation -> stats.put(operation, new OperationStats()));
+		WeightedOperations operations = new WeightedOperations(config.getMix());
+		long thinkTimeMillis = config.getThinkTime().toMillis();
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicLong sweeps = new AtomicLong();
+
+		logger.info("Running " + config.getClients() + " clients for " + config.getWarmup() + " of warmup and " + config.getDuration());
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < config.getClients(); i++) {
+			SplittableRandom random = new SplittableRandom(config.getSeed() + i);
+			threads.add(new Thread(() -> {
+				while (running.get()) {
+					String operation = operations.pick(random);
+					String userName = "internalUser" + random.nextInt(config.getUsers());
+					long start = System.nanoTime();
+					try {
+						call(operation, userName);
+						stats.get(operation).recordSuccess(System.nanoTime() - start);
+					} catch (RuntimeException e) {
+						stats.get(operation).recordError(System.nanoTime() - start);
+					}
+					if (thinkTimeMillis > 0 && !sleep(thinkTimeMillis)) {
+						return;
+					}
+				}
+			}, "client-" + i));
+		}
+		if (config.isTracking()) {
+			threads.add(new Thread(() -> {
+				while (running.get()) {
+					tourGuideService.trackUsersLocation(tourGuideService.getUserRepository().findAll());
+					sweeps.incrementAndGet();
+				}
+			}, "tracking"));
+		}
+		threads.forEach(thread -> {
+			thread.setDaemon(true);
+			thread.start();
+		});
+
+		sleep(config.getWarmup().toMillis());
+		stats.values().forEach(OperationStats::reset);
+		long sweepsAfterWarmup = sweeps.get();
+		long start = System.nanoTime();
+		sleep(config.getDuration().toMillis());
+		long elapsedNanos = System.nanoTime() - start;
+		Map<String, Object> operationReports = new LinkedHashMap<>();
+		stats.forEach((operation, operationStats) -> operationReports.put(operation, operationStats.toReport(elapsedNanos)));
+		running.set(false);
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		long requests = 0;
+		long errors = 0;
+		for (Object operationReport : operationReports.values()) {
+			requests += (Long) ((Map<?, ?>) operationReport).get("requests");
+			errors += (Long) ((Map<?, ?>) operationReport).get("errors");
+		}
+		Map<String, Object> phase = new LinkedHashMap<>();
+		phase.put("clients", config.getClients());
+		phase.put("elapsedMillis", elapsedNanos / 1_000_000);
+		phase.put("requests", requests);
+		phase.put("errors", errors);
+		phase.put("throughput", OperationStats.round(requests / (elapsedNanos / 1e9)));
+		phase.put("trackingSweeps", sweeps.get() - sweepsAfterWarmup);
+		phase.put("operations", operationReports);
+		logger.info("Mix: " + requests + " requests, " + errors + " errors, " + phase.get("throughput") + " requests per second");
+		return phase;
+	}
+
+	private void call(String operation, String userName) {
+		switch (operation) {
+			case "getLocation":
+				write(controller.getLocation(userName).join());
+				break;
+			case "getNearbyAttractions":
+				write(controller.getNearbyAttractions(userName, config.isCompact()).join());
+				break;
+			case "getRewards":
+				write(controller.getRewards(userName, config.isCompact()));
+				break;
+			case "getTripDeals":
+				write(controller.getTripDeals(userName).join());
+				break;
+			case "getLeaderboard":
+				write(controller.getLeaderboard(LEADERBOARD_SIZE));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown operation " + operation);
+		}
+	}
+
+	private void write(Object body) {
+		ObjectWriter writer = responseMapper.writer();
+		if (body instanceof MappingJacksonValue) {
+			MappingJacksonValue response = (MappingJacksonValue) body;
+			writer = responseMapper.writerWithView(response.getSerializationView());
+			body = response.getValue();
+		}
+		try {
+			writer.writeValue(OutputStream.nullOutputStream(), body);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Closes the resources in the reverse order of their creation, the stages before the executors running them.
+	 */
+	private void close() {
+		for (int i = resources.size() - 1; i >= 0; i--) {
+			AutoCloseable resource = resources.get(i);
+			try {
+				resource.close();
+			} catch (Exception e) {
+				logger.warn("Could not close " + resource, e);
+			}
+		}
+	}
+
+	private <T extends AutoCloseable> T register(T resource) {
+		resources.add(resource);
+		return resource;
+	}
+
+	/**
+	 * An executor named as in application.properties, with its tourguide.executors settings.
+	 * A pool size of 0 gives one thread per available processor, as for the cpu executor of TourGuideModule.
+	 */
+	private BoundedExecutor executor(AppProperties properties, String name, Duration shutdownTimeout) {
+		String prefix = "tourguide.executors." + name;
+		int poolSize = properties.getInt(prefix + ".pool-size");
+		return register(new BoundedExecutor(name, poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors(),
+				properties.getInt(prefix + ".queue-capacity"),
+				properties.getEnum(prefix + ".rejection-policy", BoundedExecutor.RejectionPolicy.class), shutdownTimeout));
+	}
+
+	/**
+	 * The TrackingEngine as TourGuideModule builds it, on the gps executor unless its mode starts a thread per task.
+	 */
+	private static TrackingEngine trackingEngine(AppProperties properties, BoundedExecutor gpsExecutor) {
+		TrackingEngine.ExecutorMode executorMode = properties.getEnum("tourguide.tracking.executor-mode", TrackingEngine.ExecutorMode.class);
+		int maxInFlight = properties.getInt("tourguide.tracking.max-in-flight");
+		boolean threadPerTask = executorMode == TrackingEngine.ExecutorMode.CACHED_THREAD_POOL
+				|| executorMode == TrackingEngine.ExecutorMode.VIRTUAL_THREAD_PER_TASK && TrackingEngine.isVirtualThreadAvailable();
+		return threadPerTask
+				? new TrackingEngine(executorMode, gpsExecutor.getMaximumPoolSize(), maxInFlight)
+				: new TrackingEngine(gpsExecutor, gpsExecutor.getMaximumPoolSize(), maxInFlight);
+	}
+
+	private static Map<String, Object> environment() {
+		Map<String, Object> environment = new LinkedHashMap<>();
+		environment.put("javaVersion", System.getProperty("java.version"));
+		environment.put("vm", System.getProperty("java.vm.name"));
+		environment.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version"));
+		environment.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+		environment.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+		environment.put("jvmArguments", ManagementFactory.getRuntimeMXBean().getInputArguments());
+		return environment;
+	}
+
+	/**
+	 * Without Spring Boot, logback logs everything at DEBUG, which would slow the run down.
+	 */
+	private static void setLogLevel(Level level) {
+		((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(level);
+	}
+
+	private static boolean sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Picks the calls of the mix with a probability proportional to their weight.
+	 */
+	private static final class WeightedOperations {
+		private final String[] operations;
+		private final int[]    cumulativeWeights;
+
+		private WeightedOperations(Map<String, Integer> mix) {
+			operations = mix.keySet().toArray(new String[0]);
+			cumulativeWeights = new int[operations.length];
+			int total = 0;
+			for (int i = 0; i < operations.length; i++) {
+				total += mix.get(operations[i]);
+				cumulativeWeights[i] = total;
+			}
+		}
+
+		private String pick(SplittableRandom random) {
+			int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+			for (int i = 0; i < cumulativeWeights.length; i++) {
+				if (value < cumulativeWeights[i]) {
+					return operations[i];
+				}
+			}
+			throw new IllegalStateException();
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.openclassrooms.tourguide.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and errors of one kind of call, recorded concurrently by the simulated clients.
+ */
+public class OperationStats {
+	private final Recorder  latencies = new Recorder(3);
+	private final LongAdder errors    = new LongAdder();
+
+	public void recordSuccess(long latencyNanos) {
+		latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+	}
+
+	public void recordError(long latencyNanos) {
+		errors.increment();
+		recordSuccess(latencyNanos);
+	}
+
+	/**
+	 * Forgets the calls recorded so far, those of the warmup.
+	 */
+	public void reset() {
+		latencies.reset();
+		errors.reset();
+	}
+
+	/**
+	 * @param elapsedNanos time the calls were recorded over
+	 * @return Map<String, Object> the calls recorded since the previous report, as written in the report
+	 */
+	public Map<String, Object> toReport(long elapsedNanos) {
+		Histogram histogram = latencies.getIntervalHistogram();
+		long errorCount = errors.sumThenReset();
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("requests", histogram.getTotalCount());
+		report.put("errors", errorCount);
+		report.put("throughput", round(histogram.getTotalCount() / (elapsedNanos / 1e9)));
+		Map<String, Object> latencyMillis = new LinkedHashMap<>();
+		latencyMillis.put("mean", round(histogram.getMean() / 1000));
+		latencyMillis.put("p50", histogram.getValueAtPercentile(50) / 1000.0);
+		latencyMillis.put("p95", histogram.getValueAtPercentile(95) / 1000.0);
+		latencyMillis.put("p99", histogram.getValueAtPercentile(99) / 1000.0);
+		latencyMillis.put("max", histogram.getMaxValue() / 1000.0);
+		report.put("latencyMillis", latencyMillis);
+		return report;
+	}
+
+	static double round(double value) {
+		return Math.round(value * 1000) / 1000.0;
+	}
+}
@@ -0,0 +1,57 @@
+package com.openclassrooms.tourguide.loadtest;
+
+import com.google.common.collect.Iterables;
+import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * GpsUtil without rate limiter, whose every request takes a latency drawn from a profile.
+ * A request locates at most MAX_BATCH_SIZE users in one round trip, as with the real GpsUtil.
+ */
+public class SimulatedGpsUtil extends GpsUtil {
+	private final LatencyProfile   latency;
+	private final List<Attraction> attractions;
+
+	public SimulatedGpsUtil(LatencyProfile latency) {
+		this.latency = latency;
+		this.attractions = super.getAttractions();
+	}
+
+	@Override
+	public VisitedLocation getUserLocation(UUID userId) {
+		latency.pause();
+		return locate(userId);
+	}
+
+	@Override
+	public Map<UUID, VisitedLocation> getUserLocations(Collection<UUID> userIds) {
+		Map<UUID, VisitedLocation> visitedLocations = new LinkedHashMap<>();
+		for (List<UUID> batch : Iterables.partition(userIds, MAX_BATCH_SIZE)) {
+			latency.pause();
+			batch.forEach(userId -> visitedLocations.put(userId, locate(userId)));
+		}
+		return visitedLocations;
+	}
+
+	@Override
+	public List<Attraction> getAttractions() {
+		return new ArrayList<>(attractions);
+	}
+
+	private static VisitedLocation locate(UUID userId) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Location location = new Location(random.nextDouble(-85.05112878, 85.05112878), random.nextDouble(-180.0, 180.0));
+		return new VisitedLocation(userId, location, new Date());
+	}
+}
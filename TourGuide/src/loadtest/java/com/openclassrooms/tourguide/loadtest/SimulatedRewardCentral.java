@@ -0,0 +1,22 @@
+package com.openclassrooms.tourguide.loadtest;
+
+import com.openclassrooms.tourguide.rewardCentral.RewardCentral;
+
+import java.util.UUID;
+
+/**
+ * RewardCentral whose every request takes a latency drawn from a profile.
+ */
+public class SimulatedRewardCentral extends RewardCentral {
+	private final LatencyProfile latency;
+
+	public SimulatedRewardCentral(LatencyProfile latency) {
+		this.latency = latency;
+	}
+
+	@Override
+	public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+		latency.pause();
+		return 1 + Math.floorMod(attractionId.hashCode() ^ userId.hashCode(), 999);
+	}
+}
@@ -1,26 +1,59 @@
 package com.openclassrooms.tourguide;
 
+import com.openclassrooms.tourguide.export.ResponseSerializers;
+import com.openclassrooms.tourguide.export.UserExporter;
 import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
-import com.openclassrooms.tourguide.models.ClosestAttractionsDTO;
+import com.openclassrooms.tourguide.models.LeaderboardEntryDTO;
 import com.openclassrooms.tourguide.service.TourGuideService;
 import com.openclassrooms.tourguide.tripPricer.Provider;
 import com.openclassrooms.tourguide.user.User;
-import com.openclassrooms.tourguide.user.UserReward;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
+/**
+ * The handlers which may wait on GpsUtil, RewardCentral or TripPricer return a CompletableFuture,
+ * so they release their servlet thread and run on the bounded request executor instead.
+ * When that executor is saturated or the answer takes longer than the request timeout,
+ * they answer with the last known data of the user, or with 503 if there is none.
+ * The work not started by the timeout is not run. An unknown userName is answered with 404,
+ * and every request needing the users with 503 if they could not be initialized.
+ */
 @RestController
 public class TourGuideController {
+    private static final int MAX_LEADERBOARD_SIZE = 100;
+    private final Logger logger = LoggerFactory.getLogger(TourGuideController.class);
 
 	private final TourGuideService tourGuideService;
+    private final Executor         requestExecutor;
+    private final Duration         requestTimeout;
+    private final UserExporter     userExporter;
 
     @Autowired
-    public TourGuideController(TourGuideService tourGuideService) {
+    public TourGuideController(TourGuideService tourGuideService,
+                               @Qualifier("requestExecutor") Executor requestExecutor,
+                               @Value("${tourguide.requests.timeout}") Duration requestTimeout,
+                               UserExporter userExporter) {
         this.tourGuideService = tourGuideService;
+        this.requestExecutor = requestExecutor;
+        this.requestTimeout = requestTimeout;
+        this.userExporter = userExporter;
     }
 
     @RequestMapping("/")
@@ -29,8 +62,17 @@ public class TourGuideController {
     }
     
     @RequestMapping("/getLocation") 
-    public VisitedLocation getLocation(@RequestParam String userName) {
-    	return tourGuideService.getUserLocation(getUser(userName));
+    public CompletableFuture<VisitedLocation> getLocation(@RequestParam String userName) {
+        User user = getUser(userName);
+    	return tourGuideService.getUserLocationAsync(user, requestExecutor, requestTimeout)
+                .exceptionally(e -> {
+                    // the location may have been tracked since the request started
+                    if (user.getVisitedLocations().size() > 0) {
+                        logger.debug("Answering /getLocation with the last location of " + userName + " after " + e);
+                        return user.getLastVisitedLocation();
+                    }
+                    throw unavailable("/getLocation", e);
+                });
     }
     
  	//  Instead: Get the closest five tourist attractions to the user - no matter how far away they are.
@@ -41,25 +83,91 @@ public class TourGuideController {
         // The distance in miles between the user's location and each of the attractions.
         // The reward points for visiting each Attraction.
         //    Note: Attraction reward points can be gathered from RewardsCentral
+    //  With compact=true the user location is not repeated for every attraction.
     @RequestMapping("/getNearbyAttractions") 
-    public List<ClosestAttractionsDTO> getNearbyAttractions(@RequestParam String userName) {
+    public CompletableFuture<MappingJacksonValue> getNearbyAttractions(@RequestParam String userName,
+                                                                       @RequestParam(defaultValue = "false") boolean compact) {
         User user = getUser(userName);
-        VisitedLocation visitedLocation = tourGuideService.getUserLocation(user);
-    	return tourGuideService.getNearByAttractions(user, visitedLocation);
+    	return tourGuideService.getNearByAttractionsAsync(user, requestExecutor, requestTimeout)
+                .thenApply(attractions -> response(attractions, compact))
+                .exceptionally(e -> {
+                    throw unavailable("/getNearbyAttractions", e);
+                });
     }
     
+    /**
+     * With compact=true a reward only holds the attraction id and name, the points and the time of the visit.
+     */
     @RequestMapping("/getRewards") 
-    public List<UserReward> getRewards(@RequestParam String userName) {
-    	return tourGuideService.getUserRewards(getUser(userName));
+    public MappingJacksonValue getRewards(@RequestParam String userName,
+                                          @RequestParam(defaultValue = "false") boolean compact) {
+    	return response(tourGuideService.getUserRewards(getUser(userName)), compact);
     }
        
+    @RequestMapping("/getLeaderboard")
+    public List<LeaderboardEntryDTO> getLeaderboard(@RequestParam(defaultValue = "10") int size) {
+        if (size < 1 || size > MAX_LEADERBOARD_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be between 1 and " + MAX_LEADERBOARD_SIZE);
+        }
+        return tourGuideService.getLeaderboard(size);
+    }
+
     @RequestMapping("/getTripDeals")
-    public List<Provider> getTripDeals(@RequestParam String userName) {
-    	return tourGuideService.getTripDeals(getUser(userName));
+    public CompletableFuture<List<Provider>> getTripDeals(@RequestParam String userName) {
+        User user = getUser(userName);
+    	return tourGuideService.getTripDealsAsync(user, requestExecutor, requestTimeout)
+                .exceptionally(e -> {
+                    if (!user.getTripDeals().isEmpty()) {
+                        logger.debug("Answering /getTripDeals with the previous deals of " + userName + " after " + e);
+                        return user.getTripDeals();
+                    }
+                    throw unavailable("/getTripDeals", e);
+                });
     }
     
+    /**
+     * Streams the last location of every user as newline-delimited JSON, one user per line.
+     * The users are written as they are iterated, the response is never held in memory.
+     */
+    @RequestMapping(value = "/getAllCurrentLocations", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void getAllCurrentLocations(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        int lineCount = userExporter.writeCurrentLocations(tourGuideService.getUserRepository().findAll(), response.getOutputStream());
+        logger.debug("Exported the current location of " + lineCount + " users");
+    }
+
+    /**
+     * Streams every reward of every user as newline-delimited JSON, one reward per line.
+     */
+    @RequestMapping(value = "/getAllRewards", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void getAllRewards(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        int lineCount = userExporter.writeRewards(tourGuideService.getUserRepository().findAll(), response.getOutputStream());
+        logger.debug("Exported " + lineCount + " rewards");
+    }
+
+    /**
+     * The body of a response written by the ResponseSerializers, in their compact view if asked for.
+     */
+    private static MappingJacksonValue response(Object body, boolean compact) {
+        MappingJacksonValue response = new MappingJacksonValue(body);
+        if (compact) {
+            response.setSerializationView(ResponseSerializers.Compact.class);
+        }
+        return response;
+    }
+
     private User getUser(String userName) {
-    	return tourGuideService.getUser(userName);
+        User user = tourGuideService.getUser(userName);
+        if (user == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown user " + userName);
+        }
+        return user;
+    }
+
+    private ResponseStatusException unavailable(String endpoint, Throwable cause) {
+        logger.debug(endpoint + " is unavailable: " + cause);
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, endpoint + " is temporarily unavailable", cause);
     }
    
 
@@ -1,27 +1,245 @@
 package com.openclassrooms.tourguide;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.openclassrooms.tourguide.executor.BoundedExecutor;
+import com.openclassrooms.tourguide.export.ResponseSerializers;
+import com.openclassrooms.tourguide.export.UserExporter;
 import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
+import com.openclassrooms.tourguide.helper.InternalUserGenerator;
+import com.openclassrooms.tourguide.metrics.InstrumentedGpsUtil;
+import com.openclassrooms.tourguide.metrics.InstrumentedRewardCentral;
+import com.openclassrooms.tourguide.metrics.InstrumentedTripPricer;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+import com.openclassrooms.tourguide.persistence.UserSnapshotStore;
+import com.openclassrooms.tourguide.persistence.WriteAheadLog;
+import com.openclassrooms.tourguide.repository.InMemoryUserRepository;
+import com.openclassrooms.tourguide.repository.UserRepository;
+import com.openclassrooms.tourguide.rewardCentral.ResilientRewardCentral;
 import com.openclassrooms.tourguide.rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.rewardCentral.RewardPointsCache;
 import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.tracker.TrackingEngine;
+import com.openclassrooms.tourguide.tracker.TrackingPipeline;
+import com.openclassrooms.tourguide.tripPricer.TripPricer;
+import com.openclassrooms.tourguide.user.RetentionPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
 
 @Configuration
 public class TourGuideModule {
 	
 	@Bean
-	public GpsUtil getGpsUtil() {
-		return new GpsUtil();
+	public TourGuideMetrics getTourGuideMetrics(MeterRegistry meterRegistry) {
+		return new TourGuideMetrics(meterRegistry);
+	}
+
+	@Bean
+	public GpsUtil getGpsUtil(TourGuideMetrics metrics) {
+		return new InstrumentedGpsUtil(new GpsUtil(), metrics);
 	}
 	
 	@Bean
-	public RewardsService getRewardsService() {
-		return new RewardsService(getGpsUtil(), getRewardCentral());
+	public RewardsService getRewardsService(GpsUtil gpsUtil, RewardPointsCache rewardPointsCache, TourGuideMetrics metrics,
+											WriteAheadLog writeAheadLog,
+											@Qualifier("cpuExecutor") ExecutorService cpuExecutor,
+											@Value("${tourguide.rewards.points-budget}") Duration rewardPointsBudget,
+											@Value("${tourguide.nearest-attractions.cache.cell-degrees}") double cellDegrees,
+											@Value("${tourguide.nearest-attractions.cache.maximum-size}") long maximumCellCount) {
+		RewardsService rewardsService = new RewardsService(gpsUtil, rewardPointsCache, metrics, writeAheadLog);
+		rewardsService.setRewardPointsBudget(rewardPointsBudget.isZero() ? null : rewardPointsBudget);
+		rewardsService.setBatchExecutor(cpuExecutor);
+		rewardsService.setNearestAttractionsCache(cellDegrees, maximumCellCount);
+		metrics.monitorNearestAttractionsCache(rewardsService.getNearestAttractionsCache());
+		return rewardsService;
 	}
 	
 	@Bean
-	public RewardCentral getRewardCentral() {
-		return new RewardCentral();
+	public RewardCentral getRewardCentral(TourGuideMetrics metrics,
+										  @Qualifier("rewardsExecutor") ExecutorService rewardsExecutor,
+										  @Value("${tourguide.reward-central.call-timeout}") Duration callTimeout,
+										  @Value("${tourguide.reward-central.hedge-percentile}") double hedgePercentile,
+										  @Value("${tourguide.reward-central.min-hedge-delay}") Duration minHedgeDelay,
+										  @Value("${tourguide.reward-central.max-concurrent-calls}") int maxConcurrentCalls) {
+		// every request is timed, hedges included
+		ResilientRewardCentral rewardCentral = new ResilientRewardCentral(new InstrumentedRewardCentral(new RewardCentral(), metrics),
+				rewardsExecutor, callTimeout, hedgePercentile, minHedgeDelay, maxConcurrentCalls);
+		metrics.monitorResilientRewardCentral(rewardCentral);
+		return rewardCentral;
+	}
+
+	@Bean
+	public RewardPointsCache getRewardPointsCache(RewardCentral rewardCentral, TourGuideMetrics metrics,
+												  @Qualifier("rewardsExecutor") ExecutorService rewardsExecutor,
+												  @Value("${tourguide.reward-points.cache.maximum-size}") long maximumSize,
+												  @Value("${tourguide.reward-points.cache.time-to-live}") Duration timeToLive,
+												  @Value("${tourguide.reward-points.cache.refresh-after}") Duration refreshAfter) {
+		RewardPointsCache rewardPointsCache = new RewardPointsCache(rewardCentral, maximumSize, timeToLive, refreshAfter, rewardsExecutor);
+		metrics.monitorRewardPointsCache(rewardPointsCache);
+		return rewardPointsCache;
+	}
+
+	@Bean
+	public TripPricer getTripPricer(TourGuideMetrics metrics) {
+		return new InstrumentedTripPricer(new TripPricer(), metrics);
+	}
+
+	@Bean
+	public TrackingEngine getTrackingEngine(TourGuideMetrics metrics,
+											@Qualifier("gpsExecutor") BoundedExecutor gpsExecutor,
+											@Value("${tourguide.tracking.executor-mode}") TrackingEngine.ExecutorMode executorMode,
+											@Value("${tourguide.tracking.max-in-flight}") int maxInFlight) {
+		// the bounded gps executor runs the engine, unless it is configured to start a thread per task
+		boolean threadPerTask = executorMode == TrackingEngine.ExecutorMode.CACHED_THREAD_POOL
+				|| executorMode == TrackingEngine.ExecutorMode.VIRTUAL_THREAD_PER_TASK && TrackingEngine.isVirtualThreadAvailable();
+		TrackingEngine trackingEngine = threadPerTask
+				? new TrackingEngine(executorMode, gpsExecutor.getMaximumPoolSize(), maxInFlight)
+				: new TrackingEngine(gpsExecutor, gpsExecutor.getMaximumPoolSize(), maxInFlight);
+		metrics.monitorTrackingEngine(trackingEngine);
+		return trackingEngine;
+	}
+
+	@Bean(destroyMethod = "close")
+	public TrackingPipeline getTrackingPipeline(TrackingEngine trackingEngine, TourGuideMetrics metrics,
+												@Qualifier("pricingExecutor") ExecutorService pricingExecutor,
+												@Value("${tourguide.pipeline.rewards.concurrency}") int rewardsConcurrency,
+												@Value("${tourguide.pipeline.rewards.queue-capacity}") int rewardsQueueCapacity,
+												@Value("${tourguide.pipeline.trip-deals.enabled}") boolean tripDealsRefreshed,
+												@Value("${tourguide.pipeline.trip-deals.concurrency}") int pricingConcurrency,
+												@Value("${tourguide.pipeline.trip-deals.queue-capacity}") int pricingQueueCapacity) {
+		TrackingPipeline trackingPipeline = new TrackingPipeline(trackingEngine, rewardsConcurrency, rewardsQueueCapacity,
+				tripDealsRefreshed, pricingExecutor, pricingConcurrency, pricingQueueCapacity);
+		metrics.monitorTrackingPipeline(trackingPipeline);
+		return trackingPipeline;
+	}
+
+	/**
+	 * Executor of the asynchronous TourGuideController handlers. Its queue is bounded,
+	 * requests which do not fit are rejected and answered with a fallback.
+	 */
+	@Bean(name = "requestExecutor", destroyMethod = "close")
+	public BoundedExecutor getRequestExecutor(TourGuideMetrics metrics,
+											  @Value("${tourguide.requests.pool-size}") int poolSize,
+											  @Value("${tourguide.requests.queue-capacity}") int queueCapacity,
+											  @Value("${tourguide.executors.shutdown-timeout}") Duration shutdownTimeout) {
+		return boundedExecutor(metrics, "request", poolSize, queueCapacity, BoundedExecutor.RejectionPolicy.ABORT, shutdownTimeout);
+	}
+
+	/**
+	 * Executor of the GPS calls of the TrackingEngine, unless its executor mode starts a thread per task.
+	 */
+	@Bean(name = "gpsExecutor", destroyMethod = "close")
+	public BoundedExecutor getGpsExecutor(TourGuideMetrics metrics,
+										  @Value("${tourguide.executors.gps.pool-size}") int poolSize,
+										  @Value("${tourguide.executors.gps.queue-capacity}") int queueCapacity,
+										  @Value("${tourguide.executors.gps.rejection-policy}") BoundedExecutor.RejectionPolicy rejectionPolicy,
+										  @Value("${tourguide.executors.shutdown-timeout}") Duration shutdownTimeout) {
+		return boundedExecutor(metrics, "gps", poolSize, queueCapacity, rejectionPolicy, shutdownTimeout);
+	}
+
+	/**
+	 * Executor of the RewardCentral requests, hedges included, of the reward points cache.
+	 */
+	@Bean(name = "rewardsExecutor", destroyMethod = "close")
+	public BoundedExecutor getRewardsExecutor(TourGuideMetrics metrics,
+											  @Value("${tourguide.executors.rewards.pool-size}") int poolSize,
+											  @Value("${tourguide.executors.rewards.queue-capacity}") int queueCapacity,
+											  @Value("${tourguide.executors.rewards.rejection-policy}") BoundedExecutor.RejectionPolicy rejectionPolicy,
+											  @Value("${tourguide.executors.shutdown-timeout}") Duration shutdownTimeout) {
+		return boundedExecutor(metrics, "rewards", poolSize, queueCapacity, rejectionPolicy, shutdownTimeout);
+	}
+
+	/**
+	 * Executor of the TripPricer calls of the pricing stage of the TrackingPipeline.
+	 */
+	@Bean(name = "pricingExecutor", destroyMethod = "close")
+	public BoundedExecutor getPricingExecutor(TourGuideMetrics metrics,
+											  @Value("${tourguide.executors.pricing.pool-size}") int poolSize,
+											  @Value("${tourguide.executors.pricing.queue-capacity}") int queueCapacity,
+											  @Value("${tourguide.executors.pricing.rejection-policy}") BoundedExecutor.RejectionPolicy rejectionPolicy,
+											  @Value("${tourguide.executors.shutdown-timeout}") Duration shutdownTimeout) {
+		return boundedExecutor(metrics, "pricing", poolSize, queueCapacity, rejectionPolicy, shutdownTimeout);
+	}
+
+	/**
+	 * Executor of the CPU-bound work, the spatial join of batch reward calculations.
+	 * A pool size of 0 gives one thread per available processor.
+	 */
+	@Bean(name = "cpuExecutor", destroyMethod = "close")
+	public BoundedExecutor getCpuExecutor(TourGuideMetrics metrics,
+										  @Value("${tourguide.executors.cpu.pool-size}") int poolSize,
+										  @Value("${tourguide.executors.cpu.queue-capacity}") int queueCapacity,
+										  @Value("${tourguide.executors.cpu.rejection-policy}") BoundedExecutor.RejectionPolicy rejectionPolicy,
+										  @Value("${tourguide.executors.shutdown-timeout}") Duration shutdownTimeout) {
+		int threadCount = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+		return boundedExecutor(metrics, "cpu", threadCount, queueCapacity, rejectionPolicy, shutdownTimeout);
+	}
+
+	private static BoundedExecutor boundedExecutor(TourGuideMetrics metrics, String name, int poolSize, int queueCapacity,
+												   BoundedExecutor.RejectionPolicy rejectionPolicy, Duration shutdownTimeout) {
+		BoundedExecutor executor = new BoundedExecutor(name, poolSize, queueCapacity, rejectionPolicy, shutdownTimeout);
+		metrics.monitorExecutor(executor);
+		return executor;
+	}
+
+	@Bean
+	public RetentionPolicy getRetentionPolicy(@Value("${tourguide.history.raw-capacity}") int rawCapacity,
+											  @Value("${tourguide.history.bucket-duration}") Duration bucketDuration,
+											  @Value("${tourguide.history.bucket-capacity}") int bucketCapacity) {
+		return new RetentionPolicy(rawCapacity, bucketDuration, bucketCapacity);
+	}
+
+	@Bean
+	public InternalUserGenerator getInternalUserGenerator(@Value("${tourguide.users.internal.seed}") long seed,
+														  @Value("${tourguide.users.internal.initialization}") InternalUserGenerator.Initialization initialization) {
+		return new InternalUserGenerator(seed, initialization);
+	}
+
+	@Bean
+	public UserSnapshotStore getUserSnapshotStore(@Value("${tourguide.snapshot.enabled}") boolean enabled,
+												  @Value("${tourguide.snapshot.path}") Path path,
+												  @Value("${tourguide.snapshot.interval}") Duration interval) {
+		return enabled ? new UserSnapshotStore(path, interval) : UserSnapshotStore.disabled();
+	}
+
+	@Bean(destroyMethod = "close")
+	public WriteAheadLog getWriteAheadLog(@Value("${tourguide.wal.enabled}") boolean enabled,
+										  @Value("${tourguide.wal.directory}") Path directory,
+										  @Value("${tourguide.wal.segment-size}") DataSize segmentSize,
+										  @Value("${tourguide.wal.buffer-size}") DataSize bufferSize,
+										  @Value("${tourguide.wal.fsync}") WriteAheadLog.FsyncPolicy fsyncPolicy,
+										  @Value("${tourguide.wal.fsync-interval}") Duration fsyncInterval) throws IOException {
+		if (!enabled) {
+			return WriteAheadLog.disabled();
+		}
+		return new WriteAheadLog(directory, segmentSize.toBytes(), Math.toIntExact(bufferSize.toBytes()), fsyncPolicy, fsyncInterval);
+	}
+
+	/**
+	 * Serializers of the /getNearbyAttractions and /getRewards responses, Spring Boot registers them in its ObjectMapper.
+	 */
+	@Bean
+	public SimpleModule getResponseSerializers() {
+		return ResponseSerializers.module();
+	}
+
+	@Bean
+	public UserExporter getUserExporter(ObjectMapper objectMapper) {
+		return new UserExporter(objectMapper);
+	}
+
+	@Bean
+	public UserRepository getUserRepository(@Value("${tourguide.users.stripe-count}") int stripeCount) {
+		return new InMemoryUserRepository(stripeCount);
 	}
 	
 }
@@ -0,0 +1,146 @@
+package com.openclassrooms.tourguide.executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool shared by every caller of one kind of dependency, with a fixed number of named daemon threads
+ * and a bounded queue. Its threads stop after a minute idle and are started again on demand.
+ * <ul>
+ * <li>A task which fits neither in a thread nor in the queue is handled by the rejection policy.</li>
+ * <li>The rejected tasks and the time the tasks waited in the queue are counted, to see the pool saturate.</li>
+ * <li>{@link #close()} lets the queued and running tasks finish, up to the shutdown timeout.</li>
+ * </ul>
+ */
+public class BoundedExecutor extends ThreadPoolExecutor implements AutoCloseable {
+	private static final long IDLE_TIMEOUT_SECONDS = 60;
+
+	/**
+	 * What happens to a task submitted while the threads and the queue are all busy.
+	 */
+	public enum RejectionPolicy {
+		/** The task is rejected with a RejectedExecutionException, for callers which have a fallback. */
+		ABORT,
+		/** The submitting thread runs the task itself, which slows the submissions down. */
+		CALLER_RUNS
+	}
+
+	private final Logger     logger = LoggerFactory.getLogger(BoundedExecutor.class);
+	private final String     name;
+	private final Duration   shutdownTimeout;
+	private final AtomicLong rejectedCount  = new AtomicLong();
+	private final AtomicLong startedCount   = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+
+	/**
+	 * @param name prefix of the thread names
+	 * @param poolSize threads running tasks at once
+	 * @param queueCapacity tasks waiting for a thread
+	 * @param rejectionPolicy
+	 * @param shutdownTimeout time {@link #close()} waits for the tasks before interrupting them
+	 */
+	public BoundedExecutor(String name, int poolSize, int queueCapacity, RejectionPolicy rejectionPolicy, Duration shutdownTimeout) {
+		super(poolSize, poolSize, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+				daemonThreadFactory(name));
+		this.name = name;
+		this.shutdownTimeout = shutdownTimeout;
+		allowCoreThreadTimeOut(true);
+		RejectedExecutionHandler handler = rejectionPolicy == RejectionPolicy.CALLER_RUNS
+				? new CallerRunsPolicy() : new AbortPolicy();
+		setRejectedExecutionHandler((task, executor) -> {
+			rejectedCount.incrementAndGet();
+			handler.rejectedExecution(task, executor);
+		});
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return long number of tasks handled by the rejection policy, run by their caller or rejected
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * @return long number of tasks started by a thread of the pool
+	 */
+	public long getStartedCount() {
+		return startedCount.get();
+	}
+
+	/**
+	 * @return long total time the started tasks waited in the queue, in nanoseconds
+	 */
+	public long getTotalWaitNanos() {
+		return totalWaitNanos.get();
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		super.execute(new QueuedTask(command));
+	}
+
+	@Override
+	protected void beforeExecute(Thread thread, Runnable task) {
+		super.beforeExecute(thread, task);
+		if (task instanceof QueuedTask) {
+			startedCount.incrementAndGet();
+			totalWaitNanos.addAndGet(System.nanoTime() - ((QueuedTask) task).queuedAt);
+		}
+	}
+
+	/**
+	 * Stops taking tasks and waits for the queued and running ones, interrupting them after the shutdown timeout.
+	 */
+	@Override
+	public void close() {
+		shutdown();
+		try {
+			if (!awaitTermination(shutdownTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+				logger.warn("Executor " + name + " still busy after " + shutdownTimeout + ", interrupting its tasks");
+				shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * A task and the time it was submitted.
+	 */
+	private static final class QueuedTask implements Runnable {
+		private final Runnable task;
+		private final long     queuedAt = System.nanoTime();
+
+		private QueuedTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			task.run();
+		}
+	}
+
+	private static ThreadFactory daemonThreadFactory(String name) {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,178 @@
+package com.openclassrooms.tourguide.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.models.ClosestAttractionsDTO;
+import com.openclassrooms.tourguide.user.UserReward;
+
+import java.io.IOException;
+
+/**
+ * Jackson serializers of the /getNearbyAttractions and /getRewards responses. They write the fields straight from
+ * the objects to the JsonGenerator, whose buffers are recycled between responses, with field names encoded once,
+ * instead of introspecting every object. Without a view they write the same JSON as the default serializers.
+ * With the {@link Compact} view they leave out the locations repeated in every element:
+ * <ul>
+ * <li>a ClosestAttractionsDTO without the user location, the same for the five attractions,
+ * and with "pending":true only while its points are not known</li>
+ * <li>a UserReward as {"attractionId":"...","attractionName":"...","rewardPoints":0,"timeVisited":...},
+ * plus "pending":true while its points are not known, without the visited location and the attraction
+ * it already names</li>
+ * </ul>
+ */
+public final class ResponseSerializers {
+
+	/**
+	 * View of the compact responses, set with MappingJacksonValue.setSerializationView.
+	 */
+	public interface Compact {
+	}
+
+	private static final SerializableString ATTRACTION_NAME      = new SerializedString("attractionName");
+	private static final SerializableString ATTRACTION_LONGITUDE = new SerializedString("attractionLongitude");
+	private static final SerializableString ATTRACTION_LATITUDE  = new SerializedString("attractionLatitude");
+	private static final SerializableString USER_LONGITUDE       = new SerializedString("userLongitude");
+	private static final SerializableString USER_LATITUDE        = new SerializedString("userLatitude");
+	private static final SerializableString DISTANCE             = new SerializedString("distance");
+	private static final SerializableString REWARD_POINTS        = new SerializedString("rewardPoints");
+	private static final SerializableString VISITED_LOCATION     = new SerializedString("visitedLocation");
+	private static final SerializableString USER_ID              = new SerializedString("userId");
+	private static final SerializableString LOCATION             = new SerializedString("location");
+	private static final SerializableString TIME_VISITED         = new SerializedString("timeVisited");
+	private static final SerializableString ATTRACTION           = new SerializedString("attraction");
+	private static final SerializableString ATTRACTION_ID        = new SerializedString("attractionId");
+	private static final SerializableString LONGITUDE            = new SerializedString("longitude");
+	private static final SerializableString LATITUDE             = new SerializedString("latitude");
+	private static final SerializableString CITY                 = new SerializedString("city");
+	private static final SerializableString STATE                = new SerializedString("state");
+	private static final SerializableString PENDING              = new SerializedString("pending");
+
+	private ResponseSerializers() {
+	}
+
+	/**
+	 * This method is used to get the serializers as a module, to register in an ObjectMapper.
+	 * @return SimpleModule
+	 */
+	public static SimpleModule module() {
+		SimpleModule module = new SimpleModule("TourGuideResponses");
+		module.addSerializer(ClosestAttractionsDTO.class, new ClosestAttractionsSerializer());
+		module.addSerializer(UserReward.class, new UserRewardSerializer());
+		return module;
+	}
+
+	private static boolean isCompact(SerializerProvider provider) {
+		return provider.getActiveView() == Compact.class;
+	}
+
+	/**
+	 * A location, with the fields of the attraction when it is one, as the default serializer writes it.
+	 */
+	private static void writeLocation(Location location, JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		generator.writeFieldName(LONGITUDE);
+		generator.writeNumber(location.longitude);
+		generator.writeFieldName(LATITUDE);
+		generator.writeNumber(location.latitude);
+		if (location instanceof Attraction) {
+			Attraction attraction = (Attraction) location;
+			generator.writeFieldName(ATTRACTION_NAME);
+			generator.writeString(attraction.attractionName);
+			generator.writeFieldName(CITY);
+			generator.writeString(attraction.city);
+			generator.writeFieldName(STATE);
+			generator.writeString(attraction.state);
+			generator.writeFieldName(ATTRACTION_ID);
+			generator.writeString(attraction.attractionId.toString());
+		}
+		generator.writeEndObject();
+	}
+
+	static final class ClosestAttractionsSerializer extends StdSerializer<ClosestAttractionsDTO> {
+
+		ClosestAttractionsSerializer() {
+			super(ClosestAttractionsDTO.class);
+		}
+
+		@Override
+		public void serialize(ClosestAttractionsDTO dto, JsonGenerator generator, SerializerProvider provider) throws IOException {
+			generator.writeStartObject();
+			generator.writeFieldName(ATTRACTION_NAME);
+			generator.writeString(dto.getAttractionName());
+			generator.writeFieldName(ATTRACTION_LONGITUDE);
+			generator.writeNumber(dto.getAttractionLongitude());
+			generator.writeFieldName(ATTRACTION_LATITUDE);
+			generator.writeNumber(dto.getAttractionLatitude());
+			if (!isCompact(provider)) {
+				generator.writeFieldName(USER_LONGITUDE);
+				generator.writeNumber(dto.getUserLongitude());
+				generator.writeFieldName(USER_LATITUDE);
+				generator.writeNumber(dto.getUserLatitude());
+			}
+			generator.writeFieldName(DISTANCE);
+			generator.writeNumber(dto.getDistance());
+			generator.writeFieldName(REWARD_POINTS);
+			generator.writeNumber(dto.getRewardPoints());
+			if (!isCompact(provider) || dto.isPending()) {
+				generator.writeFieldName(PENDING);
+				generator.writeBoolean(dto.isPending());
+			}
+			generator.writeEndObject();
+		}
+	}
+
+	static final class UserRewardSerializer extends StdSerializer<UserReward> {
+
+		UserRewardSerializer() {
+			super(UserReward.class);
+		}
+
+		@Override
+		public void serialize(UserReward reward, JsonGenerator generator, SerializerProvider provider) throws IOException {
+			if (isCompact(provider)) {
+				serializeCompact(reward, generator, provider);
+				return;
+			}
+			generator.writeStartObject();
+			generator.writeFieldName(VISITED_LOCATION);
+			generator.writeStartObject();
+			generator.writeFieldName(USER_ID);
+			generator.writeString(reward.visitedLocation.userId.toString());
+			generator.writeFieldName(LOCATION);
+			writeLocation(reward.visitedLocation.location, generator);
+			generator.writeFieldName(TIME_VISITED);
+			provider.defaultSerializeDateValue(reward.visitedLocation.timeVisited, generator);
+			generator.writeEndObject();
+			generator.writeFieldName(ATTRACTION);
+			writeLocation(reward.attraction, generator);
+			generator.writeFieldName(REWARD_POINTS);
+			generator.writeNumber(reward.getRewardPoints());
+			generator.writeFieldName(PENDING);
+			generator.writeBoolean(reward.isPending());
+			generator.writeEndObject();
+		}
+
+		private void serializeCompact(UserReward reward, JsonGenerator generator, SerializerProvider provider) throws IOException {
+			generator.writeStartObject();
+			generator.writeFieldName(ATTRACTION_ID);
+			generator.writeString(reward.attraction.attractionId.toString());
+			generator.writeFieldName(ATTRACTION_NAME);
+			generator.writeString(reward.attraction.attractionName);
+			generator.writeFieldName(REWARD_POINTS);
+			generator.writeNumber(reward.getRewardPoints());
+			generator.writeFieldName(TIME_VISITED);
+			provider.defaultSerializeDateValue(reward.visitedLocation.timeVisited, generator);
+			if (reward.isPending()) {
+				generator.writeFieldName(PENDING);
+				generator.writeBoolean(true);
+			}
+			generator.writeEndObject();
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.openclassrooms.tourguide.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.user.LocationHistory;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserReward;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes users as newline-delimited JSON, one object per line, straight to an output stream.
+ * The users are read one at a time from the iterable and nothing is collected,
+ * so the memory used does not depend on the number of users: only the buffer of the JsonGenerator
+ * and of the stream hold data not written yet.
+ */
+public class UserExporter {
+	private static final char LINE_SEPARATOR = '\n';
+
+	private final ObjectMapper objectMapper;
+
+	/**
+	 * @param objectMapper the dates are written as it writes them in the other responses
+	 */
+	public UserExporter(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * This method is used to write the last location of every user having one, as
+	 * {"userId":"...","userName":"...","longitude":0.0,"latitude":0.0,"timeVisited":"..."}
+	 * @param users
+	 * @param output left open
+	 * @return int number of lines written
+	 * @throws IOException
+	 */
+	public int writeCurrentLocations(Iterable<User> users, OutputStream output) throws IOException {
+		int lineCount = 0;
+		try (JsonGenerator generator = createGenerator(output)) {
+			for (User user : users) {
+				VisitedLocation visitedLocation = lastVisitedLocation(user.getLocationHistory());
+				if (visitedLocation == null) {
+					continue;
+				}
+				generator.writeStartObject();
+				generator.writeStringField("userId", user.getUserId().toString());
+				generator.writeStringField("userName", user.getUserName());
+				generator.writeNumberField("longitude", visitedLocation.location.longitude);
+				generator.writeNumberField("latitude", visitedLocation.location.latitude);
+				generator.writeObjectField("timeVisited", visitedLocation.timeVisited);
+				generator.writeEndObject();
+				generator.writeRaw(LINE_SEPARATOR);
+				lineCount++;
+			}
+		}
+		return lineCount;
+	}
+
+	/**
+	 * This method is used to write every reward of every user, one reward per line, as
+	 * {"userId":"...","userName":"...","attractionName":"...","rewardPoints":0,"longitude":0.0,"latitude":0.0,"timeVisited":"..."}
+	 * where the location and time are those of the visit which earned the reward.
+	 * @param users
+	 * @param output left open
+	 * @return int number of lines written
+	 * @throws IOException
+	 */
+	public int writeRewards(Iterable<User> users, OutputStream output) throws IOException {
+		int lineCount = 0;
+		try (JsonGenerator generator = createGenerator(output)) {
+			for (User user : users) {
+				String userId = user.getUserId().toString();
+				// the rewards are a copy-on-write list, iterating it sees a fixed version without copying it
+				for (UserReward reward : user.getUserRewards()) {
+					generator.writeStartObject();
+					generator.writeStringField("userId", userId);
+					generator.writeStringField("userName", user.getUserName());
+					generator.writeStringField("attractionName", reward.attraction.attractionName);
+					generator.writeNumberField("rewardPoints", reward.getRewardPoints());
+					generator.writeNumberField("longitude", reward.visitedLocation.location.longitude);
+					generator.writeNumberField("latitude", reward.visitedLocation.location.latitude);
+					generator.writeObjectField("timeVisited", reward.visitedLocation.timeVisited);
+					generator.writeEndObject();
+					generator.writeRaw(LINE_SEPARATOR);
+					lineCount++;
+				}
+			}
+		}
+		return lineCount;
+	}
+
+	private JsonGenerator createGenerator(OutputStream output) throws IOException {
+		JsonGenerator generator = objectMapper.getFactory().createGenerator(output);
+		// the caller owns the stream, closing the generator only flushes it
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		// no separator between the root values, each line ends with LINE_SEPARATOR instead
+		generator.setRootValueSeparator(null);
+		return generator;
+	}
+
+	private static VisitedLocation lastVisitedLocation(LocationHistory history) {
+		synchronized (history) {
+			return history.isEmpty() ? null : history.getLast();
+		}
+	}
+}
@@ -0,0 +1,367 @@
+package com.openclassrooms.tourguide.geo;
+
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable KD-tree over the attraction catalog.
+ * Every attraction is stored as a point of the unit sphere (x, y, z). The straight-line
+ * (chord) distance between two such points grows with their great-circle distance, so
+ * the tree gives exact nearest-neighbour and radius answers without any trigonometry
+ * inside the search.
+ * The tree is implicit: the median of every range of {@code order} is the node splitting it.
+ * Small catalogs, where walking the tree costs more than it saves, are scanned by a DistanceKernel instead.
+ */
+public class AttractionIndex {
+	// up to this many attractions a bounding-box scan beats the tree
+	static final int LINEAR_SCAN_MAX_SIZE = 64;
+
+	private final List<Attraction> attractions;
+	private final DistanceKernel   kernel;
+	private final double[]         x;
+	private final double[]         y;
+	private final double[]         z;
+	private final int[]            order;
+	private final byte[]           axis;
+
+	public AttractionIndex(List<Attraction> attractions) {
+		this.attractions = Collections.unmodifiableList(new ArrayList<>(attractions));
+		int size = this.attractions.size();
+		x = new double[size];
+		y = new double[size];
+		z = new double[size];
+		order = new int[size];
+		axis = new byte[size];
+		kernel = new DistanceKernel(this.attractions);
+		for (int i = 0; i < size; i++) {
+			Attraction attraction = this.attractions.get(i);
+			double lat = Math.toRadians(attraction.latitude);
+			double lon = Math.toRadians(attraction.longitude);
+			x[i] = Math.cos(lat) * Math.cos(lon);
+			y[i] = Math.cos(lat) * Math.sin(lon);
+			z[i] = Math.sin(lat);
+			order[i] = i;
+		}
+		build(0, size);
+	}
+
+	/**
+	 * This method is used to get the indexed attractions, in catalog order.
+	 * @return List<Attraction>
+	 */
+	public List<Attraction> getAttractions() {
+		return attractions;
+	}
+
+	public int size() {
+		return attractions.size();
+	}
+
+	/**
+	 * This method is used to get the k attractions closest to a location, closest first.
+	 * Attractions at the same distance are ordered as in the catalog, and only the first of them in the catalog
+	 * are kept when they tie for the k-th place.
+	 * @param location
+	 * @param k
+	 * @return List<NearbyAttraction> at most k attractions
+	 */
+	public List<NearbyAttraction> nearest(Location location, int k) {
+		int limit = Math.min(k, attractions.size());
+		if (limit <= 0) {
+			return new ArrayList<>();
+		}
+		Neighbours neighbours = new Neighbours(limit);
+		List<NearbyAttraction> result = new ArrayList<>(limit);
+		if (attractions.size() <= LINEAR_SCAN_MAX_SIZE) {
+			double[] distances = new double[attractions.size()];
+			kernel.distancesMiles(location, distances);
+			for (int i = 0; i < distances.length; i++) {
+				neighbours.offer(i, distances[i]);
+			}
+			for (int i : neighbours.sortedIndexes()) {
+				result.add(new NearbyAttraction(attractions.get(i), distances[i]));
+			}
+			return result;
+		}
+
+		searchNearest(0, attractions.size(), toUnitVector(location), neighbours);
+		for (int i : neighbours.sortedIndexes()) {
+			result.add(new NearbyAttraction(attractions.get(i), kernel.distanceMiles(i, location)));
+		}
+		return result;
+	}
+
+	/**
+	 * This method is used to get every attraction strictly closer than the given distance,
+	 * in catalog order.
+	 * @param location
+	 * @param miles
+	 * @return List<NearbyAttraction>
+	 */
+	public List<NearbyAttraction> withinRadius(Location location, double miles) {
+		List<NearbyAttraction> result = new ArrayList<>();
+		if (attractions.isEmpty() || miles <= 0) {
+			return result;
+		}
+		if (attractions.size() <= LINEAR_SCAN_MAX_SIZE) {
+			int[] indexes = new int[attractions.size()];
+			double[] distances = new double[attractions.size()];
+			int count = kernel.withinMiles(location, miles, indexes, distances);
+			for (int i = 0; i < count; i++) {
+				result.add(new NearbyAttraction(attractions.get(indexes[i]), distances[i]));
+			}
+			return result;
+		}
+
+		double[] query = toUnitVector(location);
+		// the slack keeps borderline points, the exact test below decides for them
+		double chord = GeoMath.milesToChord(miles) + 1e-9;
+		List<Integer> candidates = new ArrayList<>();
+		searchRadius(0, attractions.size(), query, chord * chord, candidates);
+		Collections.sort(candidates);
+		for (int i : candidates) {
+			double distance = kernel.distanceMiles(i, location);
+			if (distance < miles) {
+				result.add(new NearbyAttraction(attractions.get(i), distance));
+			}
+		}
+		return result;
+	}
+
+	private void build(int lo, int hi) {
+		if (hi - lo <= 1) {
+			return;
+		}
+		int splitAxis = widestAxis(lo, hi);
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi - 1, mid, splitAxis);
+		axis[mid] = (byte) splitAxis;
+		build(lo, mid);
+		build(mid + 1, hi);
+	}
+
+	private int widestAxis(int lo, int hi) {
+		int best = 0;
+		double bestSpread = -1;
+		for (int a = 0; a < 3; a++) {
+			double[] coordinates = coordinates(a);
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = lo; i < hi; i++) {
+				double value = coordinates[order[i]];
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+			if (max - min > bestSpread) {
+				bestSpread = max - min;
+				best = a;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Quickselect: puts the k-th smallest point of order[lo..hi] on the given axis at position k.
+	 */
+	private void select(int lo, int hi, int k, int splitAxis) {
+		double[] coordinates = coordinates(splitAxis);
+		while (hi > lo) {
+			double pivot = coordinates[order[(lo + hi) >>> 1]];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (coordinates[order[i]] < pivot) {
+					i++;
+				}
+				while (coordinates[order[j]] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int swap = order[i];
+					order[i] = order[j];
+					order[j] = swap;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void searchNearest(int lo, int hi, double[] query, Neighbours neighbours) {
+		if (lo >= hi) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		int point = order[mid];
+		neighbours.offer(point, squaredChord(point, query));
+		if (hi - lo == 1) {
+			return;
+		}
+		int splitAxis = axis[mid];
+		double delta = query[splitAxis] - coordinates(splitAxis)[point];
+		boolean lowerFirst = delta <= 0;
+		if (lowerFirst) {
+			searchNearest(lo, mid, query, neighbours);
+		} else {
+			searchNearest(mid + 1, hi, query, neighbours);
+		}
+		// the other side can still hold points at the same distance as the worst kept one
+		if (!neighbours.isFull() || delta * delta <= neighbours.worstDistance()) {
+			if (lowerFirst) {
+				searchNearest(mid + 1, hi, query, neighbours);
+			} else {
+				searchNearest(lo, mid, query, neighbours);
+			}
+		}
+	}
+
+	private void searchRadius(int lo, int hi, double[] query, double squaredRadius, List<Integer> candidates) {
+		if (lo >= hi) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		int point = order[mid];
+		if (squaredChord(point, query) <= squaredRadius) {
+			candidates.add(point);
+		}
+		if (hi - lo == 1) {
+			return;
+		}
+		int splitAxis = axis[mid];
+		double delta = query[splitAxis] - coordinates(splitAxis)[point];
+		if (delta <= 0 || delta * delta <= squaredRadius) {
+			searchRadius(lo, mid, query, squaredRadius, candidates);
+		}
+		if (delta >= 0 || delta * delta <= squaredRadius) {
+			searchRadius(mid + 1, hi, query, squaredRadius, candidates);
+		}
+	}
+
+	private double squaredChord(int point, double[] query) {
+		double dx = x[point] - query[0];
+		double dy = y[point] - query[1];
+		double dz = z[point] - query[2];
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private double[] coordinates(int splitAxis) {
+		switch (splitAxis) {
+			case 0:
+				return x;
+			case 1:
+				return y;
+			default:
+				return z;
+		}
+	}
+
+	private static double[] toUnitVector(Location location) {
+		double lat = Math.toRadians(location.latitude);
+		double lon = Math.toRadians(location.longitude);
+		return new double[] { Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat) };
+	}
+
+	/**
+	 * Bounded max-heap of the best candidates found so far, ordered by distance then by catalog index.
+	 */
+	private static class Neighbours {
+		private final int[]    indexes;
+		private final double[] distances;
+		private int            size;
+
+		Neighbours(int capacity) {
+			indexes = new int[capacity];
+			distances = new double[capacity];
+		}
+
+		boolean isFull() {
+			return size == indexes.length;
+		}
+
+		double worstDistance() {
+			return distances[0];
+		}
+
+		void offer(int index, double distance) {
+			if (!isFull()) {
+				indexes[size] = index;
+				distances[size] = distance;
+				siftUp(size++);
+			} else if (isBefore(index, distance, indexes[0], distances[0])) {
+				indexes[0] = index;
+				distances[0] = distance;
+				siftDown(0);
+			}
+		}
+
+		int[] sortedIndexes() {
+			Integer[] sorted = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				sorted[i] = i;
+			}
+			Arrays.sort(sorted, (a, b) -> distances[a] != distances[b]
+					? Double.compare(distances[a], distances[b])
+					: Integer.compare(indexes[a], indexes[b]));
+			int[] result = new int[size];
+			for (int i = 0; i < size; i++) {
+				result[i] = indexes[sorted[i]];
+			}
+			return result;
+		}
+
+		private static boolean isBefore(int index, double distance, int otherIndex, double otherDistance) {
+			return distance < otherDistance || (distance == otherDistance && index < otherIndex);
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (!isBefore(indexes[parent], distances[parent], indexes[i], distances[i])) {
+					return;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i) {
+			while (true) {
+				int worst = i;
+				int left = 2 * i + 1;
+				int right = left + 1;
+				if (left < size && isBefore(indexes[worst], distances[worst], indexes[left], distances[left])) {
+					worst = left;
+				}
+				if (right < size && isBefore(indexes[worst], distances[worst], indexes[right], distances[right])) {
+					worst = right;
+				}
+				if (worst == i) {
+					return;
+				}
+				swap(i, worst);
+				i = worst;
+			}
+		}
+
+		private void swap(int a, int b) {
+			int index = indexes[a];
+			indexes[a] = indexes[b];
+			indexes[b] = index;
+			double distance = distances[a];
+			distances[a] = distances[b];
+			distances[b] = distance;
+		}
+	}
+}
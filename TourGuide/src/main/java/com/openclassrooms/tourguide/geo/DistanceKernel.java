@@ -0,0 +1,130 @@
+package com.openclassrooms.tourguide.geo;
+
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+
+import java.util.List;
+
+/**
+ * Distances from one location to a fixed set of locations, for example the attraction catalog.
+ * The radians and the cosine of the latitude of every location of the set are computed once,
+ * and radius queries reject most far locations with a latitude/longitude bounding box
+ * before computing their exact haversine distance.
+ * The columns are plain primitive arrays scanned in order, which the JIT compiles to tight loops.
+ */
+public final class DistanceKernel {
+	// relative slack of the bounding box, the exact test decides for the points on its border
+	private static final double BOX_SLACK = 1e-9;
+
+	private final double[] latitudes;
+	private final double[] longitudes;
+	private final double[] latitudeRadians;
+	private final double[] longitudeRadians;
+	private final double[] cosLatitudes;
+
+	public DistanceKernel(List<? extends Location> locations) {
+		int size = locations.size();
+		latitudes = new double[size];
+		longitudes = new double[size];
+		latitudeRadians = new double[size];
+		longitudeRadians = new double[size];
+		cosLatitudes = new double[size];
+		for (int i = 0; i < size; i++) {
+			Location location = locations.get(i);
+			latitudes[i] = location.latitude;
+			longitudes[i] = location.longitude;
+			latitudeRadians[i] = Math.toRadians(location.latitude);
+			longitudeRadians[i] = Math.toRadians(location.longitude);
+			cosLatitudes[i] = Math.cos(latitudeRadians[i]);
+		}
+	}
+
+	public int size() {
+		return latitudes.length;
+	}
+
+	/**
+	 * This method is used to get the distance in statute miles between a location of the set and another location.
+	 * It gives the same result as GeoMath.distanceMiles(locations.get(index), location).
+	 * @param index
+	 * @param location
+	 * @return double
+	 */
+	public double distanceMiles(int index, Location location) {
+		double latitude = Math.toRadians(location.latitude);
+		return GeoMath.haversineMiles(latitudeRadians[index], cosLatitudes[index], longitudeRadians[index],
+				latitude, Math.cos(latitude), Math.toRadians(location.longitude));
+	}
+
+	/**
+	 * This method is used to get the distance in statute miles between a location and every location of the set.
+	 * @param location
+	 * @param distances filled with the distance to each location of the set, in set order
+	 */
+	public void distancesMiles(Location location, double[] distances) {
+		double latitude = Math.toRadians(location.latitude);
+		double cosLatitude = Math.cos(latitude);
+		double longitude = Math.toRadians(location.longitude);
+		for (int i = 0; i < latitudes.length; i++) {
+			distances[i] = GeoMath.haversineMiles(latitudeRadians[i], cosLatitudes[i], longitudeRadians[i],
+					latitude, cosLatitude, longitude);
+		}
+	}
+
+	/**
+	 * This method is used to find the locations of the set strictly closer than the given distance.
+	 * @param location
+	 * @param miles
+	 * @param indexes filled with the indexes of the locations found, in set order
+	 * @param distances filled with their distances, at the same positions
+	 * @return int number of locations found
+	 */
+	public int withinMiles(Location location, double miles, int[] indexes, double[] distances) {
+		if (miles <= 0) {
+			return 0;
+		}
+		double latitude = Math.toRadians(location.latitude);
+		double cosLatitude = Math.cos(latitude);
+		double longitude = Math.toRadians(location.longitude);
+
+		// no point of the circle is further in latitude than its radius
+		double maxLatitudeDelta = miles / GeoMath.MILES_PER_DEGREE * (1 + BOX_SLACK) + BOX_SLACK;
+		double maxLongitudeDelta = maxLongitudeDelta(location.latitude, miles);
+
+		int count = 0;
+		for (int i = 0; i < latitudes.length; i++) {
+			if (Math.abs(latitudes[i] - location.latitude) > maxLatitudeDelta
+					|| longitudeDelta(longitudes[i], location.longitude) > maxLongitudeDelta) {
+				continue;
+			}
+			double distance = GeoMath.haversineMiles(latitudeRadians[i], cosLatitudes[i], longitudeRadians[i],
+					latitude, cosLatitude, longitude);
+			if (distance < miles) {
+				indexes[count] = i;
+				distances[count] = distance;
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Widest longitude difference, in degrees, of a point closer than the given distance,
+	 * or 180 when the circle contains a pole.
+	 */
+	private static double maxLongitudeDelta(double latitude, double miles) {
+		double radius = Math.toRadians(miles / GeoMath.MILES_PER_DEGREE);
+		if (Math.abs(latitude) + Math.toDegrees(radius) >= 90) {
+			return 180;
+		}
+		double delta = Math.toDegrees(Math.asin(Math.sin(radius) / Math.cos(Math.toRadians(latitude))));
+		return delta * (1 + BOX_SLACK) + BOX_SLACK;
+	}
+
+	/**
+	 * Longitude difference in degrees, in [0, 180], across the antimeridian if shorter.
+	 */
+	private static double longitudeDelta(double longitude1, double longitude2) {
+		double delta = Math.abs(longitude1 - longitude2) % 360;
+		return delta > 180 ? 360 - delta : delta;
+	}
+}
@@ -0,0 +1,49 @@
+package com.openclassrooms.tourguide.geo;
+
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+
+/**
+ * Latitude/longitude grid of cells a fixed number of degrees wide, shared by the SpatialJoin
+ * and the NearestAttractionsCache. Cells get narrower in miles towards the poles, never wider.
+ */
+final class GeoGrid {
+	private final double cellDegrees;
+
+	GeoGrid(double cellDegrees) {
+		this.cellDegrees = cellDegrees;
+	}
+
+	long row(double latitude) {
+		return (long) Math.floor(latitude / cellDegrees);
+	}
+
+	long column(double longitude) {
+		return (long) Math.floor(longitude / cellDegrees);
+	}
+
+	static long key(long row, long column) {
+		return (row << 32) ^ (column & 0xFFFFFFFFL);
+	}
+
+	Location center(long row, long column) {
+		return new Location(clampLatitude((row + 0.5) * cellDegrees), (column + 0.5) * cellDegrees);
+	}
+
+	/**
+	 * The corners of a cell are its points farthest from its center, every point of the cell is this close to it.
+	 */
+	double halfDiagonalMiles(long row, long column) {
+		Location center = center(row, column);
+		double max = 0;
+		for (int corner = 0; corner < 4; corner++) {
+			double latitude = clampLatitude((row + (corner >> 1)) * cellDegrees);
+			double longitude = (column + (corner & 1)) * cellDegrees;
+			max = Math.max(max, GeoMath.distanceMiles(center, new Location(latitude, longitude)));
+		}
+		return max;
+	}
+
+	private static double clampLatitude(double latitude) {
+		return Math.max(-90, Math.min(90, latitude));
+	}
+}
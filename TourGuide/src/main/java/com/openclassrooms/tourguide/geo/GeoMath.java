@@ -0,0 +1,60 @@
+package com.openclassrooms.tourguide.geo;
+
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+
+/**
+ * Great-circle distance helpers shared by the RewardsService and the AttractionIndex.
+ */
+public final class GeoMath {
+	public static final double STATUTE_MILES_PER_NAUTICAL_MILE = 1.15077945;
+	// one degree of arc is 60 nautical miles
+	public static final double MILES_PER_DEGREE = 60 * STATUTE_MILES_PER_NAUTICAL_MILE;
+	// largest possible distance between two points of the globe
+	public static final double MAX_DISTANCE_MILES = 180 * MILES_PER_DEGREE;
+
+	private GeoMath() {
+	}
+
+	/**
+	 * This method is used to get the distance in statute miles between two locations.
+	 * It uses the haversine formula, which stays accurate for close and identical locations
+	 * where the spherical law of cosines rounds to acos of a value above 1.
+	 * @param loc1
+	 * @param loc2
+	 * @return double
+	 */
+	public static double distanceMiles(Location loc1, Location loc2) {
+		double lat1 = Math.toRadians(loc1.latitude);
+		double lat2 = Math.toRadians(loc2.latitude);
+		return haversineMiles(lat1, Math.cos(lat1), Math.toRadians(loc1.longitude),
+				lat2, Math.cos(lat2), Math.toRadians(loc2.longitude));
+	}
+
+	/**
+	 * Haversine distance in statute miles, from the coordinates in radians and the cosine of the latitudes,
+	 * so callers can compute those once per location.
+	 */
+	static double haversineMiles(double lat1, double cosLat1, double lon1, double lat2, double cosLat2, double lon2) {
+		double sinHalfLat = Math.sin((lat2 - lat1) / 2);
+		double sinHalfLon = Math.sin((lon2 - lon1) / 2);
+		double h = sinHalfLat * sinHalfLat + cosLat1 * cosLat2 * sinHalfLon * sinHalfLon;
+		double angle = 2 * Math.asin(Math.min(1.0, Math.sqrt(h)));
+
+		return Math.toDegrees(angle) * MILES_PER_DEGREE;
+	}
+
+	/**
+	 * Converts a distance in miles to the length of the chord between the two points
+	 * on the unit sphere. Chord length grows with the distance, so it can be compared
+	 * with a plain euclidean distance.
+	 * @param miles
+	 * @return double
+	 */
+	public static double milesToChord(double miles) {
+		if (miles >= MAX_DISTANCE_MILES) {
+			return 2.0;
+		}
+		double angle = Math.toRadians(miles / MILES_PER_DEGREE);
+		return 2 * Math.sin(angle / 2);
+	}
+}
@@ -0,0 +1,17 @@
+package com.openclassrooms.tourguide.geo;
+
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+
+/**
+ * An attraction found by the AttractionIndex together with its distance in miles
+ * from the queried location.
+ */
+public class NearbyAttraction {
+	public final Attraction attraction;
+	public final double     distance;
+
+	public NearbyAttraction(Attraction attraction, double distance) {
+		this.attraction = attraction;
+		this.distance = distance;
+	}
+}
@@ -0,0 +1,172 @@
+package com.openclassrooms.tourguide.geo;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Answers the k attractions closest to a location from candidates precomputed per cell of a latitude/longitude grid,
+ * so the many users of a city share one search of the AttractionIndex.
+ * Every point of a cell is within its half-diagonal r of its center c. If the k-th attraction closest to c is d_k away,
+ * the k attractions closest to any point of the cell are within d_k + r of that point, hence within d_k + 2r of c:
+ * those are the candidates of the cell. Each request only computes the exact distances to the candidates of its cell.
+ * The answers are the same as AttractionIndex.nearest, attractions at the same distance ordered as in the catalog.
+ * Setting another AttractionIndex drops every cell, the cells of the previous catalog are never answered from:
+ * a cell computed while the catalog changed is dropped, and the request is answered again from the new catalog.
+ */
+public class NearestAttractionsCache {
+	// about 7 miles, the size of a city center
+	public static final double DEFAULT_CELL_DEGREES = 0.1;
+	public static final long   DEFAULT_MAXIMUM_SIZE = 100_000;
+	// slack on the radius of the candidates, the exact distances decide for the borderline attractions
+	private static final double CANDIDATE_RADIUS_SLACK = 1.01;
+
+	private final int                          count;
+	private final GeoGrid                      grid;
+	private final Cache<CellKey, Attraction[]> cells;
+	private volatile Catalog                   catalog;
+
+	public NearestAttractionsCache(AttractionIndex attractionIndex, int count) {
+		this(attractionIndex, count, DEFAULT_CELL_DEGREES, DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * @param attractionIndex
+	 * @param count number of attractions answered
+	 * @param cellDegrees width of a cell, in degrees of latitude and longitude
+	 * @param maximumSize maximum number of cells kept
+	 */
+	public NearestAttractionsCache(AttractionIndex attractionIndex, int count, double cellDegrees, long maximumSize) {
+		this.count = count;
+		this.grid = new GeoGrid(cellDegrees);
+		this.cells = CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.recordStats()
+				.build();
+		this.catalog = new Catalog(attractionIndex, 0);
+	}
+
+	/**
+	 * This method is used to answer from another attraction catalog, every cell is computed again.
+	 * @param attractionIndex
+	 */
+	public synchronized void setAttractionIndex(AttractionIndex attractionIndex) {
+		catalog = new Catalog(attractionIndex, catalog.version + 1);
+		cells.invalidateAll();
+	}
+
+	/**
+	 * This method is used to get the attractions closest to a location, closest first.
+	 * @param location
+	 * @return List<NearbyAttraction> the count closest attractions, or all of them if the catalog is smaller
+	 */
+	public List<NearbyAttraction> nearest(Location location) {
+		long row = grid.row(location.latitude);
+		long column = grid.column(location.longitude);
+		Catalog current;
+		Attraction[] candidates;
+		do {
+			current = catalog;
+			candidates = cell(current, row, column);
+		} while (catalog != current);
+
+		List<NearbyAttraction> nearest = new ArrayList<>(candidates.length);
+		for (Attraction candidate : candidates) {
+			nearest.add(new NearbyAttraction(candidate, GeoMath.distanceMiles(candidate, location)));
+		}
+		// stable, the candidates at the same distance stay in catalog order
+		nearest.sort(Comparator.comparingDouble(nearby -> nearby.distance));
+		return nearest.size() > count ? new ArrayList<>(nearest.subList(0, count)) : nearest;
+	}
+
+	public CacheStats getStats() {
+		return cells.stats();
+	}
+
+	public long size() {
+		return cells.size();
+	}
+
+	/**
+	 * The candidates of a cell for a version of the catalog, computed unless they are cached.
+	 */
+	private Attraction[] cell(Catalog current, long row, long column) {
+		CellKey key = new CellKey(current.version, GeoGrid.key(row, column));
+		Attraction[] candidates = cells.getIfPresent(key);
+		if (candidates == null) {
+			// concurrent misses on one cell may both compute it, which costs less than making them wait
+			candidates = candidates(current.index, row, column);
+			cells.put(key, candidates);
+			if (catalog != current) {
+				// the catalog changed while the cell was computed, the put may have come after the cells were dropped
+				cells.invalidate(key);
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * The attractions which can be among the closest to a point of the cell, in catalog order.
+	 */
+	private Attraction[] candidates(AttractionIndex attractionIndex, long row, long column) {
+		if (attractionIndex.size() <= count) {
+			return attractionIndex.getAttractions().toArray(new Attraction[0]);
+		}
+		Location center = grid.center(row, column);
+		List<NearbyAttraction> nearest = attractionIndex.nearest(center, count);
+		double radius = (nearest.get(nearest.size() - 1).distance + 2 * grid.halfDiagonalMiles(row, column)) * CANDIDATE_RADIUS_SLACK;
+		return attractionIndex.withinRadius(center, radius).stream()
+				.map(nearby -> nearby.attraction)
+				.toArray(Attraction[]::new);
+	}
+
+	/**
+	 * An attraction index and the number of times it was set.
+	 */
+	private static final class Catalog {
+		private final AttractionIndex index;
+		private final int             version;
+
+		private Catalog(AttractionIndex index, int version) {
+			this.index = index;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * A cell of the grid, for one version of the catalog.
+	 */
+	private static final class CellKey {
+		private final int  catalogVersion;
+		private final long cell;
+
+		private CellKey(int catalogVersion, long cell) {
+			this.catalogVersion = catalogVersion;
+			this.cell = cell;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof CellKey)) {
+				return false;
+			}
+			CellKey that = (CellKey) o;
+			return catalogVersion == that.catalogVersion && cell == that.cell;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(catalogVersion, cell);
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package com.openclassrooms.tourguide.geo;
+
+import com.google.common.collect.Lists;
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Finds every attraction strictly closer than a given distance to any of a large set of locations.
+ * The locations are bucketed into a latitude/longitude grid whose cells are about the distance wide.
+ * The attraction index is queried once per cell, around its center with a radius grown by the half-diagonal
+ * of the cell, and only the few attractions found are tested against the locations of the cell.
+ * Many locations close to each other thus cost a single index query, instead of one each.
+ * @param <T> owner of the locations, for instance a user
+ */
+public class SpatialJoin<T> {
+	// slack on the radius of a cell query, the exact test of every location decides for the borderline attractions
+	private static final double CELL_RADIUS_SLACK = 1.01;
+	private static final double MIN_CELL_DEGREES  = 0.01;
+	private static final int    CELLS_PER_TASK    = 256;
+
+	private final AttractionIndex          attractionIndex;
+	private final double                   miles;
+	private final GeoGrid                  grid;
+	private final Map<Long, Cell>          cells = new HashMap<>();
+	private final List<T>                  owners = new ArrayList<>();
+	private final Map<T, Integer>          ownerIndexes = new IdentityHashMap<>();
+	private final Map<Attraction, Integer> catalogIndexes = new IdentityHashMap<>();
+	private int                            locationCount;
+
+	/**
+	 * @param attractionIndex
+	 * @param miles an attraction matches a location strictly closer than this
+	 */
+	public SpatialJoin(AttractionIndex attractionIndex, double miles) {
+		this.attractionIndex = attractionIndex;
+		this.miles = miles;
+		this.grid = new GeoGrid(Math.max(MIN_CELL_DEGREES, miles / GeoMath.MILES_PER_DEGREE));
+		List<Attraction> attractions = attractionIndex.getAttractions();
+		for (int i = 0; i < attractions.size(); i++) {
+			catalogIndexes.put(attractions.get(i), i);
+		}
+	}
+
+	/**
+	 * This method is used to add a location to join. Not thread-safe, the locations are added by one thread.
+	 * @param owner
+	 * @param sequence identifies the location among those of its owner
+	 * @param latitude
+	 * @param longitude
+	 */
+	public void add(T owner, int sequence, double latitude, double longitude) {
+		Integer ownerIndex = ownerIndexes.get(owner);
+		if (ownerIndex == null) {
+			ownerIndex = owners.size();
+			owners.add(owner);
+			ownerIndexes.put(owner, ownerIndex);
+		}
+		long row = grid.row(latitude);
+		long column = grid.column(longitude);
+		cells.computeIfAbsent(GeoGrid.key(row, column), key -> new Cell(row, column))
+				.add(ownerIndex, sequence, latitude, longitude);
+		locationCount++;
+	}
+
+	public int getLocationCount() {
+		return locationCount;
+	}
+
+	public int getCellCount() {
+		return cells.size();
+	}
+
+	/**
+	 * This method is used to join the locations added with the attractions, the cells in parallel.
+	 * @return List<Match> one per location and attraction strictly closer than the distance, in no particular order
+	 */
+	public List<Match<T>> join() {
+		return join(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Same as {@link #join()}, with the cells spread in chunks over the given executor.
+	 * @param executor
+	 * @return List<Match>
+	 */
+	public List<Match<T>> join(Executor executor) {
+		List<Cell> allCells = new ArrayList<>(cells.values());
+		List<CompletableFuture<List<Match<T>>>> chunks = new ArrayList<>();
+		for (List<Cell> chunk : Lists.partition(allCells, CELLS_PER_TASK)) {
+			chunks.add(CompletableFuture.supplyAsync(() -> {
+				List<Match<T>> matches = new ArrayList<>();
+				chunk.forEach(cell -> matches.addAll(cell.join()));
+				return matches;
+			}, executor));
+		}
+		List<Match<T>> matches = new ArrayList<>();
+		chunks.forEach(chunk -> matches.addAll(chunk.join()));
+		return matches;
+	}
+
+	/**
+	 * A location and an attraction close to it.
+	 */
+	public static class Match<T> {
+		public final T          owner;
+		public final int        sequence;
+		public final Attraction attraction;
+		// position of the attraction in the catalog of the index, to order the matches of one location
+		public final int        catalogIndex;
+
+		public Match(T owner, int sequence, Attraction attraction, int catalogIndex) {
+			this.owner = owner;
+			this.sequence = sequence;
+			this.attraction = attraction;
+			this.catalogIndex = catalogIndex;
+		}
+	}
+
+	/**
+	 * The locations of one grid cell, kept in parallel arrays.
+	 */
+	private final class Cell {
+		private final long row;
+		private final long column;
+		private int[]      ownerIndexes = new int[4];
+		private int[]      sequences    = new int[4];
+		private double[]   latitudes    = new double[4];
+		private double[]   longitudes   = new double[4];
+		private int        size;
+
+		private Cell(long row, long column) {
+			this.row = row;
+			this.column = column;
+		}
+
+		private void add(int ownerIndex, int sequence, double latitude, double longitude) {
+			if (size == sequences.length) {
+				int capacity = size * 2;
+				ownerIndexes = Arrays.copyOf(ownerIndexes, capacity);
+				sequences = Arrays.copyOf(sequences, capacity);
+				latitudes = Arrays.copyOf(latitudes, capacity);
+				longitudes = Arrays.copyOf(longitudes, capacity);
+			}
+			ownerIndexes[size] = ownerIndex;
+			sequences[size] = sequence;
+			latitudes[size] = latitude;
+			longitudes[size] = longitude;
+			size++;
+		}
+
+		private List<Match<T>> join() {
+			List<Match<T>> matches = new ArrayList<>();
+			List<NearbyAttraction> candidates = attractionIndex.withinRadius(grid.center(row, column),
+					(miles + grid.halfDiagonalMiles(row, column)) * CELL_RADIUS_SLACK);
+			if (candidates.isEmpty()) {
+				return matches;
+			}
+			for (int i = 0; i < size; i++) {
+				Location location = new Location(latitudes[i], longitudes[i]);
+				for (NearbyAttraction candidate : candidates) {
+					if (GeoMath.distanceMiles(location, candidate.attraction) < miles) {
+						matches.add(new Match<>(owners.get(ownerIndexes[i]), sequences[i], candidate.attraction,
+								catalogIndexes.get(candidate.attraction)));
+					}
+				}
+			}
+			return matches;
+		}
+	}
+}
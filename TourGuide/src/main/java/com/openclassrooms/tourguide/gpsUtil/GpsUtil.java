@@ -1,5 +1,6 @@
 package com.openclassrooms.tourguide.gpsUtil;
 
+import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.RateLimiter;
 import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
 import com.openclassrooms.tourguide.gpsUtil.location.Location;
@@ -7,14 +8,20 @@ import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
 
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 public class GpsUtil {
-    private static final RateLimiter rateLimiter = RateLimiter.create(1000.0);
+    public static final double PERMITS_PER_SECOND = 1000.0;
+    // largest number of users located by one request of getUserLocations
+    public static final int MAX_BATCH_SIZE = 100;
+    private static final RateLimiter rateLimiter = RateLimiter.create(PERMITS_PER_SECOND);
 
     public GpsUtil() {
     }
@@ -22,6 +29,38 @@ public class GpsUtil {
     public VisitedLocation getUserLocation(UUID userId) {
         rateLimiter.acquire();
         this.sleep();
+        return this.locate(userId);
+    }
+
+    /**
+     * Locates several users. The users are sent by requests of at most MAX_BATCH_SIZE users,
+     * each request takes the permits of all its users at once, and its lookups are pipelined
+     * in a single round trip, so a request takes about as long as locating one user.
+     * @param userIds
+     * @return Map<UUID, VisitedLocation> in the order of userIds
+     */
+    public Map<UUID, VisitedLocation> getUserLocations(Collection<UUID> userIds) {
+        Map<UUID, VisitedLocation> visitedLocations = new LinkedHashMap<>();
+        for (List<UUID> batch : Iterables.partition(userIds, MAX_BATCH_SIZE)) {
+            visitedLocations.putAll(this.locateBatch(batch));
+        }
+        return visitedLocations;
+    }
+
+    private Map<UUID, VisitedLocation> locateBatch(List<UUID> userIds) {
+        Map<UUID, VisitedLocation> visitedLocations = new LinkedHashMap<>();
+        if (userIds.isEmpty()) {
+            return visitedLocations;
+        }
+        rateLimiter.acquire(userIds.size());
+        this.sleep();
+        for (UUID userId : userIds) {
+            visitedLocations.put(userId, this.locate(userId));
+        }
+        return visitedLocations;
+    }
+
+    private VisitedLocation locate(UUID userId) {
         double longitude = ThreadLocalRandom.current().nextDouble(-180.0, 180.0);
         longitude = Double.parseDouble(String.format("%.6f", longitude));
         double latitude = ThreadLocalRandom.current().nextDouble(-85.05112878, 85.05112878);
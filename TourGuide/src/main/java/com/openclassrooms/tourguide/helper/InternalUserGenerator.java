@@ -0,0 +1,106 @@
+package com.openclassrooms.tourguide.helper;
+
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.user.RetentionPolicy;
+import com.openclassrooms.tourguide.user.User;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Generates the internal test users, in parallel.
+ * Every user is generated from its own random generator, seeded from the seed and the user index,
+ * so the same seed and reference time always give the same users whatever the number of threads.
+ */
+public class InternalUserGenerator {
+	public static final long DEFAULT_SEED = 42;
+
+	// odd constant spreading the seeds of consecutive users apart
+	private static final long   USER_SEED_STRIDE    = 0xBF58476D1CE4E5B9L;
+	private static final int    HISTORY_SIZE        = 3;
+	private static final int    HISTORY_DAYS        = 30;
+	private static final double MAX_LATITUDE        = 85.05112878;
+
+	/**
+	 * When the TourGuideService generates its internal users.
+	 */
+	public enum Initialization {
+		// in its constructor
+		EAGER,
+		// in a background thread started by its constructor, the callers needing users wait for it
+		BACKGROUND
+	}
+
+	private final long           seed;
+	private final Instant        referenceTime;
+	private final Initialization initialization;
+
+	public InternalUserGenerator() {
+		this(DEFAULT_SEED, Initialization.EAGER);
+	}
+
+	public InternalUserGenerator(long seed, Initialization initialization) {
+		this(seed, Instant.now().truncatedTo(ChronoUnit.DAYS), initialization);
+	}
+
+	/**
+	 * @param seed seed of the generated users
+	 * @param referenceTime the visited locations are dated up to 30 days before it
+	 * @param initialization when the TourGuideService generates its internal users
+	 */
+	public InternalUserGenerator(long seed, Instant referenceTime, Initialization initialization) {
+		this.seed = seed;
+		this.referenceTime = referenceTime;
+		this.initialization = initialization;
+	}
+
+	public Initialization getInitialization() {
+		return initialization;
+	}
+
+	/**
+	 * This method is used to generate users named internalUser0 to internalUser[count - 1],
+	 * each with a location history of three random points.
+	 * @param count
+	 * @param retentionPolicy retention policy of the location history of the users
+	 * @return List<User> in index order
+	 */
+	public List<User> generate(int count, RetentionPolicy retentionPolicy) {
+		return IntStream.range(0, count)
+				.parallel()
+				.mapToObj(index -> generateUser(index, retentionPolicy))
+				.collect(Collectors.toList());
+	}
+
+	private User generateUser(int index, RetentionPolicy retentionPolicy) {
+		SplittableRandom random = new SplittableRandom(seed + index * USER_SEED_STRIDE);
+		String userName = "internalUser" + index;
+		String phone = "000";
+		String email = userName + "@tourGuide.com";
+		User user = new User(randomUUID(random), userName, phone, email);
+		user.getLocationHistory().setRetentionPolicy(retentionPolicy);
+		for (int i = 0; i < HISTORY_SIZE; i++) {
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(),
+					new Location(random.nextDouble(-MAX_LATITUDE, MAX_LATITUDE), random.nextDouble(-180, 180)),
+					Date.from(referenceTime.minus(Duration.ofDays(random.nextInt(HISTORY_DAYS))))));
+		}
+		return user;
+	}
+
+	/**
+	 * Version 4 UUID drawn from the given generator instead of SecureRandom.
+	 */
+	private static UUID randomUUID(SplittableRandom random) {
+		long mostSignificantBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+		long leastSignificantBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+		return new UUID(mostSignificantBits, leastSignificantBits);
+	}
+}
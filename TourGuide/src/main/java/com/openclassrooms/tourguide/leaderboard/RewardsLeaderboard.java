@@ -0,0 +1,80 @@
+package com.openclassrooms.tourguide.leaderboard;
+
+import com.openclassrooms.tourguide.models.LeaderboardEntryDTO;
+import com.openclassrooms.tourguide.user.User;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Users ranked by their total reward points, most points first.
+ * Every user with points has one entry in a skip list, so an update costs O(log n)
+ * and reading the top k costs O(k), whatever the number of users.
+ */
+public class RewardsLeaderboard {
+	private static final Comparator<Entry> RANKING = Comparator.comparingInt((Entry entry) -> entry.rewardPoints).reversed()
+			.thenComparing(entry -> entry.userId);
+
+	private final NavigableSet<Entry> ranking = new ConcurrentSkipListSet<>(RANKING);
+	private final Map<UUID, Entry>    entries = new ConcurrentHashMap<>();
+
+	/**
+	 * This method is used to move a user to the rank of their current total reward points.
+	 * @param user
+	 */
+	public void update(User user) {
+		// compute runs one update of a user at a time, so the user never has two entries in the ranking,
+		// and the total is read inside it, so the last update to run ranks the user with their latest total
+		entries.compute(user.getUserId(), (userId, previous) -> {
+			int rewardPoints = user.getRewardPoints();
+			if (previous != null) {
+				if (previous.rewardPoints == rewardPoints) {
+					return previous;
+				}
+				ranking.remove(previous);
+			}
+			Entry entry = new Entry(userId, user.getUserName(), rewardPoints);
+			ranking.add(entry);
+			return entry;
+		});
+	}
+
+	/**
+	 * This method is used to get the users with the most reward points, ties ordered by user id.
+	 * A user being updated meanwhile may be missing from the answer.
+	 * @param size maximum number of users
+	 * @return List<LeaderboardEntryDTO>
+	 */
+	public List<LeaderboardEntryDTO> top(int size) {
+		List<LeaderboardEntryDTO> top = new ArrayList<>(Math.max(0, Math.min(size, entries.size())));
+		Iterator<Entry> iterator = ranking.iterator();
+		while (top.size() < size && iterator.hasNext()) {
+			Entry entry = iterator.next();
+			top.add(new LeaderboardEntryDTO(top.size() + 1, entry.userName, entry.rewardPoints));
+		}
+		return top;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	private static final class Entry {
+		private final UUID   userId;
+		private final String userName;
+		private final int    rewardPoints;
+
+		private Entry(UUID userId, String userName, int rewardPoints) {
+			this.userId = userId;
+			this.userName = userName;
+			this.rewardPoints = rewardPoints;
+		}
+	}
+}
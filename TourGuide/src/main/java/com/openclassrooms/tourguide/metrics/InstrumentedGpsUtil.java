@@ -0,0 +1,39 @@
+package com.openclassrooms.tourguide.metrics;
+
+import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * GpsUtil which times every location request of the GpsUtil it wraps.
+ * The asynchronous batch requests go through getUserLocations, so they are timed as well.
+ */
+public class InstrumentedGpsUtil extends GpsUtil {
+	private final GpsUtil          delegate;
+	private final TourGuideMetrics metrics;
+
+	public InstrumentedGpsUtil(GpsUtil delegate, TourGuideMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public VisitedLocation getUserLocation(UUID userId) {
+		return metrics.gpsUserLocation().record(() -> delegate.getUserLocation(userId));
+	}
+
+	@Override
+	public Map<UUID, VisitedLocation> getUserLocations(Collection<UUID> userIds) {
+		return metrics.gpsUserLocations().record(() -> delegate.getUserLocations(userIds));
+	}
+
+	@Override
+	public List<Attraction> getAttractions() {
+		return delegate.getAttractions();
+	}
+}
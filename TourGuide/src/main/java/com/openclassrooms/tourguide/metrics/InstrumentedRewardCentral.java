@@ -0,0 +1,23 @@
+package com.openclassrooms.tourguide.metrics;
+
+import com.openclassrooms.tourguide.rewardCentral.RewardCentral;
+
+import java.util.UUID;
+
+/**
+ * RewardCentral which times every call to the RewardCentral it wraps.
+ */
+public class InstrumentedRewardCentral extends RewardCentral {
+	private final RewardCentral    delegate;
+	private final TourGuideMetrics metrics;
+
+	public InstrumentedRewardCentral(RewardCentral delegate, TourGuideMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+		return metrics.rewardPoints().record(() -> delegate.getAttractionRewardPoints(attractionId, userId));
+	}
+}
@@ -0,0 +1,30 @@
+package com.openclassrooms.tourguide.metrics;
+
+import com.openclassrooms.tourguide.tripPricer.Provider;
+import com.openclassrooms.tourguide.tripPricer.TripPricer;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * TripPricer which times every price request of the TripPricer it wraps.
+ */
+public class InstrumentedTripPricer extends TripPricer {
+	private final TripPricer       delegate;
+	private final TourGuideMetrics metrics;
+
+	public InstrumentedTripPricer(TripPricer delegate, TourGuideMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay, int rewardsPoints) {
+		return metrics.tripPrice().record(() -> delegate.getPrice(apiKey, attractionId, adults, children, nightsStay, rewardsPoints));
+	}
+
+	@Override
+	public String getProviderName(String apiKey, int adults) {
+		return delegate.getProviderName(apiKey, adults);
+	}
+}
@@ -0,0 +1,235 @@
+package com.openclassrooms.tourguide.metrics;
+
+import com.openclassrooms.tourguide.executor.BoundedExecutor;
+import com.openclassrooms.tourguide.geo.NearestAttractionsCache;
+import com.openclassrooms.tourguide.rewardCentral.ResilientRewardCentral;
+import com.openclassrooms.tourguide.rewardCentral.RewardPointsCache;
+import com.openclassrooms.tourguide.tracker.TrackingEngine;
+import com.openclassrooms.tourguide.tracker.TrackingPipeline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the tracking, rewards and pricing pipelines.
+ * Latency timers publish percentile histograms, so tail latencies can be read per dependency.
+ */
+public class TourGuideMetrics {
+	private final MeterRegistry registry;
+	private final Timer         gpsUserLocationTimer;
+	private final Timer         gpsUserLocationsTimer;
+	private final Timer         rewardPointsTimer;
+	private final Timer         tripPriceTimer;
+	private final Timer         calculateRewardsTimer;
+	private final Counter       rewardsGrantedCounter;
+	private final Counter       rewardsPendingCounter;
+
+	public TourGuideMetrics(MeterRegistry registry) {
+		this.registry = registry;
+		gpsUserLocationTimer = latencyTimer("tourguide.gpsutil.user.location", "GpsUtil.getUserLocation calls");
+		gpsUserLocationsTimer = latencyTimer("tourguide.gpsutil.user.locations", "GpsUtil.getUserLocations batch calls");
+		rewardPointsTimer = latencyTimer("tourguide.rewardcentral.reward.points", "RewardCentral.getAttractionRewardPoints calls");
+		tripPriceTimer = latencyTimer("tourguide.trippricer.price", "TripPricer.getPrice calls");
+		calculateRewardsTimer = latencyTimer("tourguide.rewards.calculate", "RewardsService reward calculations of one user");
+		rewardsGrantedCounter = Counter.builder("tourguide.rewards.granted")
+				.description("Rewards added to users")
+				.register(registry);
+		rewardsPendingCounter = Counter.builder("tourguide.rewards.pending")
+				.description("Rewards added before RewardCentral answered, their points are set later")
+				.register(registry);
+	}
+
+	/**
+	 * This method is used to get metrics which are not published anywhere.
+	 * @return TourGuideMetrics
+	 */
+	public static TourGuideMetrics noop() {
+		return new TourGuideMetrics(new CompositeMeterRegistry());
+	}
+
+	public MeterRegistry getRegistry() {
+		return registry;
+	}
+
+	public Timer gpsUserLocation() {
+		return gpsUserLocationTimer;
+	}
+
+	public Timer gpsUserLocations() {
+		return gpsUserLocationsTimer;
+	}
+
+	public Timer rewardPoints() {
+		return rewardPointsTimer;
+	}
+
+	public Timer tripPrice() {
+		return tripPriceTimer;
+	}
+
+	public Timer calculateRewards() {
+		return calculateRewardsTimer;
+	}
+
+	public Counter rewardsGranted() {
+		return rewardsGrantedCounter;
+	}
+
+	public Counter rewardsPending() {
+		return rewardsPendingCounter;
+	}
+
+	/**
+	 * This method is used to publish the queue depth and active threads of an executor.
+	 * @param executorService
+	 * @param name
+	 */
+	public void monitorExecutor(ExecutorService executorService, String name) {
+		new ExecutorServiceMetrics(executorService, name, Collections.emptyList()).bindTo(registry);
+	}
+
+	/**
+	 * This method is used to publish the queue depth and active threads of a shared executor,
+	 * with the tasks it rejected and the time its tasks waited in its queue.
+	 * @param executor
+	 */
+	public void monitorExecutor(BoundedExecutor executor) {
+		monitorExecutor(executor, executor.getName());
+		FunctionCounter.builder("tourguide.executor.rejected", executor, BoundedExecutor::getRejectedCount)
+				.tag("name", executor.getName())
+				.description("Tasks which found the threads and the queue of the executor busy")
+				.register(registry);
+		FunctionTimer.builder("tourguide.executor.wait", executor, BoundedExecutor::getStartedCount,
+						BoundedExecutor::getTotalWaitNanos, TimeUnit.NANOSECONDS)
+				.tag("name", executor.getName())
+				.description("Time the tasks waited in the queue of the executor")
+				.register(registry);
+	}
+
+	/**
+	 * This method is used to publish the tasks of the TrackingEngine and the result of its last sweep.
+	 * @param trackingEngine
+	 */
+	public void monitorTrackingEngine(TrackingEngine trackingEngine) {
+		Gauge.builder("tourguide.tracking.tasks.active", trackingEngine, TrackingEngine::getActiveTaskCount)
+				.description("Tracking tasks running")
+				.register(registry);
+		Gauge.builder("tourguide.tracking.tasks.queued", trackingEngine, TrackingEngine::getQueuedTaskCount)
+				.description("Tracking tasks submitted but not started")
+				.register(registry);
+		Gauge.builder("tourguide.tracking.sweep.duration", trackingEngine, e -> e.getLastSweep().getElapsedMillis() / 1000.0)
+				.description("Duration of the last tracking sweep")
+				.baseUnit("seconds")
+				.register(registry);
+		Gauge.builder("tourguide.tracking.sweep.throughput", trackingEngine, e -> e.getLastSweep().getUsersPerSecond())
+				.description("Users tracked per second during the last tracking sweep")
+				.register(registry);
+		monitorExecutor(trackingEngine.getExecutorService(), "tracking");
+	}
+
+	/**
+	 * This method is used to publish the users waiting in and going through the rewards and pricing stages.
+	 * @param trackingPipeline
+	 */
+	public void monitorTrackingPipeline(TrackingPipeline trackingPipeline) {
+		Gauge.builder("tourguide.tracking.pipeline.queued", trackingPipeline, TrackingPipeline::getRewardsQueuedCount)
+				.tag("stage", "rewards")
+				.description("Users waiting for a tracking pipeline stage")
+				.register(registry);
+		Gauge.builder("tourguide.tracking.pipeline.active", trackingPipeline, TrackingPipeline::getRewardsActiveCount)
+				.tag("stage", "rewards")
+				.description("Users going through a tracking pipeline stage")
+				.register(registry);
+		Gauge.builder("tourguide.tracking.pipeline.queued", trackingPipeline, TrackingPipeline::getPricingQueuedCount)
+				.tag("stage", "pricing")
+				.description("Users waiting for a tracking pipeline stage")
+				.register(registry);
+		Gauge.builder("tourguide.tracking.pipeline.active", trackingPipeline, TrackingPipeline::getPricingActiveCount)
+				.tag("stage", "pricing")
+				.description("Users going through a tracking pipeline stage")
+				.register(registry);
+	}
+
+	/**
+	 * This method is used to publish the hedges, timeouts and bulkhead rejections of the calls to RewardCentral.
+	 * @param rewardCentral
+	 */
+	public void monitorResilientRewardCentral(ResilientRewardCentral rewardCentral) {
+		FunctionCounter.builder("tourguide.rewardcentral.hedges", rewardCentral, ResilientRewardCentral::getHedgeCount)
+				.description("RewardCentral requests sent again because the first one was slow")
+				.register(registry);
+		FunctionCounter.builder("tourguide.rewardcentral.hedge.wins", rewardCentral, ResilientRewardCentral::getHedgeWinCount)
+				.description("Hedged RewardCentral requests which answered first")
+				.register(registry);
+		FunctionCounter.builder("tourguide.rewardcentral.timeouts", rewardCentral, ResilientRewardCentral::getTimeoutCount)
+				.description("RewardCentral calls which did not answer within the call timeout")
+				.register(registry);
+		FunctionCounter.builder("tourguide.rewardcentral.rejections", rewardCentral, ResilientRewardCentral::getRejectionCount)
+				.description("RewardCentral calls rejected by the bulkhead")
+				.register(registry);
+		Gauge.builder("tourguide.rewardcentral.requests.running", rewardCentral, ResilientRewardCentral::getRunningRequestCount)
+				.description("RewardCentral requests running, hedges included")
+				.register(registry);
+		Gauge.builder("tourguide.rewardcentral.hedge.delay", rewardCentral, c -> c.getHedgeDelayNanos() / 1e9)
+				.description("Delay after which a RewardCentral call is hedged")
+				.baseUnit("seconds")
+				.register(registry);
+	}
+
+	/**
+	 * This method is used to publish the hits, misses and loads of the reward points cache.
+	 * @param rewardPointsCache
+	 */
+	public void monitorRewardPointsCache(RewardPointsCache rewardPointsCache) {
+		FunctionCounter.builder("tourguide.reward.points.cache.hits", rewardPointsCache, c -> c.getStats().hitCount())
+				.description("Reward points found in the cache")
+				.register(registry);
+		FunctionCounter.builder("tourguide.reward.points.cache.misses", rewardPointsCache, c -> c.getStats().missCount())
+				.description("Reward points missing from the cache")
+				.register(registry);
+		FunctionCounter.builder("tourguide.reward.points.cache.loads", rewardPointsCache, c -> c.getStats().loadCount())
+				.description("Reward points loaded from RewardCentral, refreshes included")
+				.register(registry);
+		Gauge.builder("tourguide.reward.points.cache.size", rewardPointsCache, RewardPointsCache::size)
+				.description("Entries in the reward points cache")
+				.register(registry);
+	}
+
+	/**
+	 * This method is used to publish the hits and misses of the cache of the nearest attractions per cell.
+	 * @param nearestAttractionsCache
+	 */
+	public void monitorNearestAttractionsCache(NearestAttractionsCache nearestAttractionsCache) {
+		FunctionCounter.builder("tourguide.nearest.attractions.cache.hits", nearestAttractionsCache, c -> c.getStats().hitCount())
+				.description("Nearest attractions answered from the candidates of a cell already computed")
+				.register(registry);
+		FunctionCounter.builder("tourguide.nearest.attractions.cache.misses", nearestAttractionsCache, c -> c.getStats().missCount())
+				.description("Nearest attractions for which the candidates of a cell were computed")
+				.register(registry);
+		FunctionCounter.builder("tourguide.nearest.attractions.cache.evictions", nearestAttractionsCache, c -> c.getStats().evictionCount())
+				.description("Cells dropped from the nearest attractions cache to stay within its maximum size")
+				.register(registry);
+		Gauge.builder("tourguide.nearest.attractions.cache.size", nearestAttractionsCache, NearestAttractionsCache::size)
+				.description("Cells in the nearest attractions cache")
+				.register(registry);
+	}
+
+	private Timer latencyTimer(String name, String description) {
+		return Timer.builder(name)
+				.description(description)
+				.publishPercentileHistogram()
+				.minimumExpectedValue(Duration.ofMillis(1))
+				.maximumExpectedValue(Duration.ofSeconds(10))
+				.register(registry);
+	}
+}
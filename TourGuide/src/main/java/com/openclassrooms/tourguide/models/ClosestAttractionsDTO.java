@@ -18,5 +18,7 @@ public class ClosestAttractionsDTO {
     private double userLatitude;
     private double distance;
     private int rewardPoints;
+    // true while the reward points are not known yet, rewardPoints is then 0
+    private boolean pending;
 
 }
@@ -0,0 +1,18 @@
+package com.openclassrooms.tourguide.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class LeaderboardEntryDTO {
+
+    private int rank;
+    private String userName;
+    private int rewardPoints;
+
+}
@@ -0,0 +1,351 @@
+package com.openclassrooms.tourguide.persistence;
+
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.user.LocationHistory;
+import com.openclassrooms.tourguide.user.RetentionPolicy;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserPreferences;
+import com.openclassrooms.tourguide.user.UserReward;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Saves every user, with their location history and rewards, to a binary snapshot file and reads them back.
+ * A snapshot is written to a temporary file which then replaces the previous snapshot,
+ * so a crash while writing never leaves a truncated snapshot behind.
+ * It is read through memory-mapped regions of the file.
+ *
+ * Format, version 1, big-endian:
+ * <pre>
+ * header  int magic "TGUS", int version, long creation time (epoch ms), int user count
+ * user    long, long user id; string name, phone, email; long latest location time or Long.MIN_VALUE;
+ *         int attraction proximity, trip duration, ticket quantity, adults, children;
+ *         int point count, int points already checked for rewards, per point double latitude, double longitude, long time;
+ *         int reward count, per reward double latitude, double longitude, long time, int points or -1 if pending,
+ *         string attraction name, city, state, double attraction latitude, double attraction longitude
+ * string  int byte count or -1 for null, UTF-8 bytes
+ * </pre>
+ */
+public class UserSnapshotStore {
+	public static final int VERSION = 1;
+
+	private static final int MAGIC              = 0x54475553;
+	private static final int USER_COUNT_OFFSET  = 16;
+	private static final int WRITE_BUFFER_SIZE  = 1 << 20;
+	private static final int MAPPED_REGION_SIZE = 1 << 28;
+	private static final long NO_TIME           = Long.MIN_VALUE;
+	private static final int PENDING_POINTS     = -1;
+
+	private static final UserSnapshotStore DISABLED = new UserSnapshotStore(null, Duration.ZERO);
+
+	private final Path     path;
+	private final Duration interval;
+
+	/**
+	 * @param path snapshot file
+	 * @param interval time between two periodic snapshots, zero to only save at shutdown
+	 */
+	public UserSnapshotStore(Path path, Duration interval) {
+		this.path = path;
+		this.interval = interval;
+	}
+
+	/**
+	 * @return UserSnapshotStore which never saves nor restores anything
+	 */
+	public static UserSnapshotStore disabled() {
+		return DISABLED;
+	}
+
+	public boolean isEnabled() {
+		return path != null;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public Duration getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return boolean true if there is a snapshot to restore
+	 */
+	public boolean exists() {
+		return isEnabled() && Files.isRegularFile(path);
+	}
+
+	/**
+	 * This method is used to save the users, replacing the previous snapshot.
+	 * @param users
+	 * @return int number of users saved
+	 * @throws IOException
+	 */
+	public int write(Iterable<User> users) throws IOException {
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		int userCount = 0;
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ChannelOutput output = new ChannelOutput(channel);
+			output.putInt(MAGIC);
+			output.putInt(VERSION);
+			output.putLong(System.currentTimeMillis());
+			// patched once the users are counted, the repository may change while it is saved
+			output.putInt(0);
+			for (User user : users) {
+				writeUser(output, user);
+				userCount++;
+			}
+			output.flush();
+			channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, userCount), USER_COUNT_OFFSET);
+			channel.force(true);
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return userCount;
+	}
+
+	/**
+	 * This method is used to read the saved users.
+	 * The rewards are linked to the attractions of the catalog with the same name, and are rebuilt from the
+	 * snapshot for the attractions no longer in it.
+	 * @param retentionPolicy retention policy of the location history of the users
+	 * @param catalog current attraction catalog
+	 * @param catalogVersion version of the catalog, the points saved as checked are not checked for rewards again
+	 * @return List<User>
+	 * @throws IOException
+	 */
+	public List<User> read(RetentionPolicy retentionPolicy, List<Attraction> catalog, int catalogVersion) throws IOException {
+		Map<String, Attraction> attractionsByName = new HashMap<>();
+		catalog.forEach(attraction -> attractionsByName.put(attraction.attractionName, attraction));
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedInput input = new MappedInput(channel);
+			if (input.getInt() != MAGIC) {
+				throw new IOException(path + " is not a user snapshot");
+			}
+			int version = input.getInt();
+			if (version != VERSION) {
+				throw new IOException(path + " is a user snapshot of version " + version + ", expected " + VERSION);
+			}
+			input.getLong();
+			int userCount = input.getInt();
+			List<User> users = new ArrayList<>(userCount);
+			for (int i = 0; i < userCount; i++) {
+				users.add(readUser(input, retentionPolicy, attractionsByName, catalogVersion));
+			}
+			return users;
+		}
+	}
+
+	private static void writeUser(ChannelOutput output, User user) throws IOException {
+		output.putLong(user.getUserId().getMostSignificantBits());
+		output.putLong(user.getUserId().getLeastSignificantBits());
+		output.putString(user.getUserName());
+		output.putString(user.getPhoneNumber());
+		output.putString(user.getEmailAddress());
+		Date latestLocationTimestamp = user.getLatestLocationTimestamp();
+		output.putLong(latestLocationTimestamp == null ? NO_TIME : latestLocationTimestamp.getTime());
+
+		UserPreferences preferences = user.getUserPreferences();
+		output.putInt(preferences.getAttractionProximity());
+		output.putInt(preferences.getTripDuration());
+		output.putInt(preferences.getTicketQuantity());
+		output.putInt(preferences.getNumberOfAdults());
+		output.putInt(preferences.getNumberOfChildren());
+
+		LocationHistory.Points points = user.getLocationHistory().copyPoints();
+		output.putInt(points.size());
+		output.putInt(points.rewardedCount);
+		for (int i = 0; i < points.size(); i++) {
+			output.putDouble(points.latitudes[i]);
+			output.putDouble(points.longitudes[i]);
+			output.putLong(points.times[i]);
+		}
+
+		List<UserReward> rewards = new ArrayList<>(user.getUserRewards());
+		output.putInt(rewards.size());
+		for (UserReward reward : rewards) {
+			output.putDouble(reward.visitedLocation.location.latitude);
+			output.putDouble(reward.visitedLocation.location.longitude);
+			output.putLong(reward.visitedLocation.timeVisited.getTime());
+			output.putInt(reward.isPending() ? PENDING_POINTS : reward.getRewardPoints());
+			output.putString(reward.attraction.attractionName);
+			output.putString(reward.attraction.city);
+			output.putString(reward.attraction.state);
+			output.putDouble(reward.attraction.latitude);
+			output.putDouble(reward.attraction.longitude);
+		}
+	}
+
+	private static User readUser(MappedInput input, RetentionPolicy retentionPolicy,
+								 Map<String, Attraction> attractionsByName, int catalogVersion) throws IOException {
+		UUID userId = new UUID(input.getLong(), input.getLong());
+		User user = new User(userId, input.getString(), input.getString(), input.getString());
+		long latestLocationTimestamp = input.getLong();
+		if (latestLocationTimestamp != NO_TIME) {
+			user.setLatestLocationTimestamp(new Date(latestLocationTimestamp));
+		}
+
+		UserPreferences preferences = user.getUserPreferences();
+		preferences.setAttractionProximity(input.getInt());
+		preferences.setTripDuration(input.getInt());
+		preferences.setTicketQuantity(input.getInt());
+		preferences.setNumberOfAdults(input.getInt());
+		preferences.setNumberOfChildren(input.getInt());
+
+		// the points are all kept until the checked ones are known, then the retention policy applies
+		int pointCount = input.getInt();
+		int rewardedCount = input.getInt();
+		for (int i = 0; i < pointCount; i++) {
+			user.addToVisitedLocations(new VisitedLocation(userId, new Location(input.getDouble(), input.getDouble()),
+					new Date(input.getLong())));
+		}
+		user.getLocationHistory().setRetentionPolicy(retentionPolicy);
+		user.setRewardsWatermark(rewardedCount, catalogVersion);
+
+		int rewardCount = input.getInt();
+		List<UserReward> rewards = new ArrayList<>(rewardCount);
+		for (int i = 0; i < rewardCount; i++) {
+			VisitedLocation visitedLocation = new VisitedLocation(userId, new Location(input.getDouble(), input.getDouble()),
+					new Date(input.getLong()));
+			int rewardPoints = input.getInt();
+			String attractionName = input.getString();
+			String city = input.getString();
+			String state = input.getString();
+			double latitude = input.getDouble();
+			double longitude = input.getDouble();
+			Attraction attraction = attractionsByName.get(attractionName);
+			if (attraction == null) {
+				attraction = new Attraction(attractionName, city, state, latitude, longitude);
+			}
+			rewards.add(rewardPoints == PENDING_POINTS ? UserReward.pending(visitedLocation, attraction)
+					: new UserReward(visitedLocation, attraction, rewardPoints));
+		}
+		user.restoreUserRewards(rewards);
+		return user;
+	}
+
+	/**
+	 * Buffered writes to a file channel.
+	 */
+	private static final class ChannelOutput {
+		private final FileChannel channel;
+		private final ByteBuffer  buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+		private ChannelOutput(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		private void putInt(int value) throws IOException {
+			ensure(Integer.BYTES).putInt(value);
+		}
+
+		private void putLong(long value) throws IOException {
+			ensure(Long.BYTES).putLong(value);
+		}
+
+		private void putDouble(double value) throws IOException {
+			ensure(Double.BYTES).putDouble(value);
+		}
+
+		private void putString(String value) throws IOException {
+			if (value == null) {
+				putInt(-1);
+				return;
+			}
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			ensure(bytes.length).put(bytes);
+		}
+
+		private ByteBuffer ensure(int bytes) throws IOException {
+			if (bytes > buffer.capacity()) {
+				throw new IOException("Cannot write " + bytes + " bytes at once");
+			}
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+			return buffer;
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Reads a file through consecutive memory-mapped regions, so files over 2 GB can be read too.
+	 */
+	private static final class MappedInput {
+		private final FileChannel channel;
+		private final long        size;
+		private MappedByteBuffer  region;
+		private long              regionStart;
+
+		private MappedInput(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+			map(0);
+		}
+
+		private int getInt() throws IOException {
+			return ensure(Integer.BYTES).getInt();
+		}
+
+		private long getLong() throws IOException {
+			return ensure(Long.BYTES).getLong();
+		}
+
+		private double getDouble() throws IOException {
+			return ensure(Double.BYTES).getDouble();
+		}
+
+		private String getString() throws IOException {
+			int length = getInt();
+			if (length < 0) {
+				return null;
+			}
+			byte[] bytes = new byte[length];
+			ensure(length).get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		private ByteBuffer ensure(int bytes) throws IOException {
+			if (region.remaining() < bytes) {
+				long position = regionStart + region.position();
+				if (size - position < bytes) {
+					throw new IOException("User snapshot is truncated at byte " + position);
+				}
+				map(position);
+			}
+			return region;
+		}
+
+		private void map(long position) throws IOException {
+			regionStart = position;
+			region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_REGION_SIZE, size - position));
+		}
+	}
+}
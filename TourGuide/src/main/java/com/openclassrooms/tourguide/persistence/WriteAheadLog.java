@@ -0,0 +1,702 @@
+package com.openclassrooms.tourguide.persistence;
+
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.repository.UserRepository;
+import com.openclassrooms.tourguide.user.RetentionPolicy;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserReward;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the changes made to the users between two snapshots: new users, visited locations and rewards.
+ * The callers only copy their record to a buffer. A single writer thread writes everything appended since its previous
+ * write at once, which is a group commit, and forces it to disk according to the FsyncPolicy.
+ * The log is split into numbered segment files. Each run writes to new segments, the segments written before are
+ * replayed at startup, and the segments covered by a snapshot are deleted, which is how the log is compacted.
+ *
+ * Record, big-endian:
+ * <pre>
+ * int body byte count, int CRC32C of the body,
+ * body    byte type, long, long user id, then
+ *         LOCATION double latitude, double longitude, long time
+ *         REWARD   double latitude, double longitude, long time, int points,
+ *                  string attraction name, city, state, double attraction latitude, double attraction longitude
+ *         USER     string name, phone, email
+ * string  int byte count or -1 for null, UTF-8 bytes
+ * </pre>
+ * A record cut by a crash fails its checksum, and the replay of its segment stops there.
+ */
+public class WriteAheadLog implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+	/**
+	 * When the group commits are forced to disk.
+	 */
+	public enum FsyncPolicy {
+		// after every group commit, a crash loses nothing written
+		ALWAYS,
+		// at most once per fsync interval, a crash of the machine loses up to one interval
+		INTERVAL,
+		// never, the operating system writes the pages back, a crash of the process only loses what was not written yet
+		NEVER
+	}
+
+	private static final byte   LOCATION        = 1;
+	private static final byte   REWARD          = 2;
+	private static final byte   USER            = 3;
+	private static final int    HEADER_SIZE     = 2 * Integer.BYTES;
+	private static final String SEGMENT_SUFFIX  = ".wal";
+	// replayed users are spread over this many partitions per thread, the records of a user are all in one partition
+	private static final int    REPLAY_PARTITIONS_PER_THREAD = 4;
+
+	private static final WriteAheadLog DISABLED = new WriteAheadLog();
+
+	private final Path        directory;
+	private final long        segmentSize;
+	private final FsyncPolicy fsyncPolicy;
+	private final long        fsyncIntervalNanos;
+	// the segments before it were written by previous runs
+	private final long        firstSegment;
+
+	private final ReentrantLock lock        = new ReentrantLock();
+	private final Condition     workReady   = lock.newCondition();
+	private final Condition     bufferFree  = lock.newCondition();
+	private final Condition     committed   = lock.newCondition();
+	// filled by the callers while the writer writes the other one
+	private ByteBuffer  pending;
+	private ByteBuffer  writing;
+	// byte counts since the start: appended to pending, then written and forced as required by sync
+	private long        appendedBytes;
+	private long        syncedBytes;
+	private long        rolledAt;
+	private boolean     syncRequested;
+	private boolean     rollRequested;
+	private boolean     closed;
+	private IOException failure;
+	private long        segment;
+	private Thread      writer;
+
+	// only used by the writer thread
+	private FileChannel channel;
+	private boolean     dirty;
+	private long        lastForce = System.nanoTime();
+
+	private WriteAheadLog() {
+		directory = null;
+		segmentSize = 0;
+		fsyncPolicy = FsyncPolicy.NEVER;
+		fsyncIntervalNanos = 0;
+		firstSegment = 0;
+	}
+
+	/**
+	 * @param directory directory of the segment files, created if needed
+	 * @param segmentSize size from which a segment is closed and the next one started
+	 * @param bufferSize size of each of the two buffers, the callers wait while both are full
+	 * @param fsyncPolicy when the group commits are forced to disk
+	 * @param fsyncInterval time between two forces with FsyncPolicy.INTERVAL
+	 * @throws IOException
+	 */
+	public WriteAheadLog(Path directory, long segmentSize, int bufferSize, FsyncPolicy fsyncPolicy, Duration fsyncInterval)
+			throws IOException {
+		if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("segmentSize must be between 1 and " + Integer.MAX_VALUE + " bytes: " + segmentSize);
+		}
+		if (bufferSize < 4096) {
+			throw new IllegalArgumentException("bufferSize must be at least 4096 bytes: " + bufferSize);
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.fsyncPolicy = fsyncPolicy;
+		this.fsyncIntervalNanos = fsyncInterval.toNanos();
+		this.pending = ByteBuffer.allocateDirect(bufferSize);
+		this.writing = ByteBuffer.allocateDirect(bufferSize);
+
+		Files.createDirectories(directory);
+		List<Long> segments = segments();
+		firstSegment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+		segment = firstSegment;
+		channel = openSegment(segment);
+
+		writer = new Thread(this::writeLoop, "write-ahead-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * @return WriteAheadLog which never writes nor replays anything
+	 */
+	public static WriteAheadLog disabled() {
+		return DISABLED;
+	}
+
+	public boolean isEnabled() {
+		return directory != null;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * This method is used to log a new user.
+	 * @param user
+	 */
+	public void appendUser(User user) {
+		if (!isEnabled()) {
+			return;
+		}
+		RecordOutput record = new RecordOutput(USER, user.getUserId());
+		record.putString(user.getUserName());
+		record.putString(user.getPhoneNumber());
+		record.putString(user.getEmailAddress());
+		append(record.toBytes());
+	}
+
+	/**
+	 * This method is used to log a location added to the history of a user.
+	 * @param visitedLocation
+	 */
+	public void appendVisitedLocation(VisitedLocation visitedLocation) {
+		if (!isEnabled()) {
+			return;
+		}
+		RecordOutput record = new RecordOutput(LOCATION, visitedLocation.userId);
+		record.putVisitedLocation(visitedLocation);
+		append(record.toBytes());
+	}
+
+	/**
+	 * This method is used to log a reward granted to a user.
+	 * @param userId
+	 * @param userReward
+	 */
+	public void appendUserReward(UUID userId, UserReward userReward) {
+		if (!isEnabled()) {
+			return;
+		}
+		RecordOutput record = new RecordOutput(REWARD, userId);
+		record.putVisitedLocation(userReward.visitedLocation);
+		record.putInt(userReward.getRewardPoints());
+		record.putString(userReward.attraction.attractionName);
+		record.putString(userReward.attraction.city);
+		record.putString(userReward.attraction.state);
+		record.putDouble(userReward.attraction.latitude);
+		record.putDouble(userReward.attraction.longitude);
+		append(record.toBytes());
+	}
+
+	private void append(byte[] record) {
+		lock.lock();
+		try {
+			if (record.length > pending.capacity()) {
+				throw new IllegalArgumentException("Record of " + record.length + " bytes is larger than the log buffer");
+			}
+			// both buffers are full, the callers wait for the writer rather than growing them
+			while (!closed && pending.remaining() < record.length) {
+				workReady.signal();
+				bufferFree.awaitUninterruptibly();
+			}
+			if (closed) {
+				// the log is closed, or it failed and that has been logged
+				return;
+			}
+			if (pending.position() == 0) {
+				workReady.signal();
+			}
+			pending.put(record);
+			appendedBytes += record.length;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * This method is used to wait until everything appended before the call is written and forced to disk,
+	 * whatever the FsyncPolicy.
+	 * @throws IOException if the log failed
+	 */
+	public void sync() throws IOException {
+		if (!isEnabled()) {
+			return;
+		}
+		lock.lock();
+		try {
+			long target = appendedBytes;
+			syncRequested = true;
+			workReady.signal();
+			while (syncedBytes < target && failure == null && !(closed && writer == null)) {
+				committed.awaitUninterruptibly();
+			}
+			if (failure != null) {
+				throw new IOException("Write-ahead log " + directory + " failed", failure);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * This method is used to close the current segment and start the next one.
+	 * Everything appended before the call is then in the segments before the one returned,
+	 * which can be deleted with deleteSegmentsBefore once it is saved elsewhere, for example in a snapshot.
+	 * @return long number of the new segment
+	 * @throws IOException if the log failed
+	 */
+	public long roll() throws IOException {
+		if (!isEnabled()) {
+			return 0;
+		}
+		lock.lock();
+		try {
+			long target = appendedBytes;
+			rollRequested = true;
+			workReady.signal();
+			while (rolledAt < target && failure == null && !(closed && writer == null)) {
+				committed.awaitUninterruptibly();
+			}
+			if (failure != null) {
+				throw new IOException("Write-ahead log " + directory + " failed", failure);
+			}
+			// once closed nothing more is written, every segment is complete
+			return rolledAt < target || closed ? segment + 1 : segment;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * This method is used to compact the log by deleting the segments before the given one.
+	 * @param segment
+	 * @return int number of segments deleted
+	 * @throws IOException
+	 */
+	public int deleteSegmentsBefore(long segment) throws IOException {
+		if (!isEnabled()) {
+			return 0;
+		}
+		int deleted = 0;
+		for (long existing : segments()) {
+			if (existing < segment && Files.deleteIfExists(segmentPath(existing))) {
+				deleted++;
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * This method is used to apply the segments written by the previous runs to the users.
+	 * The segments are read in parallel through memory-mapped buffers, then the users are updated in parallel,
+	 * the records of each user in the order they were written.
+	 * Locations not after the last location of the user and rewards for an attraction the user already has
+	 * are skipped, so the records already in a snapshot are not applied twice.
+	 * @param userRepository users restored from the snapshot or generated, new users are added to it
+	 * @param retentionPolicy retention policy of the location history of the new users
+	 * @param catalog current attraction catalog, the rewards are linked to the attractions with the same name
+	 * @return int number of records applied
+	 * @throws IOException
+	 */
+	public int replay(UserRepository userRepository, RetentionPolicy retentionPolicy, List<Attraction> catalog)
+			throws IOException {
+		if (!isEnabled()) {
+			return 0;
+		}
+		List<Path> paths = segments().stream()
+				.filter(existing -> existing < firstSegment)
+				.map(this::segmentPath)
+				.collect(Collectors.toList());
+		List<List<Record>> segmentRecords;
+		try {
+			segmentRecords = paths.parallelStream()
+					.map(WriteAheadLog::readSegment)
+					.collect(Collectors.toList());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		int partitionCount = ForkJoinPool.getCommonPoolParallelism() * REPLAY_PARTITIONS_PER_THREAD;
+		List<List<Record>> partitions = new ArrayList<>(partitionCount);
+		for (int i = 0; i < partitionCount; i++) {
+			partitions.add(new ArrayList<>());
+		}
+		segmentRecords.forEach(records -> records.forEach(record ->
+				partitions.get(Math.floorMod(record.userId.hashCode(), partitionCount)).add(record)));
+
+		Map<String, Attraction> attractionsByName = new HashMap<>();
+		catalog.forEach(attraction -> attractionsByName.put(attraction.attractionName, attraction));
+		Map<UUID, User> usersById = new ConcurrentHashMap<>();
+		userRepository.findAll().forEach(user -> usersById.put(user.getUserId(), user));
+		AtomicInteger applied = new AtomicInteger();
+		IntStream.range(0, partitionCount).parallel().forEach(partition -> {
+			for (Record record : partitions.get(partition)) {
+				if (apply(record, usersById, userRepository, retentionPolicy, attractionsByName)) {
+					applied.incrementAndGet();
+				}
+			}
+		});
+		logger.debug("Replayed " + applied + " records of " + paths.size() + " segments of " + directory);
+		return applied.get();
+	}
+
+	private static boolean apply(Record record, Map<UUID, User> usersById, UserRepository userRepository,
+								 RetentionPolicy retentionPolicy, Map<String, Attraction> attractionsByName) {
+		User user = usersById.get(record.userId);
+		if (record.type == USER) {
+			if (user != null) {
+				return false;
+			}
+			user = new User(record.userId, record.userName, record.phoneNumber, record.emailAddress);
+			user.getLocationHistory().setRetentionPolicy(retentionPolicy);
+			if (!userRepository.add(user)) {
+				return false;
+			}
+			usersById.put(record.userId, user);
+			return true;
+		}
+		if (user == null) {
+			return false;
+		}
+		VisitedLocation visitedLocation = new VisitedLocation(record.userId, new Location(record.latitude, record.longitude),
+				new Date(record.time));
+		if (record.type == LOCATION) {
+			List<VisitedLocation> visitedLocations = user.getVisitedLocations();
+			if (!visitedLocations.isEmpty() && record.time <= visitedLocations.get(visitedLocations.size() - 1).timeVisited.getTime()) {
+				return false;
+			}
+			user.addToVisitedLocations(visitedLocation);
+			return true;
+		}
+		if (user.getUserRewards().stream().anyMatch(r -> r.attraction.attractionName.equals(record.attractionName))) {
+			return false;
+		}
+		Attraction attraction = attractionsByName.get(record.attractionName);
+		if (attraction == null) {
+			attraction = new Attraction(record.attractionName, record.city, record.state,
+					record.attractionLatitude, record.attractionLongitude);
+		}
+		user.restoreUserRewards(List.of(new UserReward(visitedLocation, attraction, record.points)));
+		return true;
+	}
+
+	/**
+	 * This method is used to write what is still buffered, force it to disk and stop the writer.
+	 * The records appended afterwards are dropped.
+	 */
+	@Override
+	public void close() {
+		if (!isEnabled()) {
+			return;
+		}
+		Thread stopped;
+		lock.lock();
+		try {
+			closed = true;
+			stopped = writer;
+			workReady.signal();
+		} finally {
+			lock.unlock();
+		}
+		if (stopped == null) {
+			return;
+		}
+		try {
+			stopped.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeLoop() {
+		try {
+			while (true) {
+				ByteBuffer batch;
+				long batchEnd;
+				boolean force;
+				boolean roll;
+				boolean stop;
+				lock.lock();
+				try {
+					while (pending.position() == 0 && !syncRequested && !rollRequested && !closed && !forceDue()) {
+						awaitWork();
+					}
+					batch = pending;
+					pending = writing;
+					writing = batch;
+					batchEnd = appendedBytes;
+					force = syncRequested || fsyncPolicy == FsyncPolicy.ALWAYS || forceDue();
+					roll = rollRequested;
+					stop = closed;
+					syncRequested = false;
+					rollRequested = false;
+					bufferFree.signalAll();
+				} finally {
+					lock.unlock();
+				}
+
+				batch.flip();
+				if (batch.hasRemaining()) {
+					dirty = true;
+				}
+				while (batch.hasRemaining()) {
+					channel.write(batch);
+				}
+				batch.clear();
+				roll |= channel.position() >= segmentSize;
+				if ((force || roll || stop) && dirty) {
+					channel.force(false);
+					dirty = false;
+					lastForce = System.nanoTime();
+				}
+				if (roll && !stop) {
+					channel.close();
+					channel = openSegment(segment + 1);
+				}
+
+				lock.lock();
+				try {
+					if (!dirty) {
+						syncedBytes = batchEnd;
+					}
+					if (roll && !stop) {
+						segment++;
+						rolledAt = batchEnd;
+					}
+					if (stop) {
+						syncedBytes = batchEnd;
+						writer = null;
+					}
+					committed.signalAll();
+				} finally {
+					lock.unlock();
+				}
+				if (stop) {
+					channel.close();
+					return;
+				}
+			}
+		} catch (IOException e) {
+			logger.error("Write-ahead log " + directory + " failed, the changes are no longer logged", e);
+			lock.lock();
+			try {
+				failure = e;
+				closed = true;
+				writer = null;
+				bufferFree.signalAll();
+				committed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private boolean forceDue() {
+		return fsyncPolicy == FsyncPolicy.INTERVAL && dirty && System.nanoTime() - lastForce >= fsyncIntervalNanos;
+	}
+
+	private void awaitWork() {
+		if (fsyncPolicy == FsyncPolicy.INTERVAL && dirty) {
+			long remaining = fsyncIntervalNanos - (System.nanoTime() - lastForce);
+			if (remaining > 0) {
+				try {
+					workReady.awaitNanos(remaining);
+				} catch (InterruptedException e) {
+					closed = true;
+				}
+			}
+		} else {
+			workReady.awaitUninterruptibly();
+		}
+	}
+
+	private List<Long> segments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> file.getFileName().toString())
+					.filter(name -> name.endsWith(SEGMENT_SUFFIX))
+					.map(name -> name.substring(0, name.length() - SEGMENT_SUFFIX.length()))
+					.filter(number -> !number.isEmpty() && number.chars().allMatch(Character::isDigit))
+					.map(Long::parseLong)
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	private Path segmentPath(long segment) {
+		return directory.resolve(String.format("%020d", segment) + SEGMENT_SUFFIX);
+	}
+
+	private FileChannel openSegment(long segment) throws IOException {
+		return FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+	}
+
+	private static List<Record> readSegment(Path path) {
+		List<Record> records = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			CRC32C crc = new CRC32C();
+			while (buffer.remaining() >= HEADER_SIZE) {
+				int position = buffer.position();
+				int length = buffer.getInt();
+				int checksum = buffer.getInt();
+				if (length <= 0 || length > buffer.remaining()) {
+					logger.warn("Write-ahead log segment " + path + " is truncated at byte " + position);
+					break;
+				}
+				ByteBuffer body = buffer.slice(buffer.position(), length);
+				crc.reset();
+				crc.update(body.duplicate());
+				if ((int) crc.getValue() != checksum) {
+					logger.warn("Write-ahead log segment " + path + " has a corrupted record at byte " + position);
+					break;
+				}
+				records.add(Record.read(body));
+				buffer.position(buffer.position() + length);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return records;
+	}
+
+	/**
+	 * A decoded record, the fields not in its type are left empty.
+	 */
+	private static final class Record {
+		private byte   type;
+		private UUID   userId;
+		private double latitude;
+		private double longitude;
+		private long   time;
+		private int    points;
+		private String attractionName;
+		private String city;
+		private String state;
+		private double attractionLatitude;
+		private double attractionLongitude;
+		private String userName;
+		private String phoneNumber;
+		private String emailAddress;
+
+		private static Record read(ByteBuffer body) {
+			Record record = new Record();
+			record.type = body.get();
+			record.userId = new UUID(body.getLong(), body.getLong());
+			if (record.type == USER) {
+				record.userName = getString(body);
+				record.phoneNumber = getString(body);
+				record.emailAddress = getString(body);
+				return record;
+			}
+			record.latitude = body.getDouble();
+			record.longitude = body.getDouble();
+			record.time = body.getLong();
+			if (record.type == REWARD) {
+				record.points = body.getInt();
+				record.attractionName = getString(body);
+				record.city = getString(body);
+				record.state = getString(body);
+				record.attractionLatitude = body.getDouble();
+				record.attractionLongitude = body.getDouble();
+			}
+			return record;
+		}
+
+		private static String getString(ByteBuffer body) {
+			int length = body.getInt();
+			if (length < 0) {
+				return null;
+			}
+			byte[] bytes = new byte[length];
+			body.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Encodes one record with its header, before it is copied to the shared buffer.
+	 */
+	private static final class RecordOutput {
+		private ByteBuffer buffer = ByteBuffer.allocate(128);
+
+		private RecordOutput(byte type, UUID userId) {
+			buffer.position(HEADER_SIZE);
+			buffer.put(type);
+			buffer.putLong(userId.getMostSignificantBits());
+			buffer.putLong(userId.getLeastSignificantBits());
+		}
+
+		private void putVisitedLocation(VisitedLocation visitedLocation) {
+			putDouble(visitedLocation.location.latitude);
+			putDouble(visitedLocation.location.longitude);
+			ensure(Long.BYTES).putLong(visitedLocation.timeVisited.getTime());
+		}
+
+		private void putInt(int value) {
+			ensure(Integer.BYTES).putInt(value);
+		}
+
+		private void putDouble(double value) {
+			ensure(Double.BYTES).putDouble(value);
+		}
+
+		private void putString(String value) {
+			if (value == null) {
+				putInt(-1);
+				return;
+			}
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			ensure(bytes.length).put(bytes);
+		}
+
+		private ByteBuffer ensure(int bytes) {
+			if (buffer.remaining() < bytes) {
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
+			}
+			return buffer;
+		}
+
+		private byte[] toBytes() {
+			int length = buffer.position() - HEADER_SIZE;
+			CRC32C crc = new CRC32C();
+			crc.update(buffer.array(), HEADER_SIZE, length);
+			buffer.putInt(0, length);
+			buffer.putInt(Integer.BYTES, (int) crc.getValue());
+			byte[] bytes = new byte[buffer.position()];
+			System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.openclassrooms.tourguide.repository;
+
+import com.google.common.collect.Iterables;
+import com.openclassrooms.tourguide.user.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory UserRepository. Users are spread over a fixed number of stripes by user id,
+ * each stripe being a ConcurrentHashMap, and a second map indexes them by user name.
+ * A shard is a set of whole stripes, so iterating over it never filters nor copies.
+ */
+public class InMemoryUserRepository implements UserRepository {
+	public static final int DEFAULT_STRIPE_COUNT = 64;
+	private static final int PARALLEL_ADD_THRESHOLD = 10_000;
+
+	private final Map<UUID, User>[] stripes;
+	private final Map<String, User> usersByName = new ConcurrentHashMap<>();
+
+	public InMemoryUserRepository() {
+		this(DEFAULT_STRIPE_COUNT);
+	}
+
+	@SuppressWarnings("unchecked")
+	public InMemoryUserRepository(int stripeCount) {
+		if (stripeCount < 1) {
+			throw new IllegalArgumentException("stripeCount must be positive");
+		}
+		stripes = new Map[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new ConcurrentHashMap<>();
+		}
+	}
+
+	@Override
+	public boolean add(User user) {
+		if (usersByName.putIfAbsent(user.getUserName(), user) != null) {
+			return false;
+		}
+		stripeOf(user.getUserId()).put(user.getUserId(), user);
+		return true;
+	}
+
+	/**
+	 * Adds large collections in parallel, the maps being concurrent.
+	 * When several users of the collection have the same name, which one is kept is not specified.
+	 */
+	@Override
+	public void addAll(Collection<User> users) {
+		if (users.size() < PARALLEL_ADD_THRESHOLD) {
+			users.forEach(this::add);
+		} else {
+			users.parallelStream().forEach(this::add);
+		}
+	}
+
+	@Override
+	public Optional<User> findByName(String userName) {
+		return Optional.ofNullable(usersByName.get(userName));
+	}
+
+	@Override
+	public Optional<User> findById(UUID userId) {
+		return Optional.ofNullable(stripeOf(userId).get(userId));
+	}
+
+	@Override
+	public int size() {
+		return usersByName.size();
+	}
+
+	@Override
+	public Iterable<User> findAll() {
+		List<Iterable<User>> all = new ArrayList<>(stripes.length);
+		for (Map<UUID, User> stripe : stripes) {
+			all.add(stripe.values());
+		}
+		return Iterables.concat(all);
+	}
+
+	@Override
+	public Iterable<User> findShard(int shard, int shardCount) {
+		if (shardCount < 1 || shardCount > stripes.length || shard < 0 || shard >= shardCount) {
+			throw new IllegalArgumentException("shard must be in [0, shardCount) and shardCount in [1, " + stripes.length + "]");
+		}
+		List<Iterable<User>> partition = new ArrayList<>();
+		for (int i = shard; i < stripes.length; i += shardCount) {
+			partition.add(stripes[i].values());
+		}
+		return Iterables.concat(partition);
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	private Map<UUID, User> stripeOf(UUID userId) {
+		int hash = userId.hashCode();
+		// mix the high bits into the low ones which pick the stripe
+		hash ^= hash >>> 16;
+		return stripes[Math.floorMod(hash, stripes.length)];
+	}
+}
@@ -0,0 +1,49 @@
+package com.openclassrooms.tourguide.repository;
+
+import com.openclassrooms.tourguide.user.User;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Store of the TourGuide users.
+ * Iterations are weakly consistent: they never fail because of concurrent changes,
+ * and they may or may not see the users added while they run.
+ */
+public interface UserRepository {
+
+	/**
+	 * This method is used to add a user if no user has the same user name yet.
+	 * @param user
+	 * @return boolean true if the user was added
+	 */
+	boolean add(User user);
+
+	/**
+	 * This method is used to add many users at once, users whose name is taken are skipped.
+	 * @param users
+	 */
+	void addAll(Collection<User> users);
+
+	Optional<User> findByName(String userName);
+
+	Optional<User> findById(UUID userId);
+
+	int size();
+
+	/**
+	 * This method is used to iterate over all the users without copying them.
+	 * @return Iterable<User>
+	 */
+	Iterable<User> findAll();
+
+	/**
+	 * This method is used to iterate over one partition of the users. The partitions
+	 * 0 to shardCount - 1 hold every user exactly once.
+	 * @param shard
+	 * @param shardCount
+	 * @return Iterable<User>
+	 */
+	Iterable<User> findShard(int shard, int shardCount);
+}
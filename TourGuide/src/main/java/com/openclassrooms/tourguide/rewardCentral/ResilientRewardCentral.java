@@ -0,0 +1,278 @@
+package com.openclassrooms.tourguide.rewardCentral;
+
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * RewardCentral which bounds the latency of the RewardCentral it wraps.
+ * <ul>
+ * <li>A call which has not answered after the hedge delay is sent a second time, and the first answer wins.
+ * The hedge delay is a percentile of the latencies observed recently, so only the slowest calls are hedged.
+ * A call only fails once all its requests failed, a failed request leaves the other one a chance to answer.</li>
+ * <li>A call fails with an UncheckedTimeoutException once the call timeout is over, its requests still run.</li>
+ * <li>A bulkhead caps the requests running at once: a call beyond it fails at once with a
+ * RejectedExecutionException, and a call is only hedged when the bulkhead has room left.</li>
+ * </ul>
+ * The requests run on an executor given by the caller, shared with the other RewardCentral work.
+ * The asynchronous calls do not hold a thread while they wait, so callers running on that same executor
+ * do not starve the requests they wait for.
+ */
+public class ResilientRewardCentral extends RewardCentral {
+	public static final Duration DEFAULT_CALL_TIMEOUT         = Duration.ofSeconds(2);
+	public static final double   DEFAULT_HEDGE_PERCENTILE     = 0.9;
+	public static final Duration DEFAULT_MIN_HEDGE_DELAY      = Duration.ofMillis(10);
+	public static final int      DEFAULT_MAX_CONCURRENT_CALLS = 1000;
+
+	private final RewardCentral   delegate;
+	private final Executor        requestExecutor;
+	private final long            callTimeoutNanos;
+	private final double          hedgePercentile;
+	private final long            minHedgeDelayNanos;
+	private final int             maxConcurrentCalls;
+	private final Semaphore       bulkhead;
+	private final LatencyWindow   latencies;
+	private final AtomicLong      hedgeCount     = new AtomicLong();
+	private final AtomicLong      hedgeWinCount  = new AtomicLong();
+	private final AtomicLong      timeoutCount   = new AtomicLong();
+	private final AtomicLong      rejectionCount = new AtomicLong();
+
+	public ResilientRewardCentral(RewardCentral delegate, Executor requestExecutor) {
+		this(delegate, requestExecutor, DEFAULT_CALL_TIMEOUT, DEFAULT_HEDGE_PERCENTILE, DEFAULT_MIN_HEDGE_DELAY,
+				DEFAULT_MAX_CONCURRENT_CALLS);
+	}
+
+	/**
+	 * @param delegate the remote service
+	 * @param requestExecutor runs the requests, its rejections fail the calls
+	 * @param callTimeout time after which a call fails
+	 * @param hedgePercentile percentile of the recent latencies after which a call is hedged, between 0 and 1
+	 * @param minHedgeDelay shortest hedge delay, and the hedge delay until enough latencies are observed is the call timeout
+	 * @param maxConcurrentCalls requests to the remote service running at once, hedges included
+	 */
+	public ResilientRewardCentral(RewardCentral delegate, Executor requestExecutor, Duration callTimeout,
+								  double hedgePercentile, Duration minHedgeDelay, int maxConcurrentCalls) {
+		if (hedgePercentile <= 0 || hedgePercentile > 1) {
+			throw new IllegalArgumentException("hedgePercentile must be in ]0, 1]: " + hedgePercentile);
+		}
+		if (maxConcurrentCalls < 1) {
+			throw new IllegalArgumentException("maxConcurrentCalls must be positive: " + maxConcurrentCalls);
+		}
+		this.delegate = delegate;
+		this.requestExecutor = requestExecutor;
+		this.callTimeoutNanos = callTimeout.toNanos();
+		this.hedgePercentile = hedgePercentile;
+		this.minHedgeDelayNanos = minHedgeDelay.toNanos();
+		this.maxConcurrentCalls = maxConcurrentCalls;
+		this.bulkhead = new Semaphore(maxConcurrentCalls);
+		this.latencies = new LatencyWindow();
+	}
+
+	@Override
+	public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+		try {
+			return getAttractionRewardPointsAsync(attractionId, userId, requestExecutor).get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new CompletionException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CompletionException(e);
+		}
+	}
+
+	/**
+	 * Sends the request without waiting for it: the hedge and the timeout are scheduled.
+	 * @param executor ignored, the requests run on the request executor
+	 */
+	@Override
+	public CompletableFuture<Integer> getAttractionRewardPointsAsync(UUID attractionId, UUID userId, Executor executor) {
+		if (!bulkhead.tryAcquire()) {
+			rejectionCount.incrementAndGet();
+			return CompletableFuture.failedFuture(
+					new RejectedExecutionException("RewardCentral already has " + maxConcurrentCalls + " requests running"));
+		}
+		Call call = new Call();
+		CompletableFuture<Integer> points = call.points;
+		if (!request(call, attractionId, userId, false)) {
+			return points;
+		}
+		long hedgeDelay = getHedgeDelayNanos();
+		if (hedgeDelay < callTimeoutNanos) {
+			CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.NANOSECONDS).execute(() -> {
+				// a hedge never waits for the bulkhead, the requests already running are enough to answer
+				if (points.isDone() || !bulkhead.tryAcquire()) {
+					return;
+				}
+				if (call.addRequest()) {
+					request(call, attractionId, userId, true);
+				} else {
+					bulkhead.release();
+				}
+			});
+		}
+		return points.orTimeout(callTimeoutNanos, TimeUnit.NANOSECONDS).exceptionallyCompose(e -> {
+			if (e instanceof TimeoutException) {
+				timeoutCount.incrementAndGet();
+				return CompletableFuture.failedFuture(new UncheckedTimeoutException("RewardCentral did not answer within "
+						+ TimeUnit.NANOSECONDS.toMillis(callTimeoutNanos) + " ms"));
+			}
+			return CompletableFuture.failedFuture(e);
+		});
+	}
+
+	/**
+	 * Sends one request of the call, which holds a bulkhead permit until it answers.
+	 * A first request the executor rejects fails the call, a hedge it rejects is dropped.
+	 * @return boolean false if the executor rejected the request
+	 */
+	private boolean request(Call call, UUID attractionId, UUID userId, boolean hedge) {
+		try {
+			requestExecutor.execute(() -> {
+				// counted before the caller can see the answer, as the win
+				if (hedge) {
+					hedgeCount.incrementAndGet();
+				}
+				long start = System.nanoTime();
+				try {
+					int result = delegate.getAttractionRewardPoints(attractionId, userId);
+					latencies.record(System.nanoTime() - start);
+					if (call.answered.compareAndSet(false, true)) {
+						if (hedge) {
+							hedgeWinCount.incrementAndGet();
+						}
+						call.points.complete(result);
+					}
+				} catch (RuntimeException e) {
+					call.requestFailed(e);
+				} finally {
+					bulkhead.release();
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			bulkhead.release();
+			call.requestFailed(hedge ? null : e);
+			return false;
+		}
+	}
+
+	/**
+	 * @return long delay after which a call is hedged, in nanoseconds
+	 */
+	public long getHedgeDelayNanos() {
+		long percentile = latencies.percentile(hedgePercentile);
+		return percentile < 0 ? callTimeoutNanos : Math.max(minHedgeDelayNanos, percentile);
+	}
+
+	/**
+	 * @return long number of requests sent again because the first one was slow
+	 */
+	public long getHedgeCount() {
+		return hedgeCount.get();
+	}
+
+	/**
+	 * @return long number of hedges which answered before the request they duplicate
+	 */
+	public long getHedgeWinCount() {
+		return hedgeWinCount.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	public long getRejectionCount() {
+		return rejectionCount.get();
+	}
+
+	public int getRunningRequestCount() {
+		return maxConcurrentCalls - bulkhead.availablePermits();
+	}
+
+	/**
+	 * The requests of one call still running: the call fails with the first failure once none is left.
+	 */
+	private static final class Call {
+		private final CompletableFuture<Integer> points      = new CompletableFuture<>();
+		private final AtomicBoolean              answered    = new AtomicBoolean();
+		// the first request is counted from the start
+		private final AtomicInteger              outstanding = new AtomicInteger(1);
+		private final AtomicReference<Throwable> failure     = new AtomicReference<>();
+
+		/**
+		 * @return boolean false if every request already failed, the call is then failed too
+		 */
+		private boolean addRequest() {
+			return outstanding.getAndUpdate(count -> count == 0 ? 0 : count + 1) > 0;
+		}
+
+		/**
+		 * @param e failure of the request, or null for a dropped hedge
+		 */
+		private void requestFailed(Throwable e) {
+			if (e != null) {
+				failure.compareAndSet(null, e);
+			}
+			if (outstanding.decrementAndGet() == 0) {
+				points.completeExceptionally(failure.get());
+			}
+		}
+	}
+
+	/**
+	 * The latencies of the last requests, sorted again every few requests to read their percentiles.
+	 */
+	private static final class LatencyWindow {
+		private static final int SIZE           = 1024;
+		private static final int MIN_SAMPLES    = 64;
+		private static final int SORT_INTERVAL  = 64;
+
+		private final long[]    samples = new long[SIZE];
+		private int             next;
+		private int             count;
+		private int             sinceSort;
+		// sorted copy of the samples, read without locking
+		private volatile long[] sorted;
+
+		private synchronized void record(long latencyNanos) {
+			samples[next] = latencyNanos;
+			next = (next + 1) % SIZE;
+			count = Math.min(count + 1, SIZE);
+			if (count >= MIN_SAMPLES && ++sinceSort >= SORT_INTERVAL) {
+				sinceSort = 0;
+				long[] copy = Arrays.copyOf(samples, count);
+				Arrays.sort(copy);
+				sorted = copy;
+			}
+		}
+
+		/**
+		 * @return long latency below which the given fraction of the recent requests answered, or -1 while there are too few
+		 */
+		private long percentile(double fraction) {
+			long[] current = sorted;
+			if (current == null) {
+				return -1;
+			}
+			return current[Math.max(0, (int) Math.ceil(fraction * current.length) - 1)];
+		}
+	}
+}
@@ -1,6 +1,9 @@
 package com.openclassrooms.tourguide.rewardCentral;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
@@ -17,4 +20,20 @@ public class RewardCentral {
         int randomInt = ThreadLocalRandom.current().nextInt(1, 1000);
         return randomInt;
     }
+
+    /**
+     * Same as getAttractionRewardPoints, without blocking the caller.
+     * A saturated executor fails the returned future instead of throwing to the caller.
+     * @param attractionId
+     * @param userId
+     * @param executor runs the call
+     * @return CompletableFuture<Integer>
+     */
+    public CompletableFuture<Integer> getAttractionRewardPointsAsync(UUID attractionId, UUID userId, Executor executor) {
+        try {
+            return CompletableFuture.supplyAsync(() -> this.getAttractionRewardPoints(attractionId, userId), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 }
@@ -0,0 +1,170 @@
+package com.openclassrooms.tourguide.rewardCentral;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Memoizes RewardCentral.getAttractionRewardPoints by (attractionId, userId).
+ * Entries are evicted by size and by age, and are refreshed in the background once
+ * they get old so readers keep getting the previous value instead of waiting.
+ * Concurrent misses for the same key wait for a single call to RewardCentral.
+ * The cache holds the lookups themselves: a miss only starts the asynchronous call to RewardCentral,
+ * so no thread of the load executor waits for another task of it. A failed lookup is dropped from the cache.
+ */
+public class RewardPointsCache {
+	public static final long     DEFAULT_MAXIMUM_SIZE  = 1_000_000;
+	public static final Duration DEFAULT_TIME_TO_LIVE  = Duration.ofHours(1);
+	public static final Duration DEFAULT_REFRESH_AFTER = Duration.ofMinutes(10);
+
+	private final RewardCentral                                            rewardCentral;
+	private final LoadingCache<RewardPointsKey, CompletableFuture<Integer>> cache;
+	private final Executor                                                 loadExecutor;
+
+	public RewardPointsCache(RewardCentral rewardCentral, Executor loadExecutor) {
+		this(rewardCentral, DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE, DEFAULT_REFRESH_AFTER, loadExecutor);
+	}
+
+	/**
+	 * @param rewardCentral the remote service
+	 * @param maximumSize maximum number of entries
+	 * @param timeToLive age after which an entry is dropped
+	 * @param refreshAfter age after which an entry is reloaded in the background
+	 * @param loadExecutor runs the calls to RewardCentral, unless it has an executor of its own.
+	 *                     It belongs to the caller, who bounds it and shuts it down
+	 */
+	public RewardPointsCache(RewardCentral rewardCentral, long maximumSize, Duration timeToLive,
+							 Duration refreshAfter, Executor loadExecutor) {
+		this.rewardCentral = rewardCentral;
+		this.loadExecutor = loadExecutor;
+		CacheLoader<RewardPointsKey, CompletableFuture<Integer>> loader = new CacheLoader<>() {
+			@Override
+			public CompletableFuture<Integer> load(RewardPointsKey key) {
+				return RewardPointsCache.this.load(key);
+			}
+
+			@Override
+			public ListenableFuture<CompletableFuture<Integer>> reload(RewardPointsKey key, CompletableFuture<Integer> previous) {
+				// the previous points are kept until the new ones are known, or if they cannot be looked up
+				SettableFuture<CompletableFuture<Integer>> reloaded = SettableFuture.create();
+				lookUp(key).whenComplete((points, e) -> {
+					if (e != null) {
+						reloaded.setException(e);
+					} else {
+						reloaded.set(CompletableFuture.completedFuture(points));
+					}
+				});
+				return reloaded;
+			}
+		};
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(timeToLive)
+				.refreshAfterWrite(refreshAfter)
+				.recordStats()
+				.build(loader);
+	}
+
+	/**
+	 * This method is used to get the reward points of an attraction for a user,
+	 * from the cache or else from RewardCentral.
+	 * @param attractionId
+	 * @param userId
+	 * @return int
+	 */
+	public int getRewardPoints(UUID attractionId, UUID userId) {
+		try {
+			return getRewardPointsAsync(attractionId, userId).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Same as {@link #getRewardPoints(UUID, UUID)} without waiting for RewardCentral,
+	 * so several lookups can wait on RewardCentral at the same time.
+	 * @param attractionId
+	 * @param userId
+	 * @return CompletableFuture<Integer>
+	 */
+	public CompletableFuture<Integer> getRewardPointsAsync(UUID attractionId, UUID userId) {
+		RewardPointsKey key = new RewardPointsKey(attractionId, userId);
+		CompletableFuture<Integer> points = cache.getUnchecked(key);
+		if (points.isCompletedExceptionally()) {
+			// it failed before the cache stored it, so it could not drop it
+			cache.asMap().remove(key, points);
+			points = cache.getUnchecked(key);
+		}
+		return points;
+	}
+
+	private CompletableFuture<Integer> load(RewardPointsKey key) {
+		CompletableFuture<Integer> points = lookUp(key);
+		points.whenComplete((p, e) -> {
+			if (e != null) {
+				cache.asMap().remove(key, points);
+			}
+		});
+		return points;
+	}
+
+	private CompletableFuture<Integer> lookUp(RewardPointsKey key) {
+		return rewardCentral.getAttractionRewardPointsAsync(key.attractionId, key.userId, loadExecutor);
+	}
+
+	/**
+	 * This method is used to get the hit, miss and load statistics of the cache.
+	 * @return CacheStats
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	private static final class RewardPointsKey {
+		private final UUID attractionId;
+		private final UUID userId;
+
+		private RewardPointsKey(UUID attractionId, UUID userId) {
+			this.attractionId = attractionId;
+			this.userId = userId;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof RewardPointsKey)) {
+				return false;
+			}
+			RewardPointsKey other = (RewardPointsKey) o;
+			return attractionId.equals(other.attractionId) && userId.equals(other.userId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(attractionId, userId);
+		}
+	}
+}
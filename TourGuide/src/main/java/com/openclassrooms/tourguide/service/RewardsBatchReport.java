@@ -0,0 +1,112 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.user.User;
+
+import java.util.List;
+
+/**
+ * Summary of one batch reward calculation: the users calculated, what the spatial join found,
+ * and how long each phase took.
+ * <ul>
+ * <li>collect: reading the locations not checked yet of every user into the grid</li>
+ * <li>join: finding the attractions close to those locations</li>
+ * <li>lookup: getting the reward points of the new rewards</li>
+ * <li>apply: adding the rewards to the users</li>
+ * </ul>
+ */
+public class RewardsBatchReport {
+	private final List<User> users;
+	private final int        failureCount;
+	private final int        locationCount;
+	private final int        cellCount;
+	private final int        matchCount;
+	private final int        rewardCount;
+	private final long       collectMillis;
+	private final long       joinMillis;
+	private final long       lookupMillis;
+	private final long       applyMillis;
+
+	public RewardsBatchReport(List<User> users, int failureCount, int locationCount, int cellCount, int matchCount,
+							  int rewardCount, long collectMillis, long joinMillis, long lookupMillis, long applyMillis) {
+		this.users = List.copyOf(users);
+		this.failureCount = failureCount;
+		this.locationCount = locationCount;
+		this.cellCount = cellCount;
+		this.matchCount = matchCount;
+		this.rewardCount = rewardCount;
+		this.collectMillis = collectMillis;
+		this.joinMillis = joinMillis;
+		this.lookupMillis = lookupMillis;
+		this.applyMillis = applyMillis;
+	}
+
+	/**
+	 * @return List<User> the users calculated, in the order they were given, unmodifiable
+	 */
+	public List<User> getUsers() {
+		return users;
+	}
+
+	/**
+	 * @return int number of users some reward points of which could not be looked up, they are checked again next time
+	 */
+	public int getFailureCount() {
+		return failureCount;
+	}
+
+	/**
+	 * @return int number of visited locations checked
+	 */
+	public int getLocationCount() {
+		return locationCount;
+	}
+
+	/**
+	 * @return int number of grid cells holding those locations, and of attraction index queries
+	 */
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * @return int number of visited locations and attractions close to each other
+	 */
+	public int getMatchCount() {
+		return matchCount;
+	}
+
+	/**
+	 * @return int number of rewards added
+	 */
+	public int getRewardCount() {
+		return rewardCount;
+	}
+
+	public long getCollectMillis() {
+		return collectMillis;
+	}
+
+	public long getJoinMillis() {
+		return joinMillis;
+	}
+
+	public long getLookupMillis() {
+		return lookupMillis;
+	}
+
+	public long getApplyMillis() {
+		return applyMillis;
+	}
+
+	public long getElapsedMillis() {
+		return collectMillis + joinMillis + lookupMillis + applyMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d users (%d failed), %d locations in %d cells, %d matches, %d rewards in %d ms"
+						+ " (collect %d ms, join %d ms, lookup %d ms, apply %d ms)",
+				users.size(), failureCount, locationCount, cellCount, matchCount, rewardCount, getElapsedMillis(),
+				collectMillis, joinMillis, lookupMillis, applyMillis);
+	}
+}
@@ -1,162 +1,624 @@
 package com.openclassrooms.tourguide.service;
 
+import com.openclassrooms.tourguide.geo.AttractionIndex;
+import com.openclassrooms.tourguide.geo.GeoMath;
+import com.openclassrooms.tourguide.geo.NearestAttractionsCache;
+import com.openclassrooms.tourguide.geo.NearbyAttraction;
+import com.openclassrooms.tourguide.geo.SpatialJoin;
 import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
 import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
 import com.openclassrooms.tourguide.gpsUtil.location.Location;
-import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.leaderboard.RewardsLeaderboard;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
 import com.openclassrooms.tourguide.models.ClosestAttractionsDTO;
+import com.openclassrooms.tourguide.persistence.WriteAheadLog;
 import com.openclassrooms.tourguide.rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.rewardCentral.RewardPointsCache;
+import com.openclassrooms.tourguide.user.LocationHistory;
 import com.openclassrooms.tourguide.user.User;
 import com.openclassrooms.tourguide.user.UserReward;
+import org.apache.commons.lang3.time.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class RewardsService {
-    private static final double STATUTE_MILES_PER_NAUTICAL_MILE = 1.15077945;
+	private final Logger logger = LoggerFactory.getLogger(RewardsService.class);
+	private static final int NEARBY_ATTRACTIONS_COUNT = 5;
+	// reward points looked up at once by a batch calculation
+	static final int BATCH_LOOKUP_CONCURRENCY = 100;
 
 	// proximity in miles
     private final int defaultProximityBuffer = 10;
 	private       int proximityBuffer        = defaultProximityBuffer;
 	private final int           attractionProximityRange = 200;
 	private final GpsUtil          gpsUtil;
-	private final RewardCentral    rewardsCentral;
-	private       List<Attraction> attractions;
+	private final RewardPointsCache rewardPointsCache;
+	private final TourGuideMetrics metrics;
+	private final WriteAheadLog    writeAheadLog;
+	private final RewardsLeaderboard leaderboard = new RewardsLeaderboard();
+	// rewards added before RewardCentral answered, whose points are being looked up
+	private final Set<UserReward>    pendingRewardsInFlight = ConcurrentHashMap.newKeySet();
+	// time a reward calculation waits for the points of a reward before adding it as pending, null to always wait
+	private volatile Duration        rewardPointsBudget;
+	// runs the CPU-bound work of batch calculations
+	private volatile Executor        batchExecutor = ForkJoinPool.commonPool();
+	private volatile AttractionIndex attractionIndex;
+	// answers getTopFiveNearestAttraction from candidates precomputed per cell of the map
+	private volatile NearestAttractionsCache nearestAttractionsCache;
+	// bumped whenever the attractions or the proximity rules change, users checked against an older version are fully rescanned
+	private volatile int           catalogVersion;
 	
-	public RewardsService(GpsUtil gpsUtil, RewardCentral rewardCentral) {
+	/**
+	 * @param gpsUtil
+	 * @param rewardCentral
+	 * @param lookupExecutor runs the calls to RewardCentral. It belongs to the caller, who bounds it and shuts it down
+	 */
+	public RewardsService(GpsUtil gpsUtil, RewardCentral rewardCentral, Executor lookupExecutor) {
+		this(gpsUtil, new RewardPointsCache(rewardCentral, lookupExecutor));
+	}
+
+	public RewardsService(GpsUtil gpsUtil, RewardPointsCache rewardPointsCache) {
+		this(gpsUtil, rewardPointsCache, TourGuideMetrics.noop());
+	}
+
+	public RewardsService(GpsUtil gpsUtil, RewardPointsCache rewardPointsCache, TourGuideMetrics metrics) {
+		this(gpsUtil, rewardPointsCache, metrics, WriteAheadLog.disabled());
+	}
+
+	@Autowired
+	public RewardsService(GpsUtil gpsUtil, RewardPointsCache rewardPointsCache, TourGuideMetrics metrics,
+						  WriteAheadLog writeAheadLog) {
 		this.gpsUtil = gpsUtil;
-		this.rewardsCentral = rewardCentral;
+		this.rewardPointsCache = rewardPointsCache;
+		this.metrics = metrics;
+		this.writeAheadLog = writeAheadLog;
 
 		getAttractions();
+		nearestAttractionsCache = new NearestAttractionsCache(attractionIndex, NEARBY_ATTRACTIONS_COUNT);
 	}
 	
 	public void setProximityBuffer(int proximityBuffer) {
 		this.proximityBuffer = proximityBuffer;
+		catalogVersion++;
 	}
 	
+	/**
+	 * This method is used to bound the time a reward calculation waits for RewardCentral.
+	 * A reward whose points are not known within the budget is added as pending, with 0 points,
+	 * and its points are set once RewardCentral answers.
+	 * A reward whose lookup is rejected by a saturated executor is added as pending as well, whatever the budget,
+	 * and its points are looked up again by the next calculation of the user.
+	 * @param rewardPointsBudget null to always wait for the points
+	 */
+	public void setRewardPointsBudget(Duration rewardPointsBudget) {
+		this.rewardPointsBudget = rewardPointsBudget;
+	}
+
+	/**
+	 * This method is used to choose the executor of the CPU-bound phases of {@link #calculateRewardsInBatch(List)},
+	 * the common fork-join pool by default.
+	 * @param batchExecutor
+	 */
+	public void setBatchExecutor(Executor batchExecutor) {
+		this.batchExecutor = batchExecutor;
+	}
+
+	/**
+	 * This method is used to size the cache of the nearest attractions, replacing the current one.
+	 * @param cellDegrees width of the cells the nearest attractions are precomputed for, in degrees
+	 * @param maximumSize maximum number of cells kept
+	 */
+	public void setNearestAttractionsCache(double cellDegrees, long maximumSize) {
+		nearestAttractionsCache = new NearestAttractionsCache(attractionIndex, NEARBY_ATTRACTIONS_COUNT, cellDegrees, maximumSize);
+	}
+
+	public NearestAttractionsCache getNearestAttractionsCache() {
+		return nearestAttractionsCache;
+	}
+
 	public void setDefaultProximityBuffer() {
 		proximityBuffer = defaultProximityBuffer;
+		catalogVersion++;
 	}
 
 	/**
-	 * This method is used to get List of all attractions.
+	 * This method is used to get List of all attractions and to index them by position.
 	 */
 	private void getAttractions() {
-		attractions = gpsUtil.getAttractions();
+		attractionIndex = new AttractionIndex(gpsUtil.getAttractions());
+	}
+
+	/**
+	 * This method is used to reload the attraction catalog.
+	 * The next reward calculation of every user checks all the raw points of their location history again,
+	 * and the nearest attractions of every cell are computed again.
+	 */
+	public void refreshAttractions() {
+		getAttractions();
+		nearestAttractionsCache.setAttractionIndex(attractionIndex);
+		catalogVersion++;
+	}
+
+	/**
+	 * This method is used to get the attraction catalog the rewards are calculated against.
+	 * @return List<Attraction>
+	 */
+	public List<Attraction> getAttractionCatalog() {
+		return attractionIndex.getAttractions();
+	}
+
+	/**
+	 * @return int version of the attraction catalog and proximity rules, bumped whenever they change
+	 */
+	public int getCatalogVersion() {
+		return catalogVersion;
 	}
 
+	/**
+	 * This method is used to calculate the rewards of a user.
+	 * Only the visited locations added since the previous calculation are checked,
+	 * unless the attraction catalog changed in between.
+	 * The user is only locked to find the new rewards and to add them, not while their points are looked up,
+	 * so calculations for the same user may overlap: a reward is still only added once.
+	 * @param user
+	 * @return User
+	 */
 	public User calculateRewards(User user) {
-		List<VisitedLocation> userLocations = user.getVisitedLocations();
-
-		for (int i = 0; i < userLocations.size(); i++) {
-			for(Attraction attraction : attractions) {
-				if(user.getUserRewards().stream().noneMatch(r -> r.attraction.attractionName.equals(attraction.attractionName))) {
-					VisitedLocation visitedLocation = userLocations.get(i);
-					if(nearAttraction(visitedLocation, attraction)) {
-						user.addUserReward(new UserReward(visitedLocation, attraction, getRewardPoints(attraction, user)));
+		return calculateRewards(user, true);
+	}
+
+	/**
+	 * This method is used to calculate the rewards of a user from all the raw points of their location history.
+	 * @param user
+	 * @return User
+	 */
+	public User recalculateRewards(User user) {
+		return calculateRewards(user, false);
+	}
+
+	private User calculateRewards(User user, boolean incremental) {
+		return metrics.calculateRewards().record(() -> {
+			int version = catalogVersion;
+			NewRewards newRewards = findNewRewards(user, incremental, version);
+			List<CompletableFuture<Integer>> rewardPoints = new ArrayList<>(newRewards.rewards.size());
+			for (UserReward userReward : newRewards.rewards) {
+				rewardPoints.add(rewardPointsCache.getRewardPointsAsync(userReward.attraction.attractionId, user.getUserId()));
+			}
+			Duration budget = rewardPointsBudget;
+			List<Integer> points = new ArrayList<>(rewardPoints.size());
+			for (CompletableFuture<Integer> lookup : rewardPoints) {
+				points.add(budget == null ? awaitRewardPointsUnlessRejected(lookup) : awaitRewardPoints(lookup, budget));
+			}
+			addNewRewards(user, newRewards, rewardPoints, points, version);
+			return user;
+		});
+	}
+
+	/**
+	 * Finds, under the lock of the user, the first visited location close to each attraction the user has no reward for.
+	 */
+	private NewRewards findNewRewards(User user, boolean incremental, int version) {
+		synchronized (user) {
+			int from = incremental && user.getRewardsCatalogVersion() == version ? user.getRewardsWatermark() : 0;
+			retryPendingRewards(user);
+			NewRewards newRewards = new NewRewards(user);
+			Set<String> rewardedAttractions = new HashSet<>();
+			user.getUserRewards().forEach(r -> rewardedAttractions.add(r.attraction.attractionName));
+			LocationHistory history = user.getLocationHistory();
+			// the tracker may add locations meanwhile, they are left for the next calculation
+			synchronized (history) {
+				newRewards.to = history.getAddedCount();
+				// the points downsampled by the retention policy have all been checked already, against an older catalog at worst
+				for (int i = Math.max(from, history.getFirstRawSequence()); i < newRewards.to; i++) {
+					Location location = new Location(history.latitudeAt(i), history.longitudeAt(i));
+					// only the attractions within the proximity buffer can be rewarded
+					for (NearbyAttraction nearby : attractionIndex.withinRadius(location, proximityBuffer)) {
+						if (rewardedAttractions.add(nearby.attraction.attractionName)) {
+							newRewards.rewards.add(UserReward.pending(history.visitedLocationAt(i), nearby.attraction));
+						}
 					}
 				}
 			}
+			return newRewards;
 		}
+	}
 
-		return user;
+	/**
+	 * Adds the new rewards under the lock of the user, with their points or as pending when they are not known,
+	 * unless another calculation added a reward for the same attraction meanwhile.
+	 */
+	private void addNewRewards(User user, NewRewards newRewards, List<CompletableFuture<Integer>> rewardPoints,
+							   List<Integer> points, int version) {
+		synchronized (user) {
+			for (int i = 0; i < newRewards.rewards.size(); i++) {
+				UserReward candidate = newRewards.rewards.get(i);
+				String attractionName = candidate.attraction.attractionName;
+				if (user.getUserRewards().stream().anyMatch(r -> r.attraction.attractionName.equals(attractionName))) {
+					continue;
+				}
+				UserReward userReward = points.get(i) == null ? candidate
+						: new UserReward(candidate.visitedLocation, candidate.attraction, points.get(i));
+				if (user.addUserReward(userReward)) {
+					metrics.rewardsGranted().increment();
+					if (userReward.isPending()) {
+						metrics.rewardsPending().increment();
+						completePendingReward(user, userReward, rewardPoints.get(i));
+					} else {
+						writeAheadLog.appendUserReward(user.getUserId(), userReward);
+						leaderboard.update(user);
+					}
+				}
+			}
+			// a calculation which ran meanwhile checked these locations already, and maybe newer ones
+			if (user.getRewardsWatermark() == newRewards.watermark && user.getRewardsCatalogVersion() == newRewards.catalogVersion) {
+				user.setRewardsWatermark(newRewards.to, version);
+			}
+		}
 	}
 
+	/**
+	 * The rewards a calculation found for a user, as pending rewards until their points are known,
+	 * and the watermark it started from.
+	 */
+	private static final class NewRewards {
+		private final List<UserReward> rewards = new ArrayList<>();
+		private final int              watermark;
+		private final int              catalogVersion;
+		private int                    to;
+
+		private NewRewards(User user) {
+			this.watermark = user.getRewardsWatermark();
+			this.catalogVersion = user.getRewardsCatalogVersion();
+		}
+	}
+
+	/**
+	 * This method is used to calculate the rewards of many users at once, see {@link #calculateRewardsInBatch(List)}.
+	 * @param userList
+	 * @return List<User> the users calculated, null entries left out, unmodifiable
+	 */
 	public List<User> calculateRewardsForAllUsers(List<User> userList) {
-		List<User> listToReturn = new ArrayList <>();
+		return calculateRewardsInBatch(userList).getUsers();
+	}
 
-		ExecutorService service = Executors.newFixedThreadPool(50);
-		try {
+	/**
+	 * This method is used to calculate the rewards of many users at once, with the same result as
+	 * calling {@link #calculateRewards(User)} for each of them.
+	 * The visited locations not checked yet of all the users are joined with the attractions through a grid,
+	 * so nearby locations share their attraction lookups, then the reward points of the new rewards only
+	 * are looked up, at most {@value #BATCH_LOOKUP_CONCURRENCY} at once.
+	 * A user some reward points of which cannot be looked up keeps its other new rewards,
+	 * and its locations are checked again by its next calculation.
+	 * @param userList
+	 * @return RewardsBatchReport
+	 */
+	public RewardsBatchReport calculateRewardsInBatch(List<User> userList) {
+		StopWatch stopWatch = StopWatch.createStarted();
+		int version = catalogVersion;
+		SpatialJoin<BatchUser> spatialJoin = new SpatialJoin<>(attractionIndex, proximityBuffer);
+		Map<User, BatchUser> batchUsers = new IdentityHashMap<>();
+		List<User> users = new ArrayList<>(userList.size());
+		for (User user : userList) {
+			if (user == null) {
+				continue;
+			}
+			users.add(user);
+			if (!batchUsers.containsKey(user)) {
+				batchUsers.put(user, collectVisitedLocations(user, version, spatialJoin));
+			}
+		}
+		long collectMillis = lap(stopWatch);
 
-			userList.forEach(user -> {
-				service.execute(() -> {
-					if (user != null) {
-						listToReturn.add(calculateRewards(user));
-					}
-				});
-			});
+		List<SpatialJoin.Match<BatchUser>> matches = spatialJoin.join(batchExecutor);
+		for (SpatialJoin.Match<BatchUser> match : matches) {
+			match.owner.offer(match);
+		}
+		long joinMillis = lap(stopWatch);
 
-			service.shutdown();
-			service.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
+		Semaphore lookups = new Semaphore(BATCH_LOOKUP_CONCURRENCY);
+		List<CompletableFuture<Integer>> rewardPoints = new ArrayList<>();
+		for (BatchUser batchUser : batchUsers.values()) {
+			batchUser.lookUpRewardPoints(lookups, rewardPoints);
+		}
+		CompletableFuture.allOf(rewardPoints.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+		long lookupMillis = lap(stopWatch);
+
+		int failureCount = 0;
+		int rewardCount = 0;
+		for (BatchUser batchUser : batchUsers.values()) {
+			int added = batchUser.apply(version);
+			if (added < 0) {
+				failureCount++;
+			} else {
+				rewardCount += added;
+			}
 		}
-		return listToReturn;
+		long applyMillis = lap(stopWatch);
+
+		RewardsBatchReport report = new RewardsBatchReport(users, failureCount, spatialJoin.getLocationCount(),
+				spatialJoin.getCellCount(), matches.size(), rewardCount, collectMillis, joinMillis, lookupMillis, applyMillis);
+		logger.info("Rewards calculated in batch: " + report);
+		return report;
 	}
 
+	private BatchUser collectVisitedLocations(User user, int version, SpatialJoin<BatchUser> spatialJoin) {
+		synchronized (user) {
+			retryPendingRewards(user);
+			BatchUser batchUser = new BatchUser(user);
+			int from = user.getRewardsCatalogVersion() == version ? user.getRewardsWatermark() : 0;
+			LocationHistory history = user.getLocationHistory();
+			// the tracker may add locations meanwhile, they are left for the next calculation
+			synchronized (history) {
+				batchUser.to = history.getAddedCount();
+				for (int i = Math.max(from, history.getFirstRawSequence()); i < batchUser.to; i++) {
+					spatialJoin.add(batchUser, i, history.latitudeAt(i), history.longitudeAt(i));
+				}
+			}
+			return batchUser;
+		}
+	}
 
-	//TODO: Resume to implement method to sort attractions by proximity
+	/**
+	 * @return long time since the stopwatch was started, which starts it again for the next phase
+	 */
+	private static long lap(StopWatch stopWatch) {
+		long millis = stopWatch.getTime();
+		stopWatch.reset();
+		stopWatch.start();
+		return millis;
+	}
 
-	public List<ClosestAttractionsDTO> getTopFiveNearestAttraction(User user, Location location) {
-		Map <Double, Attraction> map = new TreeMap<>(Comparator.naturalOrder());
-		List<Attraction> topFive = new ArrayList<>();
+	/**
+	 * A user of a batch calculation, with the first location found close to each attraction it has no reward for.
+	 */
+	private final class BatchUser {
+		private final User                                      user;
+		private final int                                       watermark;
+		private final int                                       catalogVersion;
+		private final Set<String>                               rewardedAttractions = new HashSet<>();
+		private final Map<String, SpatialJoin.Match<BatchUser>> firstMatches = new HashMap<>();
+		private final Map<String, CompletableFuture<Integer>>   rewardPoints = new HashMap<>();
+		private int                                             to;
 
-		attractions.forEach(attraction -> {
-			double distance = getDistance(attraction, location);
-			map.put(distance, attraction);
-		});
+		private BatchUser(User user) {
+			this.user = user;
+			this.watermark = user.getRewardsWatermark();
+			this.catalogVersion = user.getRewardsCatalogVersion();
+			user.getUserRewards().forEach(r -> rewardedAttractions.add(r.attraction.attractionName));
+		}
+
+		private void offer(SpatialJoin.Match<BatchUser> match) {
+			String attractionName = match.attraction.attractionName;
+			if (rewardedAttractions.contains(attractionName)) {
+				return;
+			}
+			firstMatches.merge(attractionName, match, (first, other) -> isBefore(other, first) ? other : first);
+		}
+
+		private void lookUpRewardPoints(Semaphore lookups, List<CompletableFuture<Integer>> all) {
+			for (SpatialJoin.Match<BatchUser> match : firstMatches.values()) {
+				lookups.acquireUninterruptibly();
+				CompletableFuture<Integer> points;
+				try {
+					points = rewardPointsCache.getRewardPointsAsync(match.attraction.attractionId, user.getUserId());
+				} catch (RuntimeException e) {
+					points = CompletableFuture.failedFuture(e);
+				}
+				points.whenComplete((p, e) -> lookups.release());
+				rewardPoints.put(match.attraction.attractionName, points);
+				all.add(points);
+			}
+		}
 
-		int count = 0;
-		for (Map.Entry<Double, Attraction> entry : map.entrySet()) {
-			if (count >= 5) {
-				break;
+		/**
+		 * Adds the new rewards, in the order calculateRewards would have added them.
+		 * @return int number of rewards added, or -1 if some reward points could not be looked up
+		 */
+		private int apply(int version) {
+			List<SpatialJoin.Match<BatchUser>> matches = new ArrayList<>(firstMatches.values());
+			matches.sort((a, b) -> isBefore(a, b) ? -1 : isBefore(b, a) ? 1 : 0);
+			boolean failed = false;
+			int added = 0;
+			synchronized (user) {
+				for (SpatialJoin.Match<BatchUser> match : matches) {
+					CompletableFuture<Integer> points = rewardPoints.get(match.attraction.attractionName);
+					if (points.isCompletedExceptionally()) {
+						failed = true;
+						continue;
+					}
+					String attractionName = match.attraction.attractionName;
+					if (user.getUserRewards().stream().anyMatch(r -> r.attraction.attractionName.equals(attractionName))) {
+						continue;
+					}
+					UserReward userReward = new UserReward(user.getLocationHistory().visitedLocationAt(match.sequence),
+							match.attraction, points.join());
+					if (user.addUserReward(userReward)) {
+						writeAheadLog.appendUserReward(user.getUserId(), userReward);
+						metrics.rewardsGranted().increment();
+						added++;
+					}
+				}
+				if (added > 0) {
+					leaderboard.update(user);
+				}
+				if (failed) {
+					logger.warn("Some reward points of " + user.getUserName() + " could not be looked up, they are tried again next time");
+					return -1;
+				}
+				// a calculation which ran meanwhile checked these locations already, and maybe newer ones
+				if (user.getRewardsWatermark() == watermark && user.getRewardsCatalogVersion() == catalogVersion) {
+					user.setRewardsWatermark(to, version);
+				}
+				return added;
 			}
-			topFive.add(entry.getValue());
-			count++;
 		}
 
+		private boolean isBefore(SpatialJoin.Match<BatchUser> a, SpatialJoin.Match<BatchUser> b) {
+			return a.sequence < b.sequence || (a.sequence == b.sequence && a.catalogIndex < b.catalogIndex);
+		}
+	}
 
-		return closestAttractionsDTOS(user, topFive,location);
+	/**
+	 * This method is used to get the five attractions closest to a location, no matter how far away they are.
+	 * Attractions at the same distance are ordered as in the catalog, the first of them kept when they tie for the fifth place.
+	 * Their reward points are waited for within the reward points budget, if there is one: the points not known
+	 * in time are answered as pending, with 0 points, and are in the cache for the next request once RewardCentral answers.
+	 * Points which could not be looked up, e.g. rejected by a saturated executor, are answered as pending too.
+	 * @param user
+	 * @param location
+	 * @return List<ClosestAttractionsDTO>
+	 */
+	public List<ClosestAttractionsDTO> getTopFiveNearestAttraction(User user, Location location) {
+		return closestAttractionsDTOS(user, nearestAttractionsCache.nearest(location), location);
 	}
 
 
-	private List<ClosestAttractionsDTO> closestAttractionsDTOS(User user,List<Attraction> attractions, Location location) {
+	private List<ClosestAttractionsDTO> closestAttractionsDTOS(User user, List<NearbyAttraction> attractions, Location location) {
+		// the reward points of the attractions are looked up concurrently
+		List<CompletableFuture<Integer>> rewardPoints = new ArrayList<>();
+		for (NearbyAttraction nearby : attractions) {
+			rewardPoints.add(rewardPointsCache.getRewardPointsAsync(nearby.attraction.attractionId, user.getUserId()));
+		}
+
+		Duration budget = rewardPointsBudget;
+		// one budget for the whole answer, not per attraction
+		long deadline = budget == null ? 0 : System.nanoTime() + budget.toNanos();
 		List<ClosestAttractionsDTO> closestAttractionsDTOS = new ArrayList<>();
-		for (Attraction attraction : attractions) {
+		for (int i = 0; i < attractions.size(); i++) {
+			NearbyAttraction nearby = attractions.get(i);
+			Attraction attraction = nearby.attraction;
+			Integer points = budget == null ? awaitRewardPointsUnlessFailed(rewardPoints.get(i))
+					: awaitRewardPoints(rewardPoints.get(i), Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
 			closestAttractionsDTOS.add( new ClosestAttractionsDTO(
 					attraction.attractionName,
 					attraction.longitude,
 					attraction.latitude,
 					location.longitude,
 					location.latitude,
-					getDistance(attraction, location),
-					user.getUserRewards().stream().mapToInt(UserReward::getRewardPoints).sum()
+					nearby.distance,
+					points == null ? 0 : points,
+					points == null
 			));
 		}
 		return closestAttractionsDTOS;
 	}
 
 
-
-
-
 	public boolean isWithinAttractionProximity(Attraction attraction, Location location) {
 		return (getDistance(attraction, location) < attractionProximityRange);
 	}
 	
-	private boolean nearAttraction(VisitedLocation visitedLocation, Attraction attraction) {
-		return (getDistance(attraction, visitedLocation.location) < proximityBuffer);
+	/**
+	 * Waits for reward points however long RewardCentral takes, unless the lookup is rejected by a saturated executor.
+	 * @return Integer the points, or null if the lookup was rejected
+	 */
+	private static Integer awaitRewardPointsUnlessRejected(CompletableFuture<Integer> rewardPoints) {
+		try {
+			return rewardPoints.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RejectedExecutionException) {
+				return null;
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
 	}
-	
-	private int getRewardPoints(Attraction attraction, User user) {
-		return rewardsCentral.getAttractionRewardPoints(attraction.attractionId, user.getUserId());
+
+	/**
+	 * Waits for reward points however long RewardCentral takes, unless the lookup fails.
+	 * @return Integer the points, or null if they could not be looked up
+	 */
+	private static Integer awaitRewardPointsUnlessFailed(CompletableFuture<Integer> rewardPoints) {
+		try {
+			return rewardPoints.join();
+		} catch (CompletionException | CancellationException e) {
+			return null;
+		}
 	}
-	
-	public double getDistance(Location loc1, Location loc2) {
-        double lat1 = Math.toRadians(loc1.latitude);
-        double lon1 = Math.toRadians(loc1.longitude);
-        double lat2 = Math.toRadians(loc2.latitude);
-        double lon2 = Math.toRadians(loc2.longitude);
 
-        double angle = Math.acos(Math.sin(lat1) * Math.sin(lat2)
-                               + Math.cos(lat1) * Math.cos(lat2) * Math.cos(lon1 - lon2));
+	/**
+	 * Waits for reward points within the latency budget.
+	 * @return Integer the points, or null if they are not known in time or could not be looked up
+	 */
+	private static Integer awaitRewardPoints(CompletableFuture<Integer> rewardPoints, Duration budget) {
+		try {
+			return rewardPoints.get(budget.toNanos(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException | ExecutionException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
 
-        double nauticalMiles = 60 * Math.toDegrees(angle);
-		return STATUTE_MILES_PER_NAUTICAL_MILE * nauticalMiles;
+	/**
+	 * Sets the points of a pending reward once they are known, unless they are already being looked up.
+	 * If the lookup fails, the reward stays pending until the next reward calculation of the user.
+	 */
+	private void completePendingReward(User user, UserReward userReward, CompletableFuture<Integer> rewardPoints) {
+		if (!pendingRewardsInFlight.add(userReward)) {
+			return;
+		}
+		rewardPoints.whenComplete((points, e) -> {
+			pendingRewardsInFlight.remove(userReward);
+			if (e != null) {
+				logger.debug("Reward points of " + userReward.attraction.attractionName + " for " + user.getUserName()
+						+ " are still pending: " + e);
+				return;
+			}
+			if (user.completePendingReward(userReward, points)) {
+				writeAheadLog.appendUserReward(user.getUserId(), userReward);
+				leaderboard.update(user);
+			}
+		});
+	}
+
+	private void retryPendingRewards(User user) {
+		for (UserReward userReward : user.getUserRewards()) {
+			if (userReward.isPending() && !pendingRewardsInFlight.contains(userReward)) {
+				completePendingReward(user, userReward,
+						rewardPointsCache.getRewardPointsAsync(userReward.attraction.attractionId, user.getUserId()));
+			}
+		}
+	}
+
+	/**
+	 * This method is used to get the ranking of the users by the reward points granted here.
+	 * @return RewardsLeaderboard
+	 */
+	public RewardsLeaderboard getLeaderboard() {
+		return leaderboard;
+	}
+
+	/**
+	 * This method is used to get the reward points cache, for example to read its statistics.
+	 * @return RewardPointsCache
+	 */
+	public RewardPointsCache getRewardPointsCache() {
+		return rewardPointsCache;
+	}
+	
+	public double getDistance(Location loc1, Location loc2) {
+		return GeoMath.distanceMiles(loc1, loc2);
 	}
 
 }
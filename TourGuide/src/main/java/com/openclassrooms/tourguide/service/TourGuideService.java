@@ -4,47 +4,126 @@ import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
 import com.openclassrooms.tourguide.gpsUtil.location.Location;
 import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.helper.InternalUserGenerator;
 import com.openclassrooms.tourguide.models.ClosestAttractionsDTO;
+import com.openclassrooms.tourguide.models.LeaderboardEntryDTO;
+import com.openclassrooms.tourguide.persistence.UserSnapshotStore;
+import com.openclassrooms.tourguide.persistence.WriteAheadLog;
+import com.openclassrooms.tourguide.repository.InMemoryUserRepository;
+import com.openclassrooms.tourguide.repository.UserRepository;
+import com.openclassrooms.tourguide.tracker.SweepReport;
 import com.openclassrooms.tourguide.tracker.Tracker;
+import com.openclassrooms.tourguide.tracker.TrackingEngine;
+import com.openclassrooms.tourguide.tracker.TrackingPipeline;
 import com.openclassrooms.tourguide.tripPricer.Provider;
 import com.openclassrooms.tourguide.tripPricer.TripPricer;
+import com.openclassrooms.tourguide.user.RetentionPolicy;
 import com.openclassrooms.tourguide.user.User;
 import com.openclassrooms.tourguide.user.UserReward;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 public class TourGuideService {
+	// a GpsUtil request locates this many users in one round trip
+	private static final int LOCATION_BATCH_SIZE = GpsUtil.MAX_BATCH_SIZE;
+	// the asynchronous methods without a timeout
+	private static final long NO_DEADLINE = Long.MIN_VALUE;
+	// time the shutdown waits for a snapshot being saved before taking the final one
+	private static final Duration SNAPSHOT_SHUTDOWN_TIMEOUT = Duration.ofMinutes(1);
 	private       Logger         logger = LoggerFactory.getLogger(TourGuideService.class);
 	private final GpsUtil        gpsUtil;
 	private final RewardsService rewardsService;
-	private final TripPricer     tripPricer = new TripPricer();
+	private final TripPricer     tripPricer;
+	private final TrackingEngine trackingEngine;
+	private final TrackingPipeline trackingPipeline;
+	private final UserRepository userRepository;
+	private final RetentionPolicy retentionPolicy;
+	// trackings in progress by user id, so concurrent callers share them instead of starting another one
+	private final Map<UUID, CompletableFuture<VisitedLocation>> trackingInFlight = new ConcurrentHashMap<>();
+	private final InternalUserGenerator internalUserGenerator;
+	private final UserSnapshotStore userSnapshotStore;
+	private final WriteAheadLog writeAheadLog;
+	// completed once the restored or internal users are in the UserRepository
+	private final CompletableFuture<Void> internalUsersReady;
 	public final  Tracker        tracker;
+	// saves the users at the snapshot interval, null when the snapshots are disabled or only taken at shutdown
+	private final ScheduledExecutorService snapshotScheduler;
+	private boolean shutDown;
 	boolean testMode = true;
 
+	/**
+	 * A service with its own TrackingEngine and TrackingPipeline, closed when its Tracker stops.
+	 * @param gpsUtil
+	 * @param rewardsService
+	 */
 	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService) {
+		this(gpsUtil, rewardsService, new TrackingEngine());
+	}
+
+	private TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, TrackingEngine trackingEngine) {
+		this(gpsUtil, rewardsService, new TripPricer(), trackingEngine, new TrackingPipeline(trackingEngine),
+				new InMemoryUserRepository(), RetentionPolicy.unbounded(), new InternalUserGenerator(),
+				UserSnapshotStore.disabled(), WriteAheadLog.disabled(), true);
+	}
+
+	@Autowired
+	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, TripPricer tripPricer,
+							TrackingEngine trackingEngine, TrackingPipeline trackingPipeline,
+							UserRepository userRepository, RetentionPolicy retentionPolicy,
+							InternalUserGenerator internalUserGenerator, UserSnapshotStore userSnapshotStore,
+							WriteAheadLog writeAheadLog) {
+		this(gpsUtil, rewardsService, tripPricer, trackingEngine, trackingPipeline, userRepository, retentionPolicy,
+				internalUserGenerator, userSnapshotStore, writeAheadLog, false);
+	}
+
+	/**
+	 * @param ownsTracking true if the TrackingEngine and TrackingPipeline were created for this service,
+	 * they are then closed when the Tracker stops
+	 */
+	private TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, TripPricer tripPricer,
+							 TrackingEngine trackingEngine, TrackingPipeline trackingPipeline,
+							 UserRepository userRepository, RetentionPolicy retentionPolicy,
+							 InternalUserGenerator internalUserGenerator, UserSnapshotStore userSnapshotStore,
+							 WriteAheadLog writeAheadLog, boolean ownsTracking) {
 		this.gpsUtil = gpsUtil;
 		this.rewardsService = rewardsService;
+		this.tripPricer = tripPricer;
+		this.trackingEngine = trackingEngine;
+		this.trackingPipeline = trackingPipeline;
+		this.userRepository = userRepository;
+		this.retentionPolicy = retentionPolicy;
+		this.internalUserGenerator = internalUserGenerator;
+		this.userSnapshotStore = userSnapshotStore;
+		this.writeAheadLog = writeAheadLog;
 		
 		Locale.setDefault(Locale.US);
 
 		if (testMode) {
 			logger.info("TestMode enabled");
-			logger.debug("Initializing users");
-			initializeInternalUsers();
-			logger.debug("Finished initializing users");
 		}
-		tracker = new Tracker(this);
+		internalUsersReady = initializeUsers(internalUserGenerator.getInitialization());
+		tracker = ownsTracking ? new Tracker(this, this::closeTracking) : new Tracker(this);
+		snapshotScheduler = scheduleSnapshots();
 		addShutDownHook();
 	}
 
@@ -59,6 +138,16 @@ public class TourGuideService {
 	}
 
 
+	/**
+	 * This method is used to get the users with the most reward points, most points first.
+	 * @param size maximum number of users
+	 * @return List<LeaderboardEntryDTO>
+	 */
+
+	public List<LeaderboardEntryDTO> getLeaderboard(int size) {
+		return rewardsService.getLeaderboard().top(size);
+	}
+
 	/**
 	 * This method is used to get the current user location.
 	 * If user has already a visited location, then the method returns it.
@@ -72,6 +161,42 @@ public class TourGuideService {
 		return visitedLocation;
 	}
 
+	/**
+	 * Same as getUserLocation, but tracking a user who has no visited location yet runs on the given executor.
+	 * The future fails with a RejectedExecutionException if the executor is saturated.
+	 * @param user
+	 * @param executor
+	 * @return CompletableFuture<VisitedLocation>
+	 */
+	public CompletableFuture<VisitedLocation> getUserLocationAsync(User user, Executor executor) {
+		return getUserLocationAsync(user, executor, NO_DEADLINE);
+	}
+
+	/**
+	 * Same as getUserLocationAsync, the future failing with a TimeoutException after the timeout.
+	 * A tracking not started by then is not run, one already running goes on and keeps the location it gets.
+	 * @param user
+	 * @param executor
+	 * @param timeout
+	 * @return CompletableFuture<VisitedLocation>
+	 */
+	public CompletableFuture<VisitedLocation> getUserLocationAsync(User user, Executor executor, Duration timeout) {
+		return getUserLocationAsync(user, executor, deadline(timeout));
+	}
+
+	private CompletableFuture<VisitedLocation> getUserLocationAsync(User user, Executor executor, long deadline) {
+		if (user.getVisitedLocations().size() > 0) {
+			return CompletableFuture.completedFuture(user.getLastVisitedLocation());
+		}
+		// waiting for a tracking already in flight does not need a thread,
+		// a copy so that the callers cannot complete the future the other ones wait for
+		CompletableFuture<VisitedLocation> inFlight = trackingInFlight.get(user.getUserId());
+		if (inFlight != null) {
+			return withDeadline(inFlight.copy(), deadline);
+		}
+		return supplyAsync(() -> trackUserLocation(user), executor, deadline);
+	}
+
 	/**
 	 * This method is user for testing purpose. It returns a specific user
 	 * from username.
@@ -81,29 +206,45 @@ public class TourGuideService {
 	 */
 
 	public User getUser(String userName) {
-		return internalUserMap.get(userName);
+		return users().findByName(userName).orElse(null);
 	}
 
 	/**
 	 * This method is used for testing purpose, it returns a List of all users.
 	 * Note: the List of all users is generated randomly.
+	 * It copies every user, iterate over getUserRepository().findAll() instead when a copy is not needed.
 	 * @return List<User>
 	 */
 
 	public List<User> getAllUsers() {
-		return internalUserMap.values().stream().collect(Collectors.toList());
+		UserRepository userRepository = users();
+		List<User> users = new ArrayList<>(userRepository.size());
+		userRepository.findAll().forEach(users::add);
+		return users;
+	}
+
+	/**
+	 * This method is used to get the store of all the users.
+	 * While the internal users are generated in the background, it waits for them.
+	 * @return UserRepository
+	 */
+
+	public UserRepository getUserRepository() {
+		return users();
 	}
 
 
 	/**
 	 * This method is user to add a new user.
-	 * Note: the user is added to a Map which is used to testing purpose.
+	 * Note: the user is not added if another user already has the same user name.
+	 * The location history of the user follows the retention policy of the service from now on.
 	 * @param user
 	 */
 
 	public void addUser(User user) {
-		if (!internalUserMap.containsKey(user.getUserName())) {
-			internalUserMap.put(user.getUserName(), user);
+		user.getLocationHistory().setRetentionPolicy(retentionPolicy);
+		if (users().add(user)) {
+			writeAheadLog.appendUser(user);
 		}
 	}
 
@@ -116,7 +257,7 @@ public class TourGuideService {
 	 */
 
 	public List<Provider> getTripDeals(User user) {
-		int cumulatativeRewardPoints = user.getUserRewards().stream().mapToInt(i -> i.getRewardPoints()).sum();
+		int cumulatativeRewardPoints = user.getRewardPoints();
 		List<Provider> providers = tripPricer.getPrice(tripPricerApiKey, user.getUserId(),
 				user.getUserPreferences().getNumberOfAdults(), user.getUserPreferences().getNumberOfChildren(),
 				user.getUserPreferences().getTripDuration(), cumulatativeRewardPoints);
@@ -124,45 +265,153 @@ public class TourGuideService {
 		return providers;
 	}
 
+	/**
+	 * Same as getTripDeals, but TripPricer is called on the given executor.
+	 * @param user
+	 * @param executor
+	 * @return CompletableFuture<List<Provider>>
+	 */
+	public CompletableFuture<List<Provider>> getTripDealsAsync(User user, Executor executor) {
+		return supplyAsync(() -> getTripDeals(user), executor, NO_DEADLINE);
+	}
+
+	/**
+	 * Same as getTripDealsAsync, the future failing with a TimeoutException after the timeout.
+	 * TripPricer is not called if the executor does not start the task by then.
+	 * @param user
+	 * @param executor
+	 * @param timeout
+	 * @return CompletableFuture<List<Provider>>
+	 */
+	public CompletableFuture<List<Provider>> getTripDealsAsync(User user, Executor executor, Duration timeout) {
+		return supplyAsync(() -> getTripDeals(user), executor, deadline(timeout));
+	}
+
 	/**
 	 * This method is used to track the user location.
 	 * It also calls the 'calculateRewards' method from 'rewardsService' to calculte the reward associated
 	 * with the current user.
+	 * If the user is already being tracked, it waits for that tracking and returns its location
+	 * instead of requesting another one.
 	 * @param user
 	 * @return VisitedLocation
 	 */
 
 	public VisitedLocation trackUserLocation(User user) {
-		VisitedLocation visitedLocation = gpsUtil.getUserLocation(user.getUserId());
-		user.addToVisitedLocations(visitedLocation);
-		rewardsService.calculateRewards(user);
-		return visitedLocation;
+		CompletableFuture<VisitedLocation> tracking = new CompletableFuture<>();
+		CompletableFuture<VisitedLocation> inFlight = trackingInFlight.putIfAbsent(user.getUserId(), tracking);
+		if (inFlight != null) {
+			return awaitTracking(inFlight);
+		}
+		try {
+			VisitedLocation visitedLocation = gpsUtil.getUserLocation(user.getUserId());
+			user.addToVisitedLocations(visitedLocation);
+			writeAheadLog.appendVisitedLocation(visitedLocation);
+			rewardsService.calculateRewards(user);
+			tracking.complete(visitedLocation);
+			return visitedLocation;
+		} catch (RuntimeException | Error e) {
+			tracking.completeExceptionally(e);
+			throw e;
+		} finally {
+			trackingInFlight.remove(user.getUserId(), tracking);
+		}
 	}
 
 
 	/**
-	 * Method which uses ExecutorService to ameliorate performance to track user location of several users.
+	 * Method which uses the TrackingPipeline to track the location of several users concurrently.
+	 * Their rewards are calculated by the rewards stage, it returns once every user is rewarded.
 	 * @param userList
 	 * @return Map<UUID, VisitedLocation>
 	 */
 
 	public Map<UUID, VisitedLocation> trackAllUsersLocation(List<User> userList) {
-		ExecutorService service = Executors.newFixedThreadPool(30);
-		Map<UUID, VisitedLocation> userVisitedLocationMap = new HashMap<>();
+		Map<UUID, VisitedLocation> userVisitedLocationMap = new ConcurrentHashMap<>();
+		SweepReport report = trackingPipeline.sweep(userList, LOCATION_BATCH_SIZE,
+				(batch, located) -> userVisitedLocationMap.putAll(trackUsersLocationBatch(batch, located)),
+				rewardsService::calculateRewards,
+				user -> { });
+		logger.debug("Tracked all users: " + report);
+		return userVisitedLocationMap;
+	}
+
+	/**
+	 * This method is used by the Tracker to track the location of several users
+	 * without collecting their locations.
+	 * The users go through the TrackingPipeline: their rewards are calculated, and their trip deals refreshed
+	 * if it is configured to, by other threads than the ones locating them.
+	 * @param users
+	 * @return SweepReport
+	 */
+
+	public SweepReport trackUsersLocation(Iterable<User> users) {
+		return trackingPipeline.<User>sweep(users, LOCATION_BATCH_SIZE,
+				this::trackUsersLocationBatch,
+				rewardsService::calculateRewards,
+				this::getTripDeals);
+	}
+
+	/**
+	 * Locates a batch of users with a single GpsUtil request, and hands every user located to the given consumer,
+	 * which queues them for the rewards stage.
+	 */
+	private Map<UUID, VisitedLocation> trackUsersLocationBatch(List<User> users, Consumer<? super User> located) {
+		// the users already being tracked elsewhere are not requested again, their tracking is awaited at the end
+		Map<UUID, CompletableFuture<VisitedLocation>> claimed = new LinkedHashMap<>();
+		Map<UUID, CompletableFuture<VisitedLocation>> awaited = new LinkedHashMap<>();
+		for (User user : users) {
+			CompletableFuture<VisitedLocation> tracking = new CompletableFuture<>();
+			CompletableFuture<VisitedLocation> inFlight = trackingInFlight.putIfAbsent(user.getUserId(), tracking);
+			if (inFlight == null) {
+				claimed.put(user.getUserId(), tracking);
+			} else {
+				awaited.put(user.getUserId(), inFlight);
+			}
+		}
+
+		Map<UUID, VisitedLocation> visitedLocations = new LinkedHashMap<>();
 		try {
-			for (User user : userList) {
-				service.execute(() -> {
-					VisitedLocation visitedLocation = trackUserLocation(user);
-					userVisitedLocationMap.put(user.getUserId(), visitedLocation);
-				});
+			if (!claimed.isEmpty()) {
+				visitedLocations.putAll(gpsUtil.getUserLocations(claimed.keySet()));
 			}
-			service.shutdown();
-			service.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-			System.out.println("All threads have completed");
-		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
+			for (User user : users) {
+				CompletableFuture<VisitedLocation> tracking = claimed.get(user.getUserId());
+				if (tracking == null) {
+					continue;
+				}
+				VisitedLocation visitedLocation = visitedLocations.get(user.getUserId());
+				if (visitedLocation == null) {
+					// the user is left as it was, and is tracked again by the next sweep
+					logger.warn("GpsUtil did not locate user " + user.getUserName());
+					tracking.completeExceptionally(new IllegalStateException("GpsUtil did not locate user " + user.getUserName()));
+					continue;
+				}
+				user.addToVisitedLocations(visitedLocation);
+				writeAheadLog.appendVisitedLocation(visitedLocation);
+				located.accept(user);
+				tracking.complete(visitedLocation);
+			}
+		} catch (RuntimeException | Error e) {
+			claimed.values().forEach(tracking -> tracking.completeExceptionally(e));
+			throw e;
+		} finally {
+			claimed.forEach(trackingInFlight::remove);
+		}
+
+		awaited.forEach((userId, inFlight) -> visitedLocations.put(userId, awaitTracking(inFlight)));
+		return visitedLocations;
+	}
+
+	private static VisitedLocation awaitTracking(CompletableFuture<VisitedLocation> inFlight) {
+		try {
+			return inFlight.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
 		}
-		return userVisitedLocationMap;
 	}
 
 	/**
@@ -176,17 +425,155 @@ public class TourGuideService {
 		return rewardsService.getTopFiveNearestAttraction(user, visitedLocation.location);
 	}
 
+	/**
+	 * Same as getNearByAttractions for the current location of the user, everything running on the given executor.
+	 * @param user
+	 * @param executor
+	 * @return CompletableFuture<List<ClosestAttractionsDTO>>
+	 */
+	public CompletableFuture<List<ClosestAttractionsDTO>> getNearByAttractionsAsync(User user, Executor executor) {
+		return getNearByAttractionsAsync(user, executor, NO_DEADLINE);
+	}
+
+	/**
+	 * Same as getNearByAttractionsAsync, the future failing with a TimeoutException after the timeout.
+	 * The steps not started by then are not run.
+	 * @param user
+	 * @param executor
+	 * @param timeout
+	 * @return CompletableFuture<List<ClosestAttractionsDTO>>
+	 */
+	public CompletableFuture<List<ClosestAttractionsDTO>> getNearByAttractionsAsync(User user, Executor executor, Duration timeout) {
+		return getNearByAttractionsAsync(user, executor, deadline(timeout));
+	}
+
+	private CompletableFuture<List<ClosestAttractionsDTO>> getNearByAttractionsAsync(User user, Executor executor, long deadline) {
+		return getUserLocationAsync(user, executor, deadline)
+				.thenCompose(visitedLocation -> supplyAsync(() -> getNearByAttractions(user, visitedLocation), executor, deadline));
+	}
+
+	private static long deadline(Duration timeout) {
+		return System.nanoTime() + timeout.toNanos();
+	}
 
 	/**
-	 * This method is used to shut down the tracker.
+	 * Unlike CompletableFuture.supplyAsync, a saturated executor fails the returned future
+	 * instead of throwing to the caller. Past the deadline the future fails with a TimeoutException,
+	 * and a task which has not started yet is skipped instead of run for nobody.
 	 */
+	private static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor, long deadline) {
+		try {
+			return withDeadline(CompletableFuture.supplyAsync(() -> {
+				if (deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0) {
+					throw new CompletionException(new TimeoutException("Not started before the deadline"));
+				}
+				return supplier.get();
+			}, executor), deadline);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Fails the future with a TimeoutException at the deadline. The future must not be shared:
+	 * once completed, the executor skips the task which would have completed it.
+	 */
+	private static <T> CompletableFuture<T> withDeadline(CompletableFuture<T> future, long deadline) {
+		if (deadline == NO_DEADLINE) {
+			return future;
+		}
+		return future.orTimeout(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+	}
+
+
+	/**
+	 * This method is used to save every user to the snapshot, which is restored at the next start.
+	 * The write-ahead log segments covered by the snapshot are then deleted.
+	 * @return int number of users saved
+	 */
+
+	public int snapshotUsers() {
+		long start = System.nanoTime();
+		try {
+			// the changes logged before the roll are all in the users when they are saved
+			long segment = writeAheadLog.roll();
+			int userCount = userSnapshotStore.write(users().findAll());
+			int deletedSegments = writeAheadLog.deleteSegmentsBefore(segment);
+			logger.debug("Saved " + userCount + " users to " + userSnapshotStore.getPath() + " in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms, "
+					+ deletedSegments + " write-ahead log segments deleted.");
+			return userCount;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to save the users to " + userSnapshotStore.getPath(), e);
+		}
+	}
+
+	/**
+	 * This method is used to shut down the tracker and the snapshot scheduler, to save the users if snapshots
+	 * are enabled, and to close the write-ahead log. It is run once, by the application context when it closes
+	 * or by the JVM shutdown hook, whichever comes first; the other call waits for it to be done.
+	 */
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (shutDown) {
+			return;
+		}
+		shutDown = true;
+		tracker.stopTracking();
+		if (snapshotScheduler != null) {
+			stopSnapshots(snapshotScheduler);
+		}
+		if (userSnapshotStore.isEnabled()) {
+			saveSnapshot();
+		}
+		writeAheadLog.close();
+	}
 
 	private void addShutDownHook() {
-		Runtime.getRuntime().addShutdownHook(new Thread() {
-			public void run() {
-				tracker.stopTracking();
-			}
+		Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+	}
+
+	private void closeTracking() {
+		trackingPipeline.close();
+		trackingEngine.close();
+	}
+
+	private ScheduledExecutorService scheduleSnapshots() {
+		long intervalMillis = userSnapshotStore.getInterval().toMillis();
+		if (!userSnapshotStore.isEnabled() || intervalMillis <= 0) {
+			return null;
+		}
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "user-snapshot");
+			thread.setDaemon(true);
+			return thread;
 		});
+		scheduler.scheduleWithFixedDelay(this::saveSnapshot, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		return scheduler;
+	}
+
+	/**
+	 * Cancels the next snapshots and waits for the one being saved, so the final snapshot does not overwrite it.
+	 */
+	private void stopSnapshots(ScheduledExecutorService scheduler) {
+		scheduler.shutdown();
+		try {
+			if (!scheduler.awaitTermination(SNAPSHOT_SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+				logger.warn("User snapshot still running after " + SNAPSHOT_SHUTDOWN_TIMEOUT + ", interrupting it");
+				scheduler.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			scheduler.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void saveSnapshot() {
+		try {
+			snapshotUsers();
+		} catch (RuntimeException e) {
+			logger.error("User snapshot failed", e);
+		}
 	}
 
 	/**********************************************************************************
@@ -196,44 +583,92 @@ public class TourGuideService {
 	 **********************************************************************************/
 	private static final String tripPricerApiKey = "test-server-api-key";
 	// Database connection will be used for external users, but for testing purposes
-	// internal users are provided and stored in memory
-	private final Map<String, User> internalUserMap = new HashMap<>();
+	// internal users are provided and stored in the UserRepository
+
+	private CompletableFuture<Void> initializeUsers(InternalUserGenerator.Initialization initialization) {
+		if (initialization == InternalUserGenerator.Initialization.BACKGROUND) {
+			logger.debug("Initializing users in the background");
+			CompletableFuture<Void> ready = CompletableFuture.runAsync(this::initializeUsers, runnable -> {
+				Thread thread = new Thread(runnable, "internal-users");
+				thread.setDaemon(true);
+				thread.start();
+			});
+			ready.exceptionally(e -> {
+				logger.error("Failed to initialize the users", e);
+				return null;
+			});
+			return ready;
+		}
+		logger.debug("Initializing users");
+		initializeUsers();
+		return CompletableFuture.completedFuture(null);
+	}
 
-	private void initializeInternalUsers() {
-		IntStream.range(0, InternalTestHelper.getInternalUserNumber()).forEach(i -> {
-			String userName = "internalUser" + i;
-			String phone = "000";
-			String email = userName + "@tourGuide.com";
-			User user = new User(UUID.randomUUID(), userName, phone, email);
-			generateUserLocationHistory(user);
-
-			internalUserMap.put(userName, user);
-		});
-		logger.debug("Created " + InternalTestHelper.getInternalUserNumber() + " internal test users.");
+	/**
+	 * Restores the users of the last snapshot if there is one, otherwise generates the internal users in test mode,
+	 * then applies the changes logged since.
+	 */
+	private void initializeUsers() {
+		if (userSnapshotStore.exists()) {
+			restoreUsers();
+		} else if (testMode) {
+			initializeInternalUsers();
+		}
+		replayWriteAheadLog();
+		for (User user : userRepository.findAll()) {
+			if (user.getRewardPoints() > 0) {
+				rewardsService.getLeaderboard().update(user);
+			}
+		}
 	}
 
-	private void generateUserLocationHistory(User user) {
-		IntStream.range(0, 3).forEach(i -> {
-			user.addToVisitedLocations(new VisitedLocation(user.getUserId(),
-					new Location(generateRandomLatitude(), generateRandomLongitude()), getRandomTime()));
-		});
+	private void replayWriteAheadLog() {
+		if (!writeAheadLog.isEnabled()) {
+			return;
+		}
+		long start = System.nanoTime();
+		int recordCount;
+		try {
+			recordCount = writeAheadLog.replay(userRepository, retentionPolicy, rewardsService.getAttractionCatalog());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to replay the write-ahead log " + writeAheadLog.getDirectory(), e);
+		}
+		logger.info("Replayed " + recordCount + " changes from " + writeAheadLog.getDirectory() + " in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
 	}
 
-	private double generateRandomLongitude() {
-		double leftLimit = -180;
-		double rightLimit = 180;
-		return leftLimit + new Random().nextDouble() * (rightLimit - leftLimit);
+	private void restoreUsers() {
+		long start = System.nanoTime();
+		List<User> users;
+		try {
+			users = userSnapshotStore.read(retentionPolicy, rewardsService.getAttractionCatalog(), rewardsService.getCatalogVersion());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to restore the users from " + userSnapshotStore.getPath(), e);
+		}
+		userRepository.addAll(users);
+		logger.info("Restored " + users.size() + " users from " + userSnapshotStore.getPath() + " in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
 	}
 
-	private double generateRandomLatitude() {
-		double leftLimit = -85.05112878;
-		double rightLimit = 85.05112878;
-		return leftLimit + new Random().nextDouble() * (rightLimit - leftLimit);
+	private void initializeInternalUsers() {
+		long start = System.nanoTime();
+		List<User> users = internalUserGenerator.generate(InternalTestHelper.getInternalUserNumber(), retentionPolicy);
+		userRepository.addAll(users);
+		logger.debug("Created " + users.size() + " internal test users in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
 	}
 
-	private Date getRandomTime() {
-		LocalDateTime localDateTime = LocalDateTime.now().minusDays(new Random().nextInt(30));
-		return Date.from(localDateTime.toInstant(ZoneOffset.UTC));
+	/**
+	 * The UserRepository, once the users are restored or generated in it.
+	 * If that failed, every caller gets the failure rather than the users added before it.
+	 */
+	private UserRepository users() {
+		try {
+			internalUsersReady.join();
+		} catch (CompletionException e) {
+			throw new UsersUnavailableException(e.getCause());
+		}
+		return userRepository;
 	}
 
 }
@@ -0,0 +1,16 @@
+package com.openclassrooms.tourguide.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown by every TourGuideService call needing the users when they could not be restored or generated,
+ * the endpoints answer it with 503 instead of serving a partial set of users.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class UsersUnavailableException extends IllegalStateException {
+
+	public UsersUnavailableException(Throwable cause) {
+		super("Failed to initialize the users", cause);
+	}
+}
@@ -0,0 +1,46 @@
+package com.openclassrooms.tourguide.tracker;
+
+/**
+ * Summary of one tracking sweep over a set of users: how many users were
+ * processed, how many failed and how long the sweep took.
+ */
+public class SweepReport {
+	private final int  userCount;
+	private final int  failureCount;
+	private final long elapsedMillis;
+
+	public SweepReport(int userCount, int failureCount, long elapsedMillis) {
+		this.userCount = userCount;
+		this.failureCount = failureCount;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public int getUserCount() {
+		return userCount;
+	}
+
+	public int getFailureCount() {
+		return failureCount;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * This method is used to get the throughput of the sweep.
+	 * @return double number of users processed per second
+	 */
+	public double getUsersPerSecond() {
+		if (elapsedMillis == 0) {
+			return userCount;
+		}
+		return userCount * 1000.0 / elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d users (%d failed) in %d ms, %.1f users/s",
+				userCount, failureCount, elapsedMillis, getUsersPerSecond());
+	}
+}
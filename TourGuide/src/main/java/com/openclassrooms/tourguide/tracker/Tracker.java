@@ -1,28 +1,35 @@
 package com.openclassrooms.tourguide.tracker;
 
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.openclassrooms.tourguide.repository.UserRepository;
 import com.openclassrooms.tourguide.service.TourGuideService;
-import com.openclassrooms.tourguide.user.User;
 
 public class Tracker extends Thread {
 	private Logger logger = LoggerFactory.getLogger(Tracker.class);
 	private static final long trackingPollingInterval = TimeUnit.MINUTES.toSeconds(5);
-	private final ExecutorService executorService = Executors.newSingleThreadExecutor();
 	private final TourGuideService tourGuideService;
-	private boolean stop = false;
+	private final Runnable onStop;
+	private volatile boolean stop = false;
 
 	public Tracker(TourGuideService tourGuideService) {
+		this(tourGuideService, () -> { });
+	}
+
+	/**
+	 * @param tourGuideService
+	 * @param onStop run by stopTracking, to release what the tracking used
+	 */
+	public Tracker(TourGuideService tourGuideService, Runnable onStop) {
 		this.tourGuideService = tourGuideService;
+		this.onStop = onStop;
 
-		executorService.submit(this);
+		setName("tracker");
+		setDaemon(true);
+		start();
 	}
 
 	/**
@@ -30,25 +37,31 @@ public class Tracker extends Thread {
 	 */
 	public void stopTracking() {
 		stop = true;
-		executorService.shutdownNow();
+		interrupt();
+		onStop.run();
 	}
 
 	@Override
 	public void run() {
-		StopWatch stopWatch = new StopWatch();
 		while (true) {
 			if (Thread.currentThread().isInterrupted() || stop) {
 				logger.debug("Tracker stopping");
 				break;
 			}
 
-			List<User> users = tourGuideService.getAllUsers();
+			UserRepository users = tourGuideService.getUserRepository();
 			logger.debug("Begin Tracker. Tracking " + users.size() + " users.");
-			stopWatch.start();
-			users.forEach(u -> tourGuideService.trackUserLocation(u));
-			stopWatch.stop();
-			logger.debug("Tracker Time Elapsed: " + TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()) + " seconds.");
-			stopWatch.reset();
+			SweepReport report;
+			try {
+				report = tourGuideService.trackUsersLocation(users.findAll());
+			} catch (RuntimeException e) {
+				if (Thread.currentThread().isInterrupted() || stop) {
+					logger.debug("Tracker stopping");
+					break;
+				}
+				throw e;
+			}
+			logger.debug("Tracker sweep: " + report);
 			try {
 				logger.debug("Tracker sleeping");
 				TimeUnit.SECONDS.sleep(trackingPollingInterval);
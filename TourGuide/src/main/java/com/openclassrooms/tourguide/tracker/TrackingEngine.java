@@ -0,0 +1,283 @@
+package com.openclassrooms.tourguide.tracker;
+
+import com.google.common.collect.Iterables;
+import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
+import org.apache.commons.lang3.time.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs one task per user on a long-lived executor. It is shared by the {@link Tracker}
+ * and by the bulk tracking API of the TourGuideService, so both go through the same
+ * threads and the same concurrency limit.
+ * The number of tasks in flight is capped: every GPS call takes a permit from the global
+ * GpsUtil RateLimiter, so running more tasks than the limiter can serve only parks threads.
+ */
+public class TrackingEngine implements AutoCloseable {
+
+	/**
+	 * How the engine runs its tasks.
+	 */
+	public enum ExecutorMode {
+		/** One virtual thread per task. Falls back to FIXED_THREAD_POOL when the JVM has no virtual threads. */
+		VIRTUAL_THREAD_PER_TASK,
+		/** A fixed pool of platform threads, sized by poolSize. */
+		FIXED_THREAD_POOL,
+		/** A cached pool of platform threads, bounded only by the in-flight limit. */
+		CACHED_THREAD_POOL
+	}
+
+	// one GPS permit per user, and a user task can block up to one second on RewardCentral
+	public static final int DEFAULT_MAX_IN_FLIGHT = (int) GpsUtil.PERMITS_PER_SECOND;
+	public static final int DEFAULT_POOL_SIZE     = 100;
+
+	private final Logger          logger = LoggerFactory.getLogger(TrackingEngine.class);
+	private final ExecutorMode    mode;
+	private final ExecutorService executorService;
+	// an executor given to the engine belongs to its caller, who shuts it down
+	private final boolean         ownsExecutor;
+	private final int             maxInFlight;
+	// only a fixed pool caps the number of tasks running at once
+	private final int             maxConcurrentTasks;
+	private final AtomicInteger   activeTasks = new AtomicInteger();
+	private final AtomicInteger   queuedTasks = new AtomicInteger();
+	private volatile SweepReport  lastSweep   = new SweepReport(0, 0, 0);
+
+	public TrackingEngine() {
+		this(ExecutorMode.VIRTUAL_THREAD_PER_TASK, DEFAULT_POOL_SIZE, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	public TrackingEngine(ExecutorMode mode, int poolSize, int maxInFlight) {
+		if (poolSize < 1 || maxInFlight < 1) {
+			throw new IllegalArgumentException("poolSize and maxInFlight must be positive");
+		}
+		ExecutorService virtualExecutor = mode == ExecutorMode.VIRTUAL_THREAD_PER_TASK ? newVirtualThreadPerTaskExecutor() : null;
+		if (mode == ExecutorMode.VIRTUAL_THREAD_PER_TASK && virtualExecutor == null) {
+			logger.warn("Virtual threads are not available on this JVM, falling back to " + ExecutorMode.FIXED_THREAD_POOL);
+			mode = ExecutorMode.FIXED_THREAD_POOL;
+		}
+		this.mode = mode;
+		this.maxInFlight = maxInFlight;
+		this.ownsExecutor = true;
+		switch (mode) {
+			case VIRTUAL_THREAD_PER_TASK:
+				this.executorService = virtualExecutor;
+				this.maxConcurrentTasks = Integer.MAX_VALUE;
+				break;
+			case FIXED_THREAD_POOL:
+				this.executorService = Executors.newFixedThreadPool(poolSize, daemonThreadFactory());
+				this.maxConcurrentTasks = poolSize;
+				break;
+			default:
+				this.executorService = Executors.newCachedThreadPool(daemonThreadFactory());
+				this.maxConcurrentTasks = Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Runs the engine on a shared pool of platform threads, like FIXED_THREAD_POOL.
+	 * @param executorService left running by {@link #close()}
+	 * @param poolSize threads of the executor, tasks running at once
+	 * @param maxInFlight
+	 */
+	public TrackingEngine(ExecutorService executorService, int poolSize, int maxInFlight) {
+		if (poolSize < 1 || maxInFlight < 1) {
+			throw new IllegalArgumentException("poolSize and maxInFlight must be positive");
+		}
+		this.mode = ExecutorMode.FIXED_THREAD_POOL;
+		this.executorService = executorService;
+		this.ownsExecutor = false;
+		this.maxInFlight = maxInFlight;
+		this.maxConcurrentTasks = poolSize;
+	}
+
+	public ExecutorMode getMode() {
+		return mode;
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	public int getActiveTaskCount() {
+		return activeTasks.get();
+	}
+
+	public int getQueuedTaskCount() {
+		return queuedTasks.get();
+	}
+
+	/**
+	 * This method is used to get the report of the last completed sweep.
+	 * @return SweepReport
+	 */
+	public SweepReport getLastSweep() {
+		return lastSweep;
+	}
+
+	public ExecutorService getExecutorService() {
+		return executorService;
+	}
+
+	/**
+	 * This method is used to run a task for every user and to wait until all of them are done.
+	 * A failing task is logged and counted, it does not stop the sweep.
+	 * @param users
+	 * @param task
+	 * @return SweepReport
+	 */
+	public <T> SweepReport sweep(Iterable<T> users, Consumer<? super T> task) {
+		int tasksInFlight = Math.min(maxInFlight, maxConcurrentTasks);
+		Semaphore inFlight = new Semaphore(tasksInFlight);
+		AtomicInteger failures = new AtomicInteger();
+		int submitted = 0;
+		StopWatch stopWatch = StopWatch.createStarted();
+		try {
+			for (T user : users) {
+				inFlight.acquire();
+				submitted++;
+				execute(inFlight, () -> {
+					try {
+						task.accept(user);
+					} catch (RuntimeException e) {
+						failures.incrementAndGet();
+						logger.error("Tracking task failed", e);
+					}
+				});
+			}
+			// every task gives its permit back when it is done
+			inFlight.acquire(tasksInFlight);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		stopWatch.stop();
+		SweepReport report = new SweepReport(submitted, failures.get(), stopWatch.getTime());
+		lastSweep = report;
+		return report;
+	}
+
+	/**
+	 * This method is used to run a task for every batch of at most batchSize users and to wait
+	 * until all of them are done. The in-flight limit still counts users, not batches.
+	 * A failing batch counts all its users as failed.
+	 * @param users
+	 * @param batchSize
+	 * @param task
+	 * @return SweepReport
+	 */
+	public <T> SweepReport sweepInBatches(Iterable<T> users, int batchSize, Consumer<? super List<T>> task) {
+		int batchesInFlight = Math.min(Math.max(1, maxInFlight / batchSize), maxConcurrentTasks);
+		Semaphore inFlight = new Semaphore(batchesInFlight);
+		AtomicInteger failures = new AtomicInteger();
+		int submitted = 0;
+		StopWatch stopWatch = StopWatch.createStarted();
+		try {
+			for (List<T> batch : Iterables.partition(users, batchSize)) {
+				inFlight.acquire();
+				submitted += batch.size();
+				execute(inFlight, () -> {
+					try {
+						task.accept(batch);
+					} catch (RuntimeException e) {
+						failures.addAndGet(batch.size());
+						logger.error("Tracking batch failed", e);
+					}
+				});
+			}
+			inFlight.acquire(batchesInFlight);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		stopWatch.stop();
+		SweepReport report = new SweepReport(submitted, failures.get(), stopWatch.getTime());
+		lastSweep = report;
+		return report;
+	}
+
+	private void execute(Semaphore inFlight, Runnable task) {
+		queuedTasks.incrementAndGet();
+		try {
+			executorService.execute(() -> {
+				queuedTasks.decrementAndGet();
+				activeTasks.incrementAndGet();
+				try {
+					task.run();
+				} finally {
+					activeTasks.decrementAndGet();
+					inFlight.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			queuedTasks.decrementAndGet();
+			inFlight.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Stops the engine. Tasks which are already running are interrupted.
+	 */
+	@Override
+	public void close() {
+		if (ownsExecutor) {
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Waits for the running tasks after {@link #close()}.
+	 * @param timeout
+	 * @param unit
+	 * @return boolean true if the executor terminated
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executorService.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * @return boolean true if the JVM runs the VIRTUAL_THREAD_PER_TASK mode, rather than falling back
+	 */
+	public static boolean isVirtualThreadAvailable() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Looks up Executors.newVirtualThreadPerTaskExecutor() at runtime, the project is still
+	 * compiled for a JDK which does not have it.
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static ThreadFactory daemonThreadFactory() {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, "tracking-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
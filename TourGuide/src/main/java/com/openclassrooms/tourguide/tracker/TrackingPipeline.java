@@ -0,0 +1,332 @@
+package com.openclassrooms.tourguide.tracker;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Tracks users in three stages, each with its own concurrency and its own bounded queue:
+ * the GPS stage locates batches of users on the TrackingEngine, the rewards stage calculates their rewards,
+ * and the optional pricing stage refreshes their trip deals.
+ * A stage hands a user to the next one through a SubmissionPublisher. When the queue of the next stage is full,
+ * the hand-off blocks, so a slow stage slows the stages before it down instead of piling users up in memory,
+ * while a stage which keeps up never waits for the dependency of another one.
+ */
+public class TrackingPipeline implements AutoCloseable {
+	public static final int DEFAULT_REWARDS_CONCURRENCY    = 100;
+	public static final int DEFAULT_PRICING_CONCURRENCY    = 20;
+	public static final int DEFAULT_QUEUE_CAPACITY         = 1024;
+	private static final long IDLE_TIMEOUT_SECONDS         = 60;
+
+	/**
+	 * Locates a batch of users, handing every user located to the next stage.
+	 */
+	@FunctionalInterface
+	public interface BatchLocator<T> {
+		void locate(List<T> batch, Consumer<? super T> located);
+	}
+
+	private final Logger         logger = LoggerFactory.getLogger(TrackingPipeline.class);
+	private final TrackingEngine trackingEngine;
+	private final Stage          rewardsStage;
+	private final Stage          pricingStage;
+	private final boolean        tripDealsRefreshed;
+	private final Set<Sweep>     sweeps = ConcurrentHashMap.newKeySet();
+	private volatile Throwable   stageFailure;
+
+	public TrackingPipeline(TrackingEngine trackingEngine) {
+		this(trackingEngine, DEFAULT_REWARDS_CONCURRENCY, DEFAULT_QUEUE_CAPACITY, false,
+				DEFAULT_PRICING_CONCURRENCY, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * @param trackingEngine runs the GPS stage, with its own in-flight limit
+	 * @param rewardsConcurrency users whose rewards are calculated at once
+	 * @param rewardsQueueCapacity users located and waiting for their rewards
+	 * @param tripDealsRefreshed true to refresh the trip deals of every user tracked
+	 * @param pricingConcurrency users whose trip deals are refreshed at once
+	 * @param pricingQueueCapacity users rewarded and waiting for their trip deals
+	 */
+	public TrackingPipeline(TrackingEngine trackingEngine, int rewardsConcurrency, int rewardsQueueCapacity,
+							boolean tripDealsRefreshed, int pricingConcurrency, int pricingQueueCapacity) {
+		this(trackingEngine, rewardsConcurrency, rewardsQueueCapacity, tripDealsRefreshed, null, pricingConcurrency, pricingQueueCapacity);
+	}
+
+	/**
+	 * Same as above, with the pricing stage running on a shared executor.
+	 * @param pricingExecutor runs the pricing tasks, at most pricingConcurrency at once,
+	 *                        or null for threads of the stage. Left running by {@link #close()}
+	 */
+	public TrackingPipeline(TrackingEngine trackingEngine, int rewardsConcurrency, int rewardsQueueCapacity,
+							boolean tripDealsRefreshed, Executor pricingExecutor, int pricingConcurrency, int pricingQueueCapacity) {
+		this.trackingEngine = trackingEngine;
+		// the rewards tasks wait on RewardCentral lookups, which run on their own executor
+		this.rewardsStage = new Stage("rewards", rewardsConcurrency, rewardsQueueCapacity, null);
+		this.pricingStage = new Stage("pricing", pricingConcurrency, pricingQueueCapacity, pricingExecutor);
+		this.tripDealsRefreshed = tripDealsRefreshed;
+	}
+
+	public boolean isTripDealsRefreshed() {
+		return tripDealsRefreshed;
+	}
+
+	public int getRewardsQueuedCount() {
+		return rewardsStage.getQueuedCount();
+	}
+
+	public int getRewardsActiveCount() {
+		return rewardsStage.getActiveCount();
+	}
+
+	public int getPricingQueuedCount() {
+		return pricingStage.getQueuedCount();
+	}
+
+	public int getPricingActiveCount() {
+		return pricingStage.getActiveCount();
+	}
+
+	/**
+	 * This method is used to run every user through the stages and to wait until all of them are done.
+	 * A user failing in a stage is logged and counted, and does not go through the next stages.
+	 * A stage which fails as a whole fails the sweep, with an IllegalStateException.
+	 * @param users
+	 * @param batchSize maximum number of users located by one task
+	 * @param locator GPS stage
+	 * @param rewards rewards stage
+	 * @param pricing pricing stage, skipped unless the trip deals are refreshed
+	 * @return SweepReport of the users located, and of the failures of every stage
+	 */
+	public <T> SweepReport sweep(Iterable<T> users, int batchSize, BatchLocator<T> locator,
+								 Consumer<? super T> rewards, Consumer<? super T> pricing) {
+		StopWatch stopWatch = StopWatch.createStarted();
+		Sweep sweep = new Sweep();
+		sweeps.add(sweep);
+		if (stageFailure != null) {
+			sweeps.remove(sweep);
+			throw new IllegalStateException("Tracking pipeline stage failed", stageFailure);
+		}
+		Consumer<T> toPricing = user -> pricingStage.submit(sweep, () -> sweep.run(user, pricing, null));
+		Consumer<T> toRewards = user -> rewardsStage.submit(sweep, () -> sweep.run(user, rewards, tripDealsRefreshed ? toPricing : null));
+		SweepReport located;
+		try {
+			located = trackingEngine.sweepInBatches(users, batchSize,
+					batch -> locator.locate(batch, toRewards));
+		} finally {
+			sweep.leave();
+		}
+		try {
+			sweep.drained.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			sweeps.remove(sweep);
+		}
+		if (sweep.failure.get() != null) {
+			throw new IllegalStateException("Tracking pipeline stage failed", sweep.failure.get());
+		}
+		stopWatch.stop();
+		return new SweepReport(located.getUserCount(), located.getFailureCount() + sweep.failures.get(), stopWatch.getTime());
+	}
+
+	/**
+	 * Stops the stages. Tasks which are already running are interrupted.
+	 */
+	@Override
+	public void close() {
+		rewardsStage.close();
+		pricingStage.close();
+	}
+
+	/**
+	 * A stage failed as a whole: its users will never be handed to the next one, so it is closed with the next ones,
+	 * and the sweeps waiting for them are failed, as are the sweeps started after.
+	 */
+	private void stageFailed(Stage stage, Throwable throwable) {
+		logger.error("Tracking pipeline " + stage.name + " stage failed", throwable);
+		stageFailure = throwable;
+		stage.closeExceptionally(throwable);
+		if (stage == rewardsStage) {
+			pricingStage.closeExceptionally(throwable);
+		}
+		sweeps.forEach(sweep -> sweep.fail(throwable));
+	}
+
+	/**
+	 * The users of one sweep still in the rewards and pricing stages.
+	 */
+	private final class Sweep {
+		// one held by the GPS stage until every user is located
+		private final AtomicInteger              pending  = new AtomicInteger(1);
+		private final AtomicInteger              failures = new AtomicInteger();
+		private final CountDownLatch             drained  = new CountDownLatch(1);
+		private final AtomicReference<Throwable> failure  = new AtomicReference<>();
+
+		private <T> void run(T user, Consumer<? super T> task, Consumer<T> next) {
+			try {
+				task.accept(user);
+			} catch (RuntimeException e) {
+				failures.incrementAndGet();
+				logger.error("Tracking pipeline task failed", e);
+				return;
+			}
+			if (next != null) {
+				next.accept(user);
+			}
+		}
+
+		private void enter() {
+			pending.incrementAndGet();
+		}
+
+		private void leave() {
+			if (pending.decrementAndGet() == 0) {
+				drained.countDown();
+			}
+		}
+
+		private void fail(Throwable throwable) {
+			failure.compareAndSet(null, throwable);
+			drained.countDown();
+		}
+	}
+
+	/**
+	 * A bounded queue, fed through a SubmissionPublisher, and drained by a fixed number of workers.
+	 * The publisher delivers the tasks one at a time on a dispatcher thread, which waits for a free worker
+	 * before asking for the next one, so the tasks not started yet stay in the publisher buffer.
+	 */
+	private final class Stage implements Flow.Subscriber<Runnable> {
+		private final String                        name;
+		private final SubmissionPublisher<Runnable> queue;
+		private final ExecutorService               dispatcher;
+		private final Executor                      workers;
+		// null when the workers are a shared executor
+		private final ExecutorService               ownWorkers;
+		private final Semaphore                     idleWorkers;
+		private final int                           concurrency;
+		private Flow.Subscription                   subscription;
+
+		private Stage(String name, int concurrency, int queueCapacity, Executor sharedWorkers) {
+			if (concurrency < 1 || queueCapacity < 1) {
+				throw new IllegalArgumentException("The concurrency and queue capacity of the " + name + " stage must be positive");
+			}
+			this.name = name;
+			this.concurrency = concurrency;
+			// the threads are only started once users reach the stage, and stop when it stays idle
+			this.dispatcher = newIdleTimeoutExecutor(1, daemonThreadFactory(name + "-dispatcher"));
+			this.ownWorkers = sharedWorkers == null ? newIdleTimeoutExecutor(concurrency, daemonThreadFactory(name)) : null;
+			this.workers = sharedWorkers == null ? ownWorkers : sharedWorkers;
+			this.idleWorkers = new Semaphore(concurrency);
+			this.queue = new SubmissionPublisher<>(dispatcher, queueCapacity);
+			queue.subscribe(this);
+		}
+
+		/**
+		 * Queues a task of the sweep, waiting while the queue is full.
+		 */
+		private void submit(Sweep sweep, Runnable task) {
+			sweep.enter();
+			try {
+				queue.submit(() -> {
+					try {
+						task.run();
+					} finally {
+						sweep.leave();
+					}
+				});
+			} catch (RuntimeException e) {
+				sweep.leave();
+				throw e;
+			}
+		}
+
+		private int getQueuedCount() {
+			return queue.estimateMaximumLag();
+		}
+
+		private int getActiveCount() {
+			return concurrency - idleWorkers.availablePermits();
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(Runnable task) {
+			idleWorkers.acquireUninterruptibly();
+			try {
+				workers.execute(() -> {
+					try {
+						task.run();
+					} finally {
+						idleWorkers.release();
+					}
+				});
+			} catch (RuntimeException e) {
+				idleWorkers.release();
+				// the stage is closed, the task is run here so its sweep still ends
+				task.run();
+			}
+			subscription.request(1);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			stageFailed(this, throwable);
+		}
+
+		@Override
+		public void onComplete() {
+		}
+
+		private void closeExceptionally(Throwable throwable) {
+			queue.closeExceptionally(throwable);
+		}
+
+		private void close() {
+			queue.close();
+			if (ownWorkers != null) {
+				ownWorkers.shutdownNow();
+			}
+			dispatcher.shutdownNow();
+		}
+	}
+
+	private static ExecutorService newIdleTimeoutExecutor(int threadCount, ThreadFactory threadFactory) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), threadFactory);
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private static ThreadFactory daemonThreadFactory(String name) {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,334 @@
+package com.openclassrooms.tourguide.user;
+
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+
+import java.util.AbstractList;
+import java.util.Date;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.UUID;
+
+/**
+ * Location history of one user, stored column by column in primitive arrays:
+ * 24 bytes per point instead of a VisitedLocation, a Location and a Date.
+ * VisitedLocation objects are only created when a point is read.
+ *
+ * The RetentionPolicy bounds the history: the most recent points are kept raw in a ring buffer,
+ * the older ones are downsampled into time buckets and the oldest buckets are dropped.
+ * A raw point leaves the ring buffer only once it has been checked for rewards, see {@link #setRewardedCount(int)}.
+ *
+ * Every point added since the last clear has a sequence number, starting at 0,
+ * which stays the same while the point moves along the ring buffer.
+ */
+public class LocationHistory {
+	private static final int INITIAL_CAPACITY = 8;
+
+	private final UUID      userId;
+	private RetentionPolicy retentionPolicy;
+	private final Columns   raw     = new Columns();
+	private final Columns   buckets = new Columns();
+	private int             addedCount;
+	private int             rewardedCount;
+
+	public LocationHistory(UUID userId) {
+		this(userId, RetentionPolicy.unbounded());
+	}
+
+	public LocationHistory(UUID userId, RetentionPolicy retentionPolicy) {
+		this.userId = userId;
+		this.retentionPolicy = retentionPolicy;
+	}
+
+	/**
+	 * This method is used to add a point at the end of the history.
+	 * The user id of the visited location is not stored, the points all belong to the owner of the history.
+	 * @param visitedLocation
+	 */
+	public synchronized void add(VisitedLocation visitedLocation) {
+		if (raw.count == raw.capacity()) {
+			raw.resize(grownRawCapacity());
+		}
+		raw.add(visitedLocation.location.latitude, visitedLocation.location.longitude, visitedLocation.timeVisited.getTime());
+		addedCount++;
+		evict();
+	}
+
+	/**
+	 * @return int number of points kept, downsampled ones included
+	 */
+	public synchronized int size() {
+		return buckets.count + raw.count;
+	}
+
+	public synchronized boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * This method is used to read a kept point, the oldest one having the index 0.
+	 * The downsampled points come first, then the raw ones.
+	 * @param index
+	 * @return VisitedLocation
+	 */
+	public synchronized VisitedLocation get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+		}
+		return index < buckets.count ? buckets.visitedLocation(index) : raw.visitedLocation(index - buckets.count);
+	}
+
+	public synchronized VisitedLocation getLast() {
+		return get(size() - 1);
+	}
+
+	/**
+	 * @return int number of points added since the last clear, which is also the sequence number of the next one
+	 */
+	public synchronized int getAddedCount() {
+		return addedCount;
+	}
+
+	/**
+	 * @return int sequence number of the oldest raw point, the points before it have been downsampled or dropped
+	 */
+	public synchronized int getFirstRawSequence() {
+		return addedCount - raw.count;
+	}
+
+	public synchronized double latitudeAt(int sequence) {
+		return raw.latitudes[raw.physical(rawIndex(sequence))];
+	}
+
+	public synchronized double longitudeAt(int sequence) {
+		return raw.longitudes[raw.physical(rawIndex(sequence))];
+	}
+
+	public synchronized VisitedLocation visitedLocationAt(int sequence) {
+		return raw.visitedLocation(rawIndex(sequence));
+	}
+
+	/**
+	 * This method is used to record that the points up to a sequence number have been checked for rewards,
+	 * they may leave the ring buffer from now on.
+	 * @param rewardedCount sequence number of the first point not checked yet
+	 */
+	public synchronized void setRewardedCount(int rewardedCount) {
+		this.rewardedCount = Math.min(rewardedCount, addedCount);
+		evict();
+	}
+
+	public synchronized RetentionPolicy getRetentionPolicy() {
+		return retentionPolicy;
+	}
+
+	/**
+	 * This method is used to change the retention policy, the kept points are trimmed to it right away.
+	 * @param retentionPolicy
+	 */
+	public synchronized void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+		this.retentionPolicy = retentionPolicy;
+		while (buckets.count > retentionPolicy.getBucketCapacity()) {
+			buckets.removeFirst();
+		}
+		evict();
+	}
+
+	public synchronized void clear() {
+		raw.reset();
+		buckets.reset();
+		addedCount = 0;
+		rewardedCount = 0;
+	}
+
+	/**
+	 * This method is used to copy the kept points, in the order of {@link #get(int)}, for example to save them.
+	 * @return Points
+	 */
+	public synchronized Points copyPoints() {
+		int size = size();
+		double[] latitudes = new double[size];
+		double[] longitudes = new double[size];
+		long[] times = new long[size];
+		for (int i = 0; i < size; i++) {
+			Columns columns = i < buckets.count ? buckets : raw;
+			int position = columns.physical(i < buckets.count ? i : i - buckets.count);
+			latitudes[i] = columns.latitudes[position];
+			longitudes[i] = columns.longitudes[position];
+			times[i] = columns.times[position];
+		}
+		// the downsampled points have all been checked for rewards
+		int rewardedPoints = buckets.count + Math.max(0, Math.min(rewardedCount, addedCount) - (addedCount - raw.count));
+		return new Points(latitudes, longitudes, times, rewardedPoints);
+	}
+
+	/**
+	 * This method is used to get a read-only List view of the kept points.
+	 * @return List<VisitedLocation>
+	 */
+	public List<VisitedLocation> asList() {
+		return new VisitedLocationsView();
+	}
+
+	private int rawIndex(int sequence) {
+		int index = sequence - (addedCount - raw.count);
+		if (index < 0 || index >= raw.count) {
+			throw new IndexOutOfBoundsException("Sequence " + sequence + " is not a raw point, raw points are ["
+					+ (addedCount - raw.count) + ", " + addedCount + ")");
+		}
+		return index;
+	}
+
+	/**
+	 * Moves the oldest raw points over the raw capacity to the buckets, as long as they have been checked for rewards.
+	 */
+	private void evict() {
+		int rawCapacity = retentionPolicy.getRawCapacity();
+		while (raw.count > rawCapacity && addedCount - raw.count < rewardedCount) {
+			int oldest = raw.physical(0);
+			downsample(raw.latitudes[oldest], raw.longitudes[oldest], raw.times[oldest]);
+			raw.removeFirst();
+		}
+		// give back the room taken while unchecked points were piling up
+		if (raw.count <= rawCapacity && raw.capacity() > 2 * (long) rawCapacity + INITIAL_CAPACITY) {
+			raw.resize(rawCapacity + 1);
+		}
+	}
+
+	private void downsample(double latitude, double longitude, long time) {
+		int bucketCapacity = retentionPolicy.getBucketCapacity();
+		if (bucketCapacity == 0) {
+			return;
+		}
+		long bucketMillis = retentionPolicy.getBucketDuration().toMillis();
+		if (buckets.count > 0) {
+			int last = buckets.physical(buckets.count - 1);
+			// points older than the last bucket, tracked out of order, are merged into it
+			if (Math.floorDiv(time, bucketMillis) <= Math.floorDiv(buckets.times[last], bucketMillis)) {
+				if (time >= buckets.times[last]) {
+					buckets.latitudes[last] = latitude;
+					buckets.longitudes[last] = longitude;
+					buckets.times[last] = time;
+				}
+				return;
+			}
+		}
+		if (buckets.count == bucketCapacity) {
+			buckets.removeFirst();
+		}
+		if (buckets.count == buckets.capacity()) {
+			buckets.resize((int) Math.min(bucketCapacity, Math.max(INITIAL_CAPACITY, buckets.capacity() * 3L / 2)));
+		}
+		buckets.add(latitude, longitude, time);
+	}
+
+	private int grownRawCapacity() {
+		long grown = Math.max(INITIAL_CAPACITY, raw.capacity() * 3L / 2);
+		long bound = retentionPolicy.getRawCapacity() + 1L;
+		// past the bound the buffer only grows for points not checked for rewards yet
+		if (raw.count < bound) {
+			grown = Math.min(grown, bound);
+		}
+		return (int) Math.min(grown, Integer.MAX_VALUE - 8);
+	}
+
+	/**
+	 * Copy of the kept points of a history, column by column.
+	 */
+	public static final class Points {
+		public final double[] latitudes;
+		public final double[] longitudes;
+		public final long[]   times;
+		// number of leading points already checked for rewards
+		public final int      rewardedCount;
+
+		public Points(double[] latitudes, double[] longitudes, long[] times, int rewardedCount) {
+			this.latitudes = latitudes;
+			this.longitudes = longitudes;
+			this.times = times;
+			this.rewardedCount = rewardedCount;
+		}
+
+		public int size() {
+			return times.length;
+		}
+	}
+
+	/**
+	 * Ring buffer of points, one primitive array per column.
+	 */
+	private final class Columns {
+		private double[] latitudes  = new double[0];
+		private double[] longitudes = new double[0];
+		private long[]   times      = new long[0];
+		private int      head;
+		private int      count;
+
+		private int capacity() {
+			return times.length;
+		}
+
+		private int physical(int index) {
+			int position = head + index;
+			return position < times.length ? position : position - times.length;
+		}
+
+		private void add(double latitude, double longitude, long time) {
+			int position = physical(count);
+			latitudes[position] = latitude;
+			longitudes[position] = longitude;
+			times[position] = time;
+			count++;
+		}
+
+		private void removeFirst() {
+			head = physical(1);
+			count--;
+		}
+
+		private VisitedLocation visitedLocation(int index) {
+			int position = physical(index);
+			return new VisitedLocation(userId, new Location(latitudes[position], longitudes[position]), new Date(times[position]));
+		}
+
+		/**
+		 * Copies the points to new arrays, the oldest one first.
+		 */
+		private void resize(int capacity) {
+			double[] newLatitudes = new double[capacity];
+			double[] newLongitudes = new double[capacity];
+			long[] newTimes = new long[capacity];
+			for (int i = 0; i < count; i++) {
+				int position = physical(i);
+				newLatitudes[i] = latitudes[position];
+				newLongitudes[i] = longitudes[position];
+				newTimes[i] = times[position];
+			}
+			latitudes = newLatitudes;
+			longitudes = newLongitudes;
+			times = newTimes;
+			head = 0;
+		}
+
+		private void reset() {
+			latitudes = new double[0];
+			longitudes = new double[0];
+			times = new long[0];
+			head = 0;
+			count = 0;
+		}
+	}
+
+	private class VisitedLocationsView extends AbstractList<VisitedLocation> implements RandomAccess {
+
+		@Override
+		public VisitedLocation get(int index) {
+			return LocationHistory.this.get(index);
+		}
+
+		@Override
+		public int size() {
+			return LocationHistory.this.size();
+		}
+	}
+}
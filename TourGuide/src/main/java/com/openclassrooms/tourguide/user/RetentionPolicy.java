@@ -0,0 +1,62 @@
+package com.openclassrooms.tourguide.user;
+
+import java.time.Duration;
+
+/**
+ * How much location history a user keeps: the last rawCapacity points as they were tracked,
+ * and before them at most bucketCapacity older points, one per bucketDuration.
+ * A history never holds more than rawCapacity + bucketCapacity points,
+ * except for the points not yet checked for rewards which are never dropped.
+ */
+public class RetentionPolicy {
+	private static final RetentionPolicy UNBOUNDED = new RetentionPolicy(Integer.MAX_VALUE, Duration.ofMillis(1), 0);
+
+	private final int      rawCapacity;
+	private final Duration bucketDuration;
+	private final int      bucketCapacity;
+
+	/**
+	 * @param rawCapacity number of most recent points kept as they were tracked
+	 * @param bucketDuration time span of a downsampled bucket, only its latest point is kept
+	 * @param bucketCapacity number of downsampled buckets kept, 0 to drop the older points
+	 */
+	public RetentionPolicy(int rawCapacity, Duration bucketDuration, int bucketCapacity) {
+		if (rawCapacity < 1) {
+			throw new IllegalArgumentException("rawCapacity must be positive");
+		}
+		if (bucketDuration.toMillis() < 1) {
+			throw new IllegalArgumentException("bucketDuration must be at least 1 ms");
+		}
+		if (bucketCapacity < 0) {
+			throw new IllegalArgumentException("bucketCapacity must not be negative");
+		}
+		this.rawCapacity = rawCapacity;
+		this.bucketDuration = bucketDuration;
+		this.bucketCapacity = bucketCapacity;
+	}
+
+	/**
+	 * @return RetentionPolicy keeping every point
+	 */
+	public static RetentionPolicy unbounded() {
+		return UNBOUNDED;
+	}
+
+	public int getRawCapacity() {
+		return rawCapacity;
+	}
+
+	public Duration getBucketDuration() {
+		return bucketDuration;
+	}
+
+	public int getBucketCapacity() {
+		return bucketCapacity;
+	}
+
+	@Override
+	public String toString() {
+		return this == UNBOUNDED ? "unbounded"
+				: rawCapacity + " raw points, " + bucketCapacity + " buckets of " + bucketDuration;
+	}
+}
@@ -4,9 +4,12 @@ import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
 import com.openclassrooms.tourguide.tripPricer.Provider;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class User {
 	private final UUID userId;
@@ -14,15 +17,22 @@ public class User {
 	private String phoneNumber;
 	private String emailAddress;
 	private Date                  latestLocationTimestamp;
-	private List<VisitedLocation> visitedLocations = new ArrayList<>();
-	private List<UserReward>      userRewards      = new ArrayList<>();
+	private final LocationHistory visitedLocations;
+	// read by the controllers while the rewards are calculated, and rarely written
+	private List<UserReward>      userRewards      = new CopyOnWriteArrayList<>();
+	// sum of the points of the rewards added with addUserReward
+	private final AtomicInteger   rewardPoints     = new AtomicInteger();
 	private UserPreferences userPreferences = new UserPreferences();
-	private List<Provider>  tripDeals       = new ArrayList<>();
+	private volatile List<Provider> tripDeals = new ArrayList<>();
+	// number of visited locations already checked for rewards, and the attraction catalog they were checked against
+	private int rewardsWatermark;
+	private int rewardsCatalogVersion;
 	public User(UUID userId, String userName, String phoneNumber, String emailAddress) {
 		this.userId = userId;
 		this.userName = userName;
 		this.phoneNumber = phoneNumber;
 		this.emailAddress = emailAddress;
+		this.visitedLocations = new LocationHistory(userId);
 	}
 	
 	public UUID getUserId() {
@@ -61,18 +71,90 @@ public class User {
 		visitedLocations.add(visitedLocation);
 	}
 	
+	/**
+	 * @return List<VisitedLocation> read-only view of the location history
+	 */
 	public List<VisitedLocation> getVisitedLocations() {
+		return visitedLocations.asList();
+	}
+
+	public LocationHistory getLocationHistory() {
 		return visitedLocations;
 	}
 	
 	public void clearVisitedLocations() {
 		visitedLocations.clear();
+		rewardsWatermark = 0;
 	}
-	
-	public void addUserReward(UserReward userReward) {
-		if(userRewards.stream().filter(r -> !r.attraction.attractionName.equals(userReward.attraction)).count() == 0) {
+
+	public int getRewardsWatermark() {
+		return rewardsWatermark;
+	}
+
+	public int getRewardsCatalogVersion() {
+		return rewardsCatalogVersion;
+	}
+
+	/**
+	 * This method is used to record that the first visited locations have been checked for rewards.
+	 * From then on the retention policy of the location history may downsample them.
+	 * @param rewardsWatermark sequence number of the first visited location not checked yet
+	 * @param rewardsCatalogVersion version of the attraction catalog they were checked against
+	 */
+	public void setRewardsWatermark(int rewardsWatermark, int rewardsCatalogVersion) {
+		this.rewardsWatermark = rewardsWatermark;
+		this.rewardsCatalogVersion = rewardsCatalogVersion;
+		visitedLocations.setRewardedCount(rewardsWatermark);
+	}
+	
+	/**
+	 * A user gets at most one reward per attraction.
+	 * @param userReward
+	 * @return boolean true if the reward was added, false if the user already has a reward for its attraction
+	 */
+	public boolean addUserReward(UserReward userReward) {
+		if(userRewards.stream().noneMatch(r -> r.attraction.attractionName.equals(userReward.attraction.attractionName))) {
 			userRewards.add(userReward);
+			rewardPoints.addAndGet(userReward.getRewardPoints());
+			return true;
 		}
+		return false;
+	}
+
+	/**
+	 * This method is used to set the points of a reward added while they were not known yet.
+	 * @param userReward pending reward of this user
+	 * @param rewardPoints
+	 * @return boolean true if the reward was pending
+	 */
+	public boolean completePendingReward(UserReward userReward, int rewardPoints) {
+		synchronized (userReward) {
+			if (!userReward.isPending()) {
+				return false;
+			}
+			userReward.complete(rewardPoints);
+		}
+		this.rewardPoints.addAndGet(rewardPoints);
+		return true;
+	}
+
+	/**
+	 * This method is used to add rewards already granted, for example when the user is restored from a snapshot.
+	 * Unlike addUserReward, nothing is checked.
+	 * @param userRewards
+	 */
+	public void restoreUserRewards(Collection<UserReward> userRewards) {
+		this.userRewards.addAll(userRewards);
+		rewardPoints.addAndGet(userRewards.stream().mapToInt(UserReward::getRewardPoints).sum());
+	}
+
+	/**
+	 * This method is used to get the total points of the user rewards, kept up to date by addUserReward.
+	 * Rewards added or removed through getUserRewards() directly are not counted.
+	 * @return int
+	 */
+	public int getRewardPoints() {
+		return rewardPoints.get();
 	}
 	
 	public List<UserReward> getUserRewards() {
@@ -88,7 +170,7 @@ public class User {
 	}
 
 	public VisitedLocation getLastVisitedLocation() {
-		return visitedLocations.get(visitedLocations.size() - 1);
+		return visitedLocations.getLast();
 	}
 	
 	public void setTripDeals(List<Provider> tripDeals) {
@@ -7,7 +7,9 @@ public class UserReward {
 
 	public final VisitedLocation visitedLocation;
 	public final Attraction      attraction;
-	private      int             rewardPoints;
+	private volatile int         rewardPoints;
+	// true while RewardCentral has not answered, rewardPoints is 0 until then
+	private volatile boolean     pending;
 	public UserReward(VisitedLocation visitedLocation, Attraction attraction, int rewardPoints) {
 		this.visitedLocation = visitedLocation;
 		this.attraction = attraction;
@@ -22,6 +24,27 @@ public class UserReward {
 	public void setRewardPoints(int rewardPoints) {
 		this.rewardPoints = rewardPoints;
 	}
+
+	/**
+	 * This method is used to create a reward whose points are not known yet.
+	 * @param visitedLocation
+	 * @param attraction
+	 * @return UserReward with 0 points until User.completePendingReward is called
+	 */
+	public static UserReward pending(VisitedLocation visitedLocation, Attraction attraction) {
+		UserReward userReward = new UserReward(visitedLocation, attraction);
+		userReward.pending = true;
+		return userReward;
+	}
+
+	public boolean isPending() {
+		return pending;
+	}
+
+	void complete(int rewardPoints) {
+		this.rewardPoints = rewardPoints;
+		this.pending = false;
+	}
 	
 	public int getRewardPoints() {
 		return rewardPoints;
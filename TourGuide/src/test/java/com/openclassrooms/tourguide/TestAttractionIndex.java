@@ -0,0 +1,229 @@
+package com.openclassrooms.tourguide;
+
+import com.openclassrooms.tourguide.geo.AttractionIndex;
+import com.openclassrooms.tourguide.geo.DistanceKernel;
+import com.openclassrooms.tourguide.geo.GeoMath;
+import com.openclassrooms.tourguide.geo.NearbyAttraction;
+import com.openclassrooms.tourguide.geo.NearestAttractionsCache;
+import com.openclassrooms.tourguide.geo.SpatialJoin;
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestAttractionIndex {
+
+	@Test
+	public void nearestMatchesLinearScan() {
+		Random random = new Random(42);
+		List<Attraction> attractions = randomAttractions(random, 2_000);
+		AttractionIndex index = new AttractionIndex(attractions);
+
+		for (int i = 0; i < 200; i++) {
+			Location location = randomLocation(random);
+			List<Attraction> expected = attractions.stream()
+					.sorted(Comparator.comparingDouble(a -> GeoMath.distanceMiles(a, location)))
+					.limit(5)
+					.collect(Collectors.toList());
+
+			assertEquals(expected, attractionsOf(index.nearest(location, 5)));
+		}
+	}
+
+	@Test
+	public void withinRadiusMatchesLinearScan() {
+		Random random = new Random(7);
+		List<Attraction> attractions = randomAttractions(random, 2_000);
+		AttractionIndex index = new AttractionIndex(attractions);
+
+		for (int i = 0; i < 200; i++) {
+			Location location = randomLocation(random);
+			List<Attraction> expected = attractions.stream()
+					.filter(a -> GeoMath.distanceMiles(a, location) < 300)
+					.collect(Collectors.toList());
+
+			assertEquals(expected, attractionsOf(index.withinRadius(location, 300)));
+		}
+	}
+
+	@Test
+	public void smallCatalogMatchesLinearScan() {
+		Random random = new Random(3);
+		List<Attraction> attractions = randomAttractions(random, 50);
+		AttractionIndex index = new AttractionIndex(attractions);
+
+		for (int i = 0; i < 200; i++) {
+			Location location = randomLocation(random);
+			List<Attraction> nearest = attractions.stream()
+					.sorted(Comparator.comparingDouble(a -> GeoMath.distanceMiles(a, location)))
+					.limit(5)
+					.collect(Collectors.toList());
+			List<Attraction> within = attractions.stream()
+					.filter(a -> GeoMath.distanceMiles(a, location) < 2_000)
+					.collect(Collectors.toList());
+
+			assertEquals(nearest, attractionsOf(index.nearest(location, 5)));
+			assertEquals(within, attractionsOf(index.withinRadius(location, 2_000)));
+		}
+	}
+
+	@Test
+	public void distanceKernelBoundingBoxKeepsPolesAndAntimeridian() {
+		List<Location> locations = List.of(new Location(89.5, 0), new Location(89.5, 180),
+				new Location(10, 179.9), new Location(10, -179.9), new Location(-60, -179.5), new Location(-60, 179.5));
+		DistanceKernel kernel = new DistanceKernel(locations);
+		int[] indexes = new int[locations.size()];
+		double[] distances = new double[locations.size()];
+
+		for (Location location : locations) {
+			for (double miles : new double[] { 1, 50, 100, 5_000 }) {
+				List<Location> expected = locations.stream()
+						.filter(l -> GeoMath.distanceMiles(l, location) < miles)
+						.collect(Collectors.toList());
+				int count = kernel.withinMiles(location, miles, indexes, distances);
+				List<Location> found = new ArrayList<>();
+				for (int i = 0; i < count; i++) {
+					found.add(locations.get(indexes[i]));
+				}
+				assertEquals(expected, found);
+			}
+		}
+	}
+
+	@Test
+	public void distanceOfCloseLocationsIsANumber() {
+		Location location = new Location(33.817595, -117.922008);
+
+		assertEquals(0.0, GeoMath.distanceMiles(location, new Location(33.817595, -117.922008)));
+		double distance = GeoMath.distanceMiles(location, new Location(33.817595, -117.922007));
+		assertTrue(distance > 0 && distance < 0.001);
+	}
+
+	@Test
+	public void nearestKeepsAttractionsAtTheSameDistance() {
+		List<Attraction> attractions = new ArrayList<>();
+		attractions.add(new Attraction("Far", "City", "ST", 10, 10));
+		attractions.add(new Attraction("North", "City", "ST", 1, 0));
+		attractions.add(new Attraction("South", "City", "ST", -1, 0));
+		AttractionIndex index = new AttractionIndex(attractions);
+
+		List<NearbyAttraction> nearest = index.nearest(new Location(0, 0), 2);
+
+		assertEquals(List.of(attractions.get(1), attractions.get(2)), attractionsOf(nearest));
+	}
+
+	@Test
+	public void spatialJoinMatchesWithinRadius() {
+		Random random = new Random(11);
+		List<Attraction> attractions = randomAttractions(random, 2_000);
+		AttractionIndex index = new AttractionIndex(attractions);
+		SpatialJoin<String> spatialJoin = new SpatialJoin<>(index, 150);
+		List<Location> locations = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			// half of the locations right next to an attraction, the others anywhere
+			Location location = i % 2 == 0 ? randomLocation(random) : attractions.get(random.nextInt(attractions.size()));
+			locations.add(location);
+			spatialJoin.add("owner" + (i % 7), i, location.latitude, location.longitude);
+		}
+
+		Set<String> expected = new HashSet<>();
+		for (int i = 0; i < locations.size(); i++) {
+			for (NearbyAttraction nearby : index.withinRadius(locations.get(i), 150)) {
+				expected.add(i + " " + nearby.attraction.attractionName);
+			}
+		}
+		Set<String> found = spatialJoin.join().stream()
+				.map(match -> match.sequence + " " + match.attraction.attractionName)
+				.collect(Collectors.toSet());
+
+		assertEquals(expected, found);
+		assertTrue(spatialJoin.getCellCount() <= locations.size());
+	}
+
+	@Test
+	public void nearestAttractionsCacheMatchesIndex() {
+		Random random = new Random(5);
+		List<Attraction> attractions = randomAttractions(random, 2_000);
+		AttractionIndex index = new AttractionIndex(attractions);
+		NearestAttractionsCache cache = new NearestAttractionsCache(index, 5, 1, 1_000);
+		List<Location> cities = List.of(randomLocation(random), randomLocation(random), new Location(84.9, 179.95));
+
+		for (int i = 0; i < 600; i++) {
+			// most locations around a few cities, the others anywhere
+			Location city = cities.get(random.nextInt(cities.size()));
+			Location location = i % 3 == 0 ? randomLocation(random)
+					: new Location(city.latitude + random.nextDouble() * 0.5, city.longitude + random.nextDouble() * 0.5);
+
+			assertEquals(attractionsOf(index.nearest(location, 5)), attractionsOf(cache.nearest(location)));
+		}
+		assertTrue(cache.getStats().hitCount() > 0);
+
+		AttractionIndex otherIndex = new AttractionIndex(randomAttractions(random, 100));
+		cache.setAttractionIndex(otherIndex);
+		for (Location city : cities) {
+			assertEquals(attractionsOf(otherIndex.nearest(city, 5)), attractionsOf(cache.nearest(city)));
+		}
+	}
+
+	@Test
+	public void nearestAttractionsCacheDropsCellsComputedWhileTheCatalogChanges() throws Exception {
+		Random random = new Random(7);
+		CountDownLatch computing = new CountDownLatch(1);
+		CountDownLatch catalogChanged = new CountDownLatch(1);
+		// holds the computation of a cell until the catalog has changed
+		AttractionIndex index = new AttractionIndex(randomAttractions(random, 100)) {
+			@Override
+			public List<NearbyAttraction> withinRadius(Location location, double miles) {
+				computing.countDown();
+				try {
+					catalogChanged.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.withinRadius(location, miles);
+			}
+		};
+		AttractionIndex otherIndex = new AttractionIndex(randomAttractions(random, 100));
+		NearestAttractionsCache cache = new NearestAttractionsCache(index, 5, 1, 1_000);
+		Location location = randomLocation(random);
+
+		CompletableFuture<List<NearbyAttraction>> nearest = CompletableFuture.supplyAsync(() -> cache.nearest(location));
+		assertTrue(computing.await(10, TimeUnit.SECONDS));
+		cache.setAttractionIndex(otherIndex);
+		catalogChanged.countDown();
+
+		assertEquals(attractionsOf(otherIndex.nearest(location, 5)), attractionsOf(nearest.get(10, TimeUnit.SECONDS)));
+		// only the cell of the new catalog is kept
+		assertEquals(1, cache.size());
+	}
+
+	private static List<Attraction> attractionsOf(List<NearbyAttraction> nearby) {
+		return nearby.stream().map(n -> n.attraction).collect(Collectors.toList());
+	}
+
+	private static List<Attraction> randomAttractions(Random random, int count) {
+		List<Attraction> attractions = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Location location = randomLocation(random);
+			attractions.add(new Attraction("Attraction" + i, "City", "ST", location.latitude, location.longitude));
+		}
+		return attractions;
+	}
+
+	private static Location randomLocation(Random random) {
+		return new Location(-85 + random.nextDouble() * 170, -180 + random.nextDouble() * 360);
+	}
+}
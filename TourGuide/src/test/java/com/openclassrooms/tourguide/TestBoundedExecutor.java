@@ -0,0 +1,77 @@
+package com.openclassrooms.tourguide;
+
+import com.openclassrooms.tourguide.executor.BoundedExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestBoundedExecutor {
+
+	@Test
+	public void tasksBeyondTheQueueAreHandledByTheRejectionPolicy() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		BoundedExecutor abort = new BoundedExecutor("abort", 1, 1, BoundedExecutor.RejectionPolicy.ABORT, Duration.ofSeconds(5));
+		BoundedExecutor callerRuns = new BoundedExecutor("caller-runs", 1, 1, BoundedExecutor.RejectionPolicy.CALLER_RUNS, Duration.ofSeconds(5));
+		try {
+			for (BoundedExecutor executor : new BoundedExecutor[] { abort, callerRuns }) {
+				// one task running, one queued
+				executor.execute(() -> await(release));
+				executor.execute(() -> { });
+			}
+
+			assertThrows(RejectedExecutionException.class, () -> abort.execute(() -> { }));
+			AtomicReference<Thread> runner = new AtomicReference<>();
+			callerRuns.execute(() -> runner.set(Thread.currentThread()));
+
+			assertEquals(Thread.currentThread(), runner.get());
+			assertEquals(1, abort.getRejectedCount());
+			assertEquals(1, callerRuns.getRejectedCount());
+		} finally {
+			release.countDown();
+			abort.close();
+			callerRuns.close();
+		}
+		assertEquals(2, abort.getStartedCount());
+		assertTrue(abort.getTotalWaitNanos() > 0);
+	}
+
+	@Test
+	public void closeLetsTheQueuedTasksFinish() {
+		BoundedExecutor executor = new BoundedExecutor("close", 1, 10, BoundedExecutor.RejectionPolicy.ABORT, Duration.ofSeconds(5));
+		AtomicBoolean lastTaskRan = new AtomicBoolean();
+		for (int i = 0; i < 5; i++) {
+			executor.execute(() -> sleep(20));
+		}
+		executor.execute(() -> lastTaskRan.set(true));
+
+		executor.close();
+
+		assertTrue(executor.isTerminated());
+		assertTrue(lastTaskRan.get());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.openclassrooms.tourguide;
+
+import com.openclassrooms.tourguide.executor.BoundedExecutor;
+import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.user.LocationHistory;
+import com.openclassrooms.tourguide.user.RetentionPolicy;
+import com.openclassrooms.tourguide.user.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestLocationHistory {
+
+	@Test
+	public void visitedLocationsKeepEveryPointInOrder() {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		for (int i = 0; i < 100; i++) {
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(i / 10.0, -i / 10.0), new Date(1_000L * i)));
+		}
+
+		List<VisitedLocation> visitedLocations = user.getVisitedLocations();
+
+		assertEquals(100, visitedLocations.size());
+		for (int i = 0; i < 100; i++) {
+			VisitedLocation visitedLocation = visitedLocations.get(i);
+			assertEquals(user.getUserId(), visitedLocation.userId);
+			assertEquals(i / 10.0, visitedLocation.location.latitude);
+			assertEquals(-i / 10.0, visitedLocation.location.longitude);
+			assertEquals(1_000L * i, visitedLocation.timeVisited.getTime());
+		}
+		assertEquals(9.9, user.getLastVisitedLocation().location.latitude);
+	}
+
+	@Test
+	public void visitedLocationsAreReadOnly() {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(1, 2), new Date()));
+
+		assertThrows(UnsupportedOperationException.class, () -> user.getVisitedLocations().add(user.getLastVisitedLocation()));
+
+		user.clearVisitedLocations();
+		assertTrue(user.getVisitedLocations().isEmpty());
+	}
+
+	@Test
+	public void retentionPolicyKeepsUncheckedPoints() {
+		UUID userId = UUID.randomUUID();
+		LocationHistory history = new LocationHistory(userId, new RetentionPolicy(10, Duration.ofHours(1), 0));
+		for (int i = 0; i < 25; i++) {
+			history.add(new VisitedLocation(userId, new Location(i, i), new Date(60_000L * i)));
+		}
+
+		// nothing has been checked for rewards, every point is kept
+		assertEquals(25, history.size());
+		assertEquals(0, history.getFirstRawSequence());
+
+		history.setRewardedCount(20);
+
+		assertEquals(10, history.size());
+		assertEquals(15, history.getFirstRawSequence());
+		assertEquals(15.0, history.latitudeAt(15));
+		assertEquals(24.0, history.getLast().location.latitude);
+		assertThrows(IndexOutOfBoundsException.class, () -> history.latitudeAt(14));
+	}
+
+	@Test
+	public void retentionPolicyDownsamplesOlderPoints() {
+		UUID userId = UUID.randomUUID();
+		LocationHistory history = new LocationHistory(userId, new RetentionPolicy(12, Duration.ofHours(1), 24));
+		// three days every 5 minutes, each point checked for rewards as it is tracked
+		for (int i = 0; i < 3 * 24 * 12; i++) {
+			history.add(new VisitedLocation(userId, new Location(0, i), new Date(300_000L * i)));
+			history.setRewardedCount(i + 1);
+		}
+
+		assertEquals(12 + 24, history.size());
+		List<VisitedLocation> visitedLocations = history.asList();
+		// one point per hour, the latest of each hour, then the last hour as tracked
+		assertEquals(300_000L * (47 * 12 + 11), visitedLocations.get(0).timeVisited.getTime());
+		assertEquals(300_000L * (70 * 12 + 11), visitedLocations.get(23).timeVisited.getTime());
+		assertEquals(300_000L * 71 * 12, visitedLocations.get(24).timeVisited.getTime());
+		assertEquals(3 * 24 * 12 - 1, history.getLast().location.longitude);
+	}
+
+	@Test
+	public void rewardsAreCheckedBeforePointsAreDropped() {
+		GpsUtil gpsUtil = new GpsUtil();
+		try (BoundedExecutor lookupExecutor = new BoundedExecutor("reward-points", 10, 10,
+				BoundedExecutor.RejectionPolicy.ABORT, Duration.ZERO)) {
+			RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+			Attraction attraction = gpsUtil.getAttractions().get(0);
+			User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+			user.getLocationHistory().setRetentionPolicy(new RetentionPolicy(1, Duration.ofHours(1), 0));
+
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(0, 0), new Date()));
+			rewardsService.calculateRewards(user);
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(0, 0), new Date()));
+
+			assertEquals(1, user.getUserRewards().size());
+			assertEquals(1, user.getVisitedLocations().size());
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.openclassrooms.tourguide;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.tourguide.export.ResponseSerializers;
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.models.ClosestAttractionsDTO;
+import com.openclassrooms.tourguide.user.UserReward;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class TestResponseSerializers {
+	private final Attraction attraction = new Attraction("Disneyland", "Anaheim", "CA", 33.817595, -117.922008);
+
+	@Test
+	public void responsesAreWrittenAsByTheDefaultSerializers() throws IOException {
+		UUID userId = UUID.randomUUID();
+		List<Object> responses = List.of(
+				List.of(new UserReward(new VisitedLocation(userId, attraction, new Date(1_000L)), attraction, 42),
+						new UserReward(new VisitedLocation(userId, new Location(33.8, -117.9), new Date(2_000L)), attraction, 7),
+						UserReward.pending(new VisitedLocation(userId, attraction, new Date(3_000L)), attraction)),
+				List.of(new ClosestAttractionsDTO("Disneyland", -117.922008, 33.817595, -117.9, 33.8, 1.2345, 300, false),
+						new ClosestAttractionsDTO("Disneyland", -117.922008, 33.817595, -117.9, 33.8, 1.2345, 0, true)));
+		ObjectMapper defaultMapper = Jackson2ObjectMapperBuilder.json().build();
+		ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().modules(ResponseSerializers.module()).build();
+
+		for (Object response : responses) {
+			assertEquals(defaultMapper.writeValueAsString(response), mapper.writeValueAsString(response));
+		}
+	}
+
+	@Test
+	public void compactResponsesLeaveOutTheRepeatedLocations() throws IOException {
+		UUID userId = UUID.randomUUID();
+		MappingJacksonValue rewards = new MappingJacksonValue(List.of(
+				new UserReward(new VisitedLocation(userId, attraction, new Date(1_000L)), attraction, 42),
+				UserReward.pending(new VisitedLocation(userId, attraction, new Date(2_000L)), attraction)));
+		rewards.setSerializationView(ResponseSerializers.Compact.class);
+		MappingJacksonValue nearbyAttractions = new MappingJacksonValue(List.of(
+				new ClosestAttractionsDTO("Disneyland", -117.922008, 33.817595, -117.9, 33.8, 1.2345, 300, false)));
+		nearbyAttractions.setSerializationView(ResponseSerializers.Compact.class);
+		ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().modules(ResponseSerializers.module()).build();
+
+		JsonNode rewardsJson = mapper.readTree(write(mapper, rewards));
+		JsonNode nearbyAttractionsJson = mapper.readTree(write(mapper, nearbyAttractions));
+
+		JsonNode reward = rewardsJson.get(0);
+		assertEquals(4, reward.size());
+		assertEquals(attraction.attractionId.toString(), reward.get("attractionId").asText());
+		assertEquals("Disneyland", reward.get("attractionName").asText());
+		assertEquals(42, reward.get("rewardPoints").asInt());
+		assertEquals(mapper.writeValueAsString(new Date(1_000L)), reward.get("timeVisited").toString());
+		assertEquals(true, rewardsJson.get(1).get("pending").asBoolean());
+		JsonNode nearbyAttraction = nearbyAttractionsJson.get(0);
+		assertFalse(nearbyAttraction.has("userLongitude"));
+		assertFalse(nearbyAttraction.has("userLatitude"));
+		assertEquals(300, nearbyAttraction.get("rewardPoints").asInt());
+		assertEquals(1.2345, nearbyAttraction.get("distance").asDouble());
+		assertFalse(nearbyAttraction.has("pending"));
+	}
+
+	private static String write(ObjectMapper mapper, MappingJacksonValue response) throws IOException {
+		MockHttpOutputMessage message = new MockHttpOutputMessage();
+		new MappingJackson2HttpMessageConverter(mapper).write(response, MediaType.APPLICATION_JSON, message);
+		return message.getBodyAsString();
+	}
+}
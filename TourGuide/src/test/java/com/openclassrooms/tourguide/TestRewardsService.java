@@ -1,29 +1,60 @@
 package com.openclassrooms.tourguide;
 
+import com.openclassrooms.tourguide.executor.BoundedExecutor;
 import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
 import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
 import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.models.ClosestAttractionsDTO;
+import com.openclassrooms.tourguide.models.LeaderboardEntryDTO;
+import com.openclassrooms.tourguide.rewardCentral.ResilientRewardCentral;
 import com.openclassrooms.tourguide.rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.rewardCentral.RewardPointsCache;
+import com.openclassrooms.tourguide.service.RewardsBatchReport;
 import com.openclassrooms.tourguide.service.RewardsService;
 import com.openclassrooms.tourguide.service.TourGuideService;
 import com.openclassrooms.tourguide.user.User;
 import com.openclassrooms.tourguide.user.UserReward;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestRewardsService {
+	// runs the RewardCentral calls of the rewards services of a test
+	private final BoundedExecutor lookupExecutor = new BoundedExecutor("reward-points", 100, 10_000,
+			BoundedExecutor.RejectionPolicy.ABORT, Duration.ZERO);
+
+	@AfterEach
+	public void closeLookupExecutor() {
+		lookupExecutor.close();
+	}
 
 	@Test
 	public void userGetRewards() {
 		GpsUtil gpsUtil = new GpsUtil();
-		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
 
 		InternalTestHelper.setInternalUserNumber(0);
 		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
@@ -37,10 +68,30 @@ public class TestRewardsService {
 		assertTrue(userRewards.size() == 1);
 	}
 
+	@Test
+	public void calculateRewardsOnlyChecksNewLocations() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+		rewardsService.calculateRewards(user);
+		assertEquals(1, user.getUserRewards().size());
+		assertEquals(1, user.getRewardsWatermark());
+
+		user.getUserRewards().clear();
+		rewardsService.calculateRewards(user);
+		assertEquals(0, user.getUserRewards().size());
+
+		rewardsService.recalculateRewards(user);
+		assertEquals(1, user.getUserRewards().size());
+	}
+
 	@Test
 	public void isWithinAttractionProximity() {
 		GpsUtil gpsUtil = new GpsUtil();
-		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
 		Attraction attraction = gpsUtil.getAttractions().get(0);
 		assertTrue(rewardsService.isWithinAttractionProximity(attraction, attraction));
 	}
@@ -49,7 +100,7 @@ public class TestRewardsService {
 	@Test
 	public void nearAllAttractions() {
 		GpsUtil gpsUtil = new GpsUtil();
-		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
 		rewardsService.setProximityBuffer(Integer.MAX_VALUE);
 
 		InternalTestHelper.setInternalUserNumber(1);
@@ -60,7 +111,318 @@ public class TestRewardsService {
 		List<UserReward> userRewards = tourGuideService.getUserRewards(user);
 		tourGuideService.tracker.stopTracking();
 
-		assertEquals(1, userRewards.size());
+		assertEquals(gpsUtil.getAttractions().size(), userRewards.size());
+		assertEquals(userRewards.stream().mapToInt(UserReward::getRewardPoints).sum(), user.getRewardPoints());
+	}
+
+	@Test
+	public void rewardPointsCacheCollapsesConcurrentMisses() {
+		AtomicInteger calls = new AtomicInteger();
+		RewardCentral rewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				calls.incrementAndGet();
+				try {
+					TimeUnit.MILLISECONDS.sleep(200);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return 42;
+			}
+		};
+		try (BoundedExecutor loadExecutor = new BoundedExecutor("reward-points", 10, 10, BoundedExecutor.RejectionPolicy.ABORT, Duration.ZERO)) {
+			RewardPointsCache rewardPointsCache = new RewardPointsCache(rewardCentral, loadExecutor);
+			UUID attractionId = UUID.randomUUID();
+			UUID userId = UUID.randomUUID();
+
+			List<CompletableFuture<Integer>> lookups = IntStream.range(0, 10)
+					.mapToObj(i -> rewardPointsCache.getRewardPointsAsync(attractionId, userId))
+					.collect(Collectors.toList());
+			lookups.forEach(lookup -> assertEquals(42, lookup.join()));
+			assertEquals(42, rewardPointsCache.getRewardPoints(attractionId, userId));
+
+			assertEquals(1, calls.get());
+			assertEquals(1, rewardPointsCache.getStats().loadCount());
+			assertTrue(rewardPointsCache.getStats().hitCount() > 0);
+		}
+	}
+
+	@Test
+	public void leaderboardRanksUsersByRewardPoints() {
+		GpsUtil gpsUtil = new GpsUtil();
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		Map<String, Integer> points = Map.of("jon", 100, "ann", 300, "bob", 200);
+		RewardCentral rewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				return userId.getMostSignificantBits() == 0 ? (int) userId.getLeastSignificantBits() : 0;
+			}
+		};
+		RewardsService rewardsService = new RewardsService(gpsUtil, rewardCentral, lookupExecutor);
+
+		for (Map.Entry<String, Integer> entry : points.entrySet()) {
+			User user = new User(new UUID(0, entry.getValue()), entry.getKey(), "000", entry.getKey() + "@tourGuide.com");
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+			rewardsService.calculateRewards(user);
+			assertEquals(entry.getValue(), user.getRewardPoints());
+		}
+
+		List<LeaderboardEntryDTO> top = rewardsService.getLeaderboard().top(2);
+
+		assertEquals(2, top.size());
+		assertEquals("ann", top.get(0).getUserName());
+		assertEquals(300, top.get(0).getRewardPoints());
+		assertEquals(1, top.get(0).getRank());
+		assertEquals("bob", top.get(1).getUserName());
+		assertEquals(3, rewardsService.getLeaderboard().top(10).size());
+	}
+
+	@Test
+	public void batchRewardsMatchCalculatingEveryUser() {
+		GpsUtil gpsUtil = new GpsUtil();
+		List<Attraction> attractions = gpsUtil.getAttractions();
+		RewardCentral rewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				// the attraction ids differ between the catalogs of the two services
+				return Math.floorMod(userId.hashCode(), 1000);
+			}
+		};
+		RewardsService batchRewardsService = new RewardsService(gpsUtil, rewardCentral, lookupExecutor);
+		RewardsService rewardsService = new RewardsService(gpsUtil, rewardCentral, lookupExecutor);
+		Random random = new Random(5);
+		List<User> batchUsers = new ArrayList<>();
+		List<User> users = new ArrayList<>();
+		for (int i = 0; i < 2_000; i++) {
+			UUID userId = UUID.randomUUID();
+			User batchUser = new User(userId, "user" + i, "000", "user" + i + "@tourGuide.com");
+			User user = new User(userId, "user" + i, "000", "user" + i + "@tourGuide.com");
+			for (int j = 0; j < 5; j++) {
+				// close to an attraction or anywhere
+				Attraction attraction = attractions.get(random.nextInt(attractions.size()));
+				Location location = random.nextBoolean()
+						? new Location(attraction.latitude + random.nextDouble() * 0.2 - 0.1, attraction.longitude + random.nextDouble() * 0.2 - 0.1)
+						: new Location(-85 + random.nextDouble() * 170, -180 + random.nextDouble() * 360);
+				Date time = new Date(j);
+				batchUser.addToVisitedLocations(new VisitedLocation(userId, location, time));
+				user.addToVisitedLocations(new VisitedLocation(userId, location, time));
+			}
+			batchUsers.add(batchUser);
+			users.add(user);
+		}
+		batchUsers.add(null);
+
+		RewardsBatchReport report = batchRewardsService.calculateRewardsInBatch(batchUsers);
+		users.forEach(rewardsService::calculateRewards);
+
+		assertEquals(users.size(), report.getUsers().size());
+		assertEquals(0, report.getFailureCount());
+		assertEquals(users.size() * 5, report.getLocationCount());
+		for (int i = 0; i < users.size(); i++) {
+			User batchUser = report.getUsers().get(i);
+			assertEquals(rewardsOf(users.get(i)), rewardsOf(batchUser));
+			assertEquals(users.get(i).getRewardPoints(), batchUser.getRewardPoints());
+			assertEquals(5, batchUser.getRewardsWatermark());
+		}
+		assertEquals(users.stream().mapToInt(u -> u.getUserRewards().size()).sum(), report.getRewardCount());
+
+		// nothing left to check
+		assertEquals(0, batchRewardsService.calculateRewardsInBatch(batchUsers).getLocationCount());
+	}
+
+	private static List<String> rewardsOf(User user) {
+		return user.getUserRewards().stream()
+				.map(r -> r.attraction.attractionName + " " + r.visitedLocation.timeVisited.getTime() + " " + r.getRewardPoints())
+				.collect(Collectors.toList());
+	}
+
+	@Test
+	public void slowRewardCentralCallsAreHedged() {
+		AtomicBoolean slowNext = new AtomicBoolean();
+		RewardCentral rewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				if (slowNext.getAndSet(false)) {
+					sleep(2000);
+				}
+				return 42;
+			}
+		};
+		try (BoundedExecutor requestExecutor = new BoundedExecutor("reward-central", 10, 10, BoundedExecutor.RejectionPolicy.ABORT, Duration.ZERO)) {
+			ResilientRewardCentral resilientRewardCentral = new ResilientRewardCentral(rewardCentral, requestExecutor,
+					Duration.ofSeconds(5), 0.9, Duration.ofMillis(10), 10);
+			// enough fast calls for the hedge delay to follow their latency
+			for (int i = 0; i < 128; i++) {
+				resilientRewardCentral.getAttractionRewardPoints(UUID.randomUUID(), UUID.randomUUID());
+			}
+			assertEquals(0, resilientRewardCentral.getHedgeCount());
+
+			slowNext.set(true);
+			long start = System.nanoTime();
+			assertEquals(42, resilientRewardCentral.getAttractionRewardPoints(UUID.randomUUID(), UUID.randomUUID()));
+
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+			assertEquals(1, resilientRewardCentral.getHedgeCount());
+			assertEquals(1, resilientRewardCentral.getHedgeWinCount());
+		}
+	}
+
+	@Test
+	public void aFailedRequestLeavesItsHedgeToAnswer() {
+		// 2: the next request fails after 200 ms, 1: the one after answers after 400 ms
+		AtomicInteger slowNext = new AtomicInteger();
+		RewardCentral rewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				int slow = slowNext.getAndUpdate(count -> Math.max(0, count - 1));
+				if (slow == 2) {
+					sleep(200);
+					throw new IllegalStateException("RewardCentral failed");
+				}
+				if (slow == 1) {
+					sleep(400);
+				}
+				return 42;
+			}
+		};
+		try (BoundedExecutor requestExecutor = new BoundedExecutor("reward-central", 10, 10, BoundedExecutor.RejectionPolicy.ABORT, Duration.ZERO)) {
+			ResilientRewardCentral resilientRewardCentral = new ResilientRewardCentral(rewardCentral, requestExecutor,
+					Duration.ofSeconds(5), 0.9, Duration.ofMillis(10), 10);
+			for (int i = 0; i < 128; i++) {
+				resilientRewardCentral.getAttractionRewardPoints(UUID.randomUUID(), UUID.randomUUID());
+			}
+
+			slowNext.set(2);
+			// the first request fails before its hedge answers
+			assertEquals(42, resilientRewardCentral.getAttractionRewardPoints(UUID.randomUUID(), UUID.randomUUID()));
+
+			assertEquals(1, resilientRewardCentral.getHedgeWinCount());
+		}
+	}
+
+	@Test
+	public void rewardCentralCallsBeyondTheBulkheadAreRejected() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		RewardCentral rewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return 42;
+			}
+		};
+		try (BoundedExecutor requestExecutor = new BoundedExecutor("reward-central", 10, 10, BoundedExecutor.RejectionPolicy.ABORT, Duration.ZERO)) {
+			ResilientRewardCentral resilientRewardCentral = new ResilientRewardCentral(rewardCentral, requestExecutor,
+					Duration.ofSeconds(5), 0.9, Duration.ofSeconds(5), 1);
+
+			CompletableFuture<Integer> running = CompletableFuture.supplyAsync(
+					() -> resilientRewardCentral.getAttractionRewardPoints(UUID.randomUUID(), UUID.randomUUID()));
+			while (resilientRewardCentral.getRunningRequestCount() == 0) {
+				TimeUnit.MILLISECONDS.sleep(10);
+			}
+			assertThrows(RejectedExecutionException.class,
+					() -> resilientRewardCentral.getAttractionRewardPoints(UUID.randomUUID(), UUID.randomUUID()));
+			release.countDown();
+
+			assertEquals(42, running.get(5, TimeUnit.SECONDS));
+			assertEquals(1, resilientRewardCentral.getRejectionCount());
+		}
+	}
+
+	@Test
+	public void rewardPointsOverTheBudgetArePendingUntilRewardCentralAnswers() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		RewardCentral rewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				sleep(300);
+				return 42;
+			}
+		};
+		RewardsService rewardsService = new RewardsService(gpsUtil, rewardCentral, lookupExecutor);
+		rewardsService.setRewardPointsBudget(Duration.ofMillis(50));
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+		rewardsService.calculateRewards(user);
+
+		UserReward userReward = user.getUserRewards().get(0);
+		assertTrue(userReward.isPending());
+		assertEquals(0, user.getRewardPoints());
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (userReward.isPending() && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		assertFalse(userReward.isPending());
+		assertEquals(42, userReward.getRewardPoints());
+		assertEquals(42, user.getRewardPoints());
+		assertEquals(42, rewardsService.getLeaderboard().top(1).get(0).getRewardPoints());
+	}
+
+	@Test
+	public void rejectedRewardPointsLookupsArePending() {
+		GpsUtil gpsUtil = new GpsUtil();
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		Executor saturated = runnable -> {
+			throw new RejectedExecutionException("saturated");
+		};
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardPointsCache(new RewardCentral(), saturated));
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+		rewardsService.calculateRewards(user);
+
+		assertEquals(1, user.getUserRewards().size());
+		assertTrue(user.getUserRewards().get(0).isPending());
+		assertEquals(0, user.getRewardPoints());
+		// without a reward points budget too
+		List<ClosestAttractionsDTO> nearbyAttractions = rewardsService.getTopFiveNearestAttraction(user, attraction);
+		assertEquals(5, nearbyAttractions.size());
+		for (ClosestAttractionsDTO nearbyAttraction : nearbyAttractions) {
+			assertTrue(nearbyAttraction.isPending());
+			assertEquals(0, nearbyAttraction.getRewardPoints());
+		}
+	}
+
+	@Test
+	public void nearbyAttractionsDoNotWaitForRewardPointsOverTheBudget() {
+		GpsUtil gpsUtil = new GpsUtil();
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		RewardCentral rewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				sleep(300);
+				return 42;
+			}
+		};
+		RewardsService rewardsService = new RewardsService(gpsUtil, rewardCentral, lookupExecutor);
+		rewardsService.setRewardPointsBudget(Duration.ofMillis(50));
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+		long start = System.nanoTime();
+		List<ClosestAttractionsDTO> nearbyAttractions = rewardsService.getTopFiveNearestAttraction(user, attraction);
+
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 250);
+		assertEquals(5, nearbyAttractions.size());
+		for (ClosestAttractionsDTO nearbyAttraction : nearbyAttractions) {
+			assertTrue(nearbyAttraction.isPending());
+			assertEquals(0, nearbyAttraction.getRewardPoints());
+		}
+		// the lookups went on, the next request finds their points in the cache
+		assertEquals(42, rewardsService.getRewardPointsCache().getRewardPoints(attraction.attractionId, user.getUserId()));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
 }
@@ -1,28 +1,71 @@
 package com.openclassrooms.tourguide;
 
+import com.openclassrooms.tourguide.executor.BoundedExecutor;
 import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
 import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.helper.InternalUserGenerator;
+import com.openclassrooms.tourguide.metrics.InstrumentedGpsUtil;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
 import com.openclassrooms.tourguide.models.ClosestAttractionsDTO;
+import com.openclassrooms.tourguide.persistence.UserSnapshotStore;
+import com.openclassrooms.tourguide.persistence.WriteAheadLog;
+import com.openclassrooms.tourguide.repository.InMemoryUserRepository;
 import com.openclassrooms.tourguide.rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.rewardCentral.RewardPointsCache;
 import com.openclassrooms.tourguide.service.RewardsService;
 import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.service.UsersUnavailableException;
+import com.openclassrooms.tourguide.tracker.SweepReport;
+import com.openclassrooms.tourguide.tracker.TrackingEngine;
+import com.openclassrooms.tourguide.tracker.TrackingPipeline;
 import com.openclassrooms.tourguide.tripPricer.Provider;
+import com.openclassrooms.tourguide.tripPricer.TripPricer;
+import com.openclassrooms.tourguide.user.RetentionPolicy;
 import com.openclassrooms.tourguide.user.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestTourGuideService {
+	// runs the RewardCentral calls of the rewards services of a test
+	private final BoundedExecutor lookupExecutor = new BoundedExecutor("reward-points", 100, 10_000,
+			BoundedExecutor.RejectionPolicy.ABORT, Duration.ZERO);
+
+	@AfterEach
+	public void closeLookupExecutor() {
+		lookupExecutor.close();
+	}
 
 	@Test
 	public void getUserLocation() {
 		GpsUtil gpsUtil = new GpsUtil();
-		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
 		InternalTestHelper.setInternalUserNumber(0);
 		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
 
@@ -35,7 +78,7 @@ public class TestTourGuideService {
 	@Test
 	public void addUser() {
 		GpsUtil gpsUtil = new GpsUtil();
-		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
 		InternalTestHelper.setInternalUserNumber(0);
 		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
 
@@ -57,7 +100,7 @@ public class TestTourGuideService {
 	@Test
 	public void getAllUsers() {
 		GpsUtil gpsUtil = new GpsUtil();
-		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
 		InternalTestHelper.setInternalUserNumber(0);
 		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
 
@@ -78,7 +121,7 @@ public class TestTourGuideService {
 	@Test
 	public void trackUser() {
 		GpsUtil gpsUtil = new GpsUtil();
-		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
 		InternalTestHelper.setInternalUserNumber(0);
 		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
 
@@ -90,10 +133,173 @@ public class TestTourGuideService {
 		assertEquals(user.getUserId(), visitedLocation.userId);
 	}
 
+	@Test
+	public void trackAllUsersLocation() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+		InternalTestHelper.setInternalUserNumber(10);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+
+		List<User> allUsers = tourGuideService.getAllUsers();
+		Map<UUID, VisitedLocation> locations = tourGuideService.trackAllUsersLocation(allUsers);
+
+		tourGuideService.tracker.stopTracking();
+
+		assertEquals(allUsers.size(), locations.size());
+		for (User user : allUsers) {
+			assertEquals(user.getUserId(), locations.get(user.getUserId()).userId);
+		}
+	}
+
+	@Test
+	public void trackUsersLocationRunsUsersThroughThePipeline() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+		InternalTestHelper.setInternalUserNumber(0);
+		TrackingEngine trackingEngine = new TrackingEngine();
+		// one worker and one queued user per stage, every hand-off waits for the stage after it
+		TrackingPipeline trackingPipeline = new TrackingPipeline(trackingEngine, 1, 1, true, 1, 1);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, new TripPricer(),
+				trackingEngine, trackingPipeline, new InMemoryUserRepository(), RetentionPolicy.unbounded(),
+				new InternalUserGenerator(), UserSnapshotStore.disabled(), WriteAheadLog.disabled());
+		tourGuideService.tracker.stopTracking();
+		List<User> users = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			users.add(new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com"));
+		}
+
+		SweepReport report = tourGuideService.trackUsersLocation(users);
+		trackingPipeline.close();
+
+		assertEquals(20, report.getUserCount());
+		assertEquals(0, report.getFailureCount());
+		for (User user : users) {
+			assertEquals(1, user.getVisitedLocations().size());
+			assertEquals(1, user.getRewardsWatermark());
+			assertEquals(5, user.getTripDeals().size());
+		}
+	}
+
+	@Test
+	public void slowRewardsDoNotHoldTheGpsStageBeyondTheirQueue() {
+		// a single GPS task at a time
+		TrackingEngine trackingEngine = new TrackingEngine(TrackingEngine.ExecutorMode.FIXED_THREAD_POOL, 1, 10);
+		TrackingPipeline trackingPipeline = new TrackingPipeline(trackingEngine, 2, 4, false, 1, 1);
+		List<Integer> users = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			users.add(i);
+		}
+		AtomicInteger located = new AtomicInteger();
+		AtomicInteger rewarded = new AtomicInteger();
+		AtomicInteger maxWaiting = new AtomicInteger();
+
+		SweepReport report = trackingPipeline.sweep(users, 10,
+				(batch, next) -> batch.forEach(user -> {
+					located.incrementAndGet();
+					next.accept(user);
+				}),
+				user -> {
+					maxWaiting.accumulateAndGet(located.get() - rewarded.get(), Math::max);
+					if (user % 10 == 0) {
+						throw new IllegalStateException("RewardCentral is down");
+					}
+					sleep(5);
+					rewarded.incrementAndGet();
+				},
+				user -> {
+				});
+		trackingPipeline.close();
+
+		assertEquals(40, report.getUserCount());
+		assertEquals(4, report.getFailureCount());
+		assertEquals(36, rewarded.get());
+		trackingEngine.close();
+		// located but not rewarded: queued, running, held by the dispatcher, blocked in the GPS task, or failed
+		assertTrue(maxWaiting.get() <= 4 + 2 + 1 + 1 + 4, "waiting " + maxWaiting.get());
+	}
+
+	@Test
+	public void aFailedStageFailsTheSweepInsteadOfHangingIt() {
+		TrackingEngine trackingEngine = new TrackingEngine(TrackingEngine.ExecutorMode.FIXED_THREAD_POOL, 1, 10);
+		// a pricing executor which rejects every task, so the stage runs them on its dispatcher
+		Executor rejecting = task -> {
+			throw new RejectedExecutionException("pricing executor is shut down");
+		};
+		TrackingPipeline trackingPipeline = new TrackingPipeline(trackingEngine, 1, 4, true, rejecting, 1, 4);
+		List<Integer> users = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			users.add(i);
+		}
+
+		// an Error thrown on the dispatcher cancels the subscription of the pricing stage
+		CompletableFuture<SweepReport> sweep = CompletableFuture.supplyAsync(() -> trackingPipeline.sweep(users, 5,
+				(batch, next) -> batch.forEach(next),
+				user -> {
+				},
+				user -> {
+					throw new AssertionError("pricing stage failed");
+				}));
+
+		// a sweep left waiting for the users of the pricing stage would time out
+		ExecutionException failure = assertThrows(ExecutionException.class, () -> sweep.get(10, TimeUnit.SECONDS));
+		assertTrue(failure.getCause() instanceof IllegalStateException);
+		assertThrows(IllegalStateException.class, () -> trackingPipeline.sweep(users, 5,
+				(batch, next) -> batch.forEach(next), user -> {
+				}, user -> {
+				}));
+		trackingPipeline.close();
+		trackingEngine.close();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void getUserLocationsInBatches() {
+		GpsUtil gpsUtil = new GpsUtil();
+		List<UUID> userIds = new ArrayList<>();
+		for (int i = 0; i < GpsUtil.MAX_BATCH_SIZE + 10; i++) {
+			userIds.add(UUID.randomUUID());
+		}
+
+		long start = System.nanoTime();
+		Map<UUID, VisitedLocation> locations = gpsUtil.getUserLocations(userIds);
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertEquals(userIds, new ArrayList<>(locations.keySet()));
+		assertEquals(userIds.get(0), locations.get(userIds.get(0)).userId);
+		// two round trips, a lookup one user after another would take at least 30 ms per user
+		assertTrue(elapsedMillis < userIds.size() * 30L, "took " + elapsedMillis + " ms");
+	}
+
+	@Test
+	public void trackUserRecordsMetrics() {
+		TourGuideMetrics metrics = new TourGuideMetrics(new SimpleMeterRegistry());
+		GpsUtil gpsUtil = new InstrumentedGpsUtil(new GpsUtil(), metrics);
+		try (BoundedExecutor loadExecutor = new BoundedExecutor("reward-points", 10, 10, BoundedExecutor.RejectionPolicy.ABORT, Duration.ZERO)) {
+			RewardsService rewardsService = new RewardsService(gpsUtil, new RewardPointsCache(new RewardCentral(), loadExecutor), metrics);
+			InternalTestHelper.setInternalUserNumber(0);
+			TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+
+			User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+			tourGuideService.trackUserLocation(user);
+
+			tourGuideService.tracker.stopTracking();
+
+			assertEquals(1, metrics.gpsUserLocation().count());
+			assertEquals(1, metrics.calculateRewards().count());
+		}
+	}
+
 	@Test
 	public void getNearbyAttractions() {
 		GpsUtil gpsUtil = new GpsUtil();
-		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
 		InternalTestHelper.setInternalUserNumber(0);
 		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
 
@@ -110,7 +316,7 @@ public class TestTourGuideService {
 	@Test
 	public void getTripDeals() {
 		GpsUtil gpsUtil = new GpsUtil();
-		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
 		InternalTestHelper.setInternalUserNumber(0);
 		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
 
@@ -124,4 +330,224 @@ public class TestTourGuideService {
 		assertEquals(5, providers.size());
 	}
 
+	@Test
+	public void getNearbyAttractionsAsync() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+		List<ClosestAttractionsDTO> attractions = tourGuideService.getNearByAttractionsAsync(user, ForkJoinPool.commonPool()).join();
+
+		tourGuideService.tracker.stopTracking();
+
+		assertEquals(5, attractions.size());
+		assertEquals(1, user.getVisitedLocations().size());
+	}
+
+	@Test
+	public void asyncMethodsFailWhenTheExecutorIsSaturated() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		Executor saturated = task -> {
+			throw new RejectedExecutionException();
+		};
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		CompletableFuture<List<Provider>> tripDeals = tourGuideService.getTripDealsAsync(user, saturated);
+		CompletableFuture<VisitedLocation> location = tourGuideService.getUserLocationAsync(user, saturated);
+		VisitedLocation visitedLocation = tourGuideService.trackUserLocation(user);
+
+		tourGuideService.tracker.stopTracking();
+
+		CompletionException exception = assertThrows(CompletionException.class, tripDeals::join);
+		assertTrue(exception.getCause() instanceof RejectedExecutionException);
+		assertTrue(location.isCompletedExceptionally());
+		// a known location is answered without using the executor
+		assertEquals(visitedLocation.timeVisited, tourGuideService.getUserLocationAsync(user, saturated).join().timeVisited);
+	}
+
+	@Test
+	public void asyncMethodsDoNotRunTasksStartedAfterTheTimeout() {
+		AtomicInteger pricings = new AtomicInteger();
+		TripPricer tripPricer = new TripPricer() {
+			@Override
+			public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay, int rewardsPoints) {
+				pricings.incrementAndGet();
+				return super.getPrice(apiKey, attractionId, adults, children, nightsStay, rewardsPoints);
+			}
+		};
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+		InternalTestHelper.setInternalUserNumber(0);
+		TrackingEngine trackingEngine = new TrackingEngine();
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, tripPricer,
+				trackingEngine, new TrackingPipeline(trackingEngine), new InMemoryUserRepository(), RetentionPolicy.unbounded(),
+				new InternalUserGenerator(), UserSnapshotStore.disabled(), WriteAheadLog.disabled());
+		tourGuideService.tracker.stopTracking();
+		// holds the tasks until the timeout has elapsed
+		List<Runnable> queued = new ArrayList<>();
+		Executor held = queued::add;
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		CompletableFuture<List<Provider>> tripDeals = tourGuideService.getTripDealsAsync(user, held, Duration.ofMillis(50));
+		CompletableFuture<VisitedLocation> location = tourGuideService.getUserLocationAsync(user, held, Duration.ofMillis(50));
+		CompletionException exception = assertThrows(CompletionException.class, tripDeals::join);
+		assertThrows(CompletionException.class, location::join);
+		queued.forEach(Runnable::run);
+
+		assertTrue(exception.getCause() instanceof TimeoutException);
+		assertEquals(2, queued.size());
+		assertEquals(0, pricings.get());
+		assertTrue(user.getVisitedLocations().isEmpty());
+	}
+
+	@Test
+	public void concurrentTrackingsOfAUserShareOneGpsRequest() throws Exception {
+		AtomicInteger requests = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		GpsUtil gpsUtil = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				requests.incrementAndGet();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.getUserLocation(userId);
+			}
+		};
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		List<Future<VisitedLocation>> trackings = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			trackings.add(executorService.submit(() -> tourGuideService.trackUserLocation(user)));
+		}
+		// the first tracking holds the GPS request until every caller has joined it
+		while (requests.get() == 0) {
+			Thread.sleep(1);
+		}
+		Thread.sleep(100);
+		release.countDown();
+		List<VisitedLocation> visitedLocations = new ArrayList<>();
+		for (Future<VisitedLocation> tracking : trackings) {
+			visitedLocations.add(tracking.get());
+		}
+		executorService.shutdown();
+		tourGuideService.tracker.stopTracking();
+
+		assertEquals(1, requests.get());
+		assertEquals(1, user.getVisitedLocations().size());
+		visitedLocations.forEach(visitedLocation -> assertEquals(visitedLocations.get(0), visitedLocation));
+	}
+
+	@Test
+	public void usersMissingFromABatchAreNotLocated() {
+		User missing = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		User located = new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com");
+		GpsUtil gpsUtil = new GpsUtil() {
+			@Override
+			public Map<UUID, VisitedLocation> getUserLocations(Collection<UUID> userIds) {
+				Map<UUID, VisitedLocation> visitedLocations = super.getUserLocations(userIds);
+				visitedLocations.remove(missing.getUserId());
+				return visitedLocations;
+			}
+		};
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+
+		Map<UUID, VisitedLocation> locations = tourGuideService.trackAllUsersLocation(List.of(missing, located));
+		tourGuideService.tracker.stopTracking();
+
+		assertEquals(List.of(located.getUserId()), new ArrayList<>(locations.keySet()));
+		assertTrue(missing.getVisitedLocations().isEmpty());
+		assertEquals(1, located.getVisitedLocations().size());
+	}
+
+	@Test
+	public void internalUsersAreReproducible() {
+		Instant referenceTime = Instant.parse("2023-07-01T00:00:00Z");
+		List<User> users = new InternalUserGenerator(7, referenceTime, InternalUserGenerator.Initialization.EAGER)
+				.generate(1_000, RetentionPolicy.unbounded());
+		List<User> sameUsers = new InternalUserGenerator(7, referenceTime, InternalUserGenerator.Initialization.EAGER)
+				.generate(1_000, RetentionPolicy.unbounded());
+
+		for (int i = 0; i < users.size(); i++) {
+			User user = users.get(i);
+			assertEquals("internalUser" + i, user.getUserName());
+			assertEquals(user.getUserId(), sameUsers.get(i).getUserId());
+			assertEquals(3, user.getVisitedLocations().size());
+			assertEquals(user.getLastVisitedLocation().location.latitude, sameUsers.get(i).getLastVisitedLocation().location.latitude);
+			assertEquals(user.getLastVisitedLocation().timeVisited, sameUsers.get(i).getLastVisitedLocation().timeVisited);
+		}
+		assertEquals(1_000, users.stream().map(User::getUserId).distinct().count());
+	}
+
+	@Test
+	public void internalUsersCanBeGeneratedInTheBackground() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+		int internalUserNumber = InternalTestHelper.getInternalUserNumber();
+		InternalTestHelper.setInternalUserNumber(1_000);
+		TrackingEngine trackingEngine = new TrackingEngine();
+		TrackingPipeline trackingPipeline = new TrackingPipeline(trackingEngine);
+		try {
+			TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, new TripPricer(),
+					trackingEngine, trackingPipeline, new InMemoryUserRepository(), RetentionPolicy.unbounded(),
+					new InternalUserGenerator(7, InternalUserGenerator.Initialization.BACKGROUND), UserSnapshotStore.disabled(),
+					WriteAheadLog.disabled());
+			tourGuideService.tracker.stopTracking();
+
+			// the callers wait for the users being generated
+			assertEquals(1_000, tourGuideService.getAllUsers().size());
+			assertEquals("internalUser999", tourGuideService.getUser("internalUser999").getUserName());
+		} finally {
+			InternalTestHelper.setInternalUserNumber(internalUserNumber);
+			trackingPipeline.close();
+			trackingEngine.close();
+		}
+	}
+
+	@Test
+	public void aFailedBackgroundGenerationIsReportedToEveryCaller() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+		InternalTestHelper.setInternalUserNumber(0);
+		InternalUserGenerator failing = new InternalUserGenerator(7, InternalUserGenerator.Initialization.BACKGROUND) {
+			@Override
+			public List<User> generate(int count, RetentionPolicy retentionPolicy) {
+				throw new IllegalStateException("generation failed");
+			}
+		};
+		TrackingEngine trackingEngine = new TrackingEngine();
+		TrackingPipeline trackingPipeline = new TrackingPipeline(trackingEngine);
+		try {
+			TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, new TripPricer(),
+					trackingEngine, trackingPipeline, new InMemoryUserRepository(), RetentionPolicy.unbounded(),
+					failing, UserSnapshotStore.disabled(), WriteAheadLog.disabled());
+			tourGuideService.tracker.stopTracking();
+			User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+			UsersUnavailableException exception = assertThrows(UsersUnavailableException.class, tourGuideService::getAllUsers);
+
+			assertEquals("generation failed", exception.getCause().getMessage());
+			assertThrows(UsersUnavailableException.class, () -> tourGuideService.addUser(user));
+			assertThrows(UsersUnavailableException.class, () -> tourGuideService.getUser("jon"));
+			assertThrows(UsersUnavailableException.class, tourGuideService::getAllUsers);
+		} finally {
+			trackingPipeline.close();
+			trackingEngine.close();
+		}
+	}
+
 }
@@ -0,0 +1,71 @@
+package com.openclassrooms.tourguide;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.tourguide.export.UserExporter;
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserReward;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestUserExporter {
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final UserExporter userExporter = new UserExporter(objectMapper);
+
+	@Test
+	public void currentLocationsAreWrittenOneUserPerLine() throws IOException {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(1, 2), new Date(1_000L)));
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(3, 4), new Date(2_000L)));
+		User withoutLocation = new User(UUID.randomUUID(), "jane", "000", "jane@tourGuide.com");
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		int lineCount = userExporter.writeCurrentLocations(List.of(user, withoutLocation), output);
+
+		String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+		assertEquals(1, lineCount);
+		assertEquals(1, lines.length);
+		JsonNode line = objectMapper.readTree(lines[0]);
+		assertEquals(user.getUserId().toString(), line.get("userId").asText());
+		assertEquals(3.0, line.get("latitude").asDouble());
+		assertEquals(4.0, line.get("longitude").asDouble());
+		assertEquals(2_000L, line.get("timeVisited").asLong());
+	}
+
+	@Test
+	public void rewardsAreWrittenOneRewardPerLine() throws IOException {
+		List<User> users = List.of(new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com"),
+				new User(UUID.randomUUID(), "jane", "000", "jane@tourGuide.com"));
+		for (User user : users) {
+			for (int i = 0; i < 2; i++) {
+				Attraction attraction = new Attraction("attraction" + i, "city", "state", i, i);
+				user.restoreUserRewards(List.of(new UserReward(new VisitedLocation(user.getUserId(), attraction, new Date()), attraction, 100 + i)));
+			}
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		int lineCount = userExporter.writeRewards(users, output);
+
+		String export = output.toString(StandardCharsets.UTF_8);
+		assertEquals(4, lineCount);
+		assertTrue(export.endsWith("\n"));
+		String[] lines = export.split("\n");
+		assertEquals(4, lines.length);
+		JsonNode line = objectMapper.readTree(lines[3]);
+		assertEquals("jane", line.get("userName").asText());
+		assertEquals("attraction1", line.get("attractionName").asText());
+		assertEquals(101, line.get("rewardPoints").asInt());
+	}
+}
@@ -0,0 +1,51 @@
+package com.openclassrooms.tourguide;
+
+import com.openclassrooms.tourguide.repository.InMemoryUserRepository;
+import com.openclassrooms.tourguide.user.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestUserRepository {
+
+	@Test
+	public void addKeepsTheFirstUserWithAName() {
+		InMemoryUserRepository userRepository = new InMemoryUserRepository();
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		User sameName = new User(UUID.randomUUID(), "jon", "000", "jon2@tourGuide.com");
+
+		assertTrue(userRepository.add(user));
+		assertFalse(userRepository.add(sameName));
+
+		assertEquals(1, userRepository.size());
+		assertEquals(user, userRepository.findByName("jon").get());
+		assertEquals(user, userRepository.findById(user.getUserId()).get());
+		assertFalse(userRepository.findById(sameName.getUserId()).isPresent());
+	}
+
+	@Test
+	public void shardsHoldEveryUserOnce() {
+		InMemoryUserRepository userRepository = new InMemoryUserRepository(16);
+		for (int i = 0; i < 1000; i++) {
+			userRepository.add(new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com"));
+		}
+
+		Set<User> seen = new HashSet<>();
+		int count = 0;
+		for (int shard = 0; shard < 5; shard++) {
+			for (User user : userRepository.findShard(shard, 5)) {
+				seen.add(user);
+				count++;
+			}
+		}
+
+		assertEquals(1000, count);
+		assertEquals(1000, seen.size());
+	}
+}
@@ -0,0 +1,140 @@
+package com.openclassrooms.tourguide;
+
+import com.openclassrooms.tourguide.executor.BoundedExecutor;
+import com.openclassrooms.tourguide.gpsUtil.GpsUtil;
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.helper.InternalUserGenerator;
+import com.openclassrooms.tourguide.persistence.UserSnapshotStore;
+import com.openclassrooms.tourguide.persistence.WriteAheadLog;
+import com.openclassrooms.tourguide.repository.InMemoryUserRepository;
+import com.openclassrooms.tourguide.rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracker.TrackingEngine;
+import com.openclassrooms.tourguide.tracker.TrackingPipeline;
+import com.openclassrooms.tourguide.tripPricer.TripPricer;
+import com.openclassrooms.tourguide.user.RetentionPolicy;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserReward;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestUserSnapshotStore {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void usersAreRestoredAsSaved() throws IOException {
+		GpsUtil gpsUtil = new GpsUtil();
+		try (BoundedExecutor lookupExecutor = new BoundedExecutor("reward-points", 10, 10,
+				BoundedExecutor.RejectionPolicy.ABORT, Duration.ZERO)) {
+			RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+			Attraction attraction = rewardsService.getAttractionCatalog().get(0);
+			User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+			user.getUserPreferences().setTripDuration(4);
+			user.getUserPreferences().setNumberOfChildren(2);
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date(1_000L)));
+			rewardsService.calculateRewards(user);
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(1, 2), new Date(2_000L)));
+			User other = new User(UUID.randomUUID(), "jane", null, "jane@tourGuide.com");
+
+			UserSnapshotStore store = new UserSnapshotStore(directory.resolve("users.snapshot"), Duration.ZERO);
+			assertFalse(store.exists());
+			assertEquals(2, store.write(List.of(user, other)));
+			assertTrue(store.exists());
+			List<User> users = store.read(RetentionPolicy.unbounded(), rewardsService.getAttractionCatalog(),
+					rewardsService.getCatalogVersion());
+
+			assertEquals(2, users.size());
+			User restored = users.get(0);
+			assertEquals(user.getUserId(), restored.getUserId());
+			assertEquals("jon@tourGuide.com", restored.getEmailAddress());
+			assertEquals(4, restored.getUserPreferences().getTripDuration());
+			assertEquals(2, restored.getUserPreferences().getNumberOfChildren());
+			assertEquals(2, restored.getVisitedLocations().size());
+			assertEquals(2_000L, restored.getLastVisitedLocation().timeVisited.getTime());
+			assertEquals(2.0, restored.getLastVisitedLocation().location.longitude);
+
+			assertEquals(1, restored.getUserRewards().size());
+			UserReward reward = restored.getUserRewards().get(0);
+			assertSame(attraction, reward.attraction);
+			assertEquals(user.getRewardPoints(), restored.getRewardPoints());
+			assertEquals(user.getUserRewards().get(0).getRewardPoints(), reward.getRewardPoints());
+
+			// the point at the attraction was already checked, only the new one is checked again
+			rewardsService.calculateRewards(restored);
+			assertEquals(1, restored.getUserRewards().size());
+
+			assertEquals("jane", users.get(1).getUserName());
+			assertNull(users.get(1).getPhoneNumber());
+			assertTrue(users.get(1).getVisitedLocations().isEmpty());
+		}
+	}
+
+	@Test
+	public void shutdownStopsTheSnapshotsAndSavesTheUsers() throws IOException, InterruptedException {
+		GpsUtil gpsUtil = new GpsUtil();
+		InternalTestHelper.setInternalUserNumber(0);
+		Path path = directory.resolve("users.snapshot");
+		UserSnapshotStore store = new UserSnapshotStore(path, Duration.ofMillis(50));
+		TrackingEngine trackingEngine = new TrackingEngine();
+		TrackingPipeline trackingPipeline = new TrackingPipeline(trackingEngine);
+		try (BoundedExecutor lookupExecutor = new BoundedExecutor("reward-points", 10, 10,
+				BoundedExecutor.RejectionPolicy.ABORT, Duration.ZERO)) {
+			RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), lookupExecutor);
+			TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, new TripPricer(),
+					trackingEngine, trackingPipeline, new InMemoryUserRepository(),
+					RetentionPolicy.unbounded(), new InternalUserGenerator(), store, WriteAheadLog.disabled());
+			tourGuideService.addUser(new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com"));
+
+			tourGuideService.shutdown();
+
+			// the final snapshot has the user added since the last periodic one
+			assertEquals(1, store.read(RetentionPolicy.unbounded(), rewardsService.getAttractionCatalog(),
+					rewardsService.getCatalogVersion()).size());
+			Files.delete(path);
+			Thread.sleep(200);
+			assertFalse(store.exists());
+			// a second shutdown, e.g. by the JVM shutdown hook, does nothing
+			tourGuideService.shutdown();
+			assertFalse(store.exists());
+		} finally {
+			trackingPipeline.close();
+			trackingEngine.close();
+		}
+	}
+
+	@Test
+	public void truncatedSnapshotIsRejected() throws IOException {
+		Path path = directory.resolve("users.snapshot");
+		UserSnapshotStore store = new UserSnapshotStore(path, Duration.ZERO);
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(1, 2), new Date()));
+		store.write(List.of(user));
+
+		byte[] bytes = Files.readAllBytes(path);
+		Files.write(path, Arrays.copyOf(bytes, bytes.length - 4));
+
+		assertThrows(IOException.class, () -> store.read(RetentionPolicy.unbounded(), List.of(), 0));
+	}
+}
@@ -0,0 +1,127 @@
+package com.openclassrooms.tourguide;
+
+import com.openclassrooms.tourguide.gpsUtil.location.Attraction;
+import com.openclassrooms.tourguide.gpsUtil.location.Location;
+import com.openclassrooms.tourguide.gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.persistence.WriteAheadLog;
+import com.openclassrooms.tourguide.repository.InMemoryUserRepository;
+import com.openclassrooms.tourguide.user.RetentionPolicy;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserReward;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestWriteAheadLog {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void changesAreReplayedAfterARestart() throws Exception {
+		Attraction attraction = new Attraction("Disneyland", "Anaheim", "CA", 33.817595, -117.922008);
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		WriteAheadLog log = open();
+		log.appendUser(user);
+		// the tracker threads append concurrently, each user in order
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int thread = 0; thread < 4; thread++) {
+			UUID userId = thread == 0 ? user.getUserId() : UUID.randomUUID();
+			executor.submit(() -> {
+				for (int i = 0; i < 1000; i++) {
+					log.appendVisitedLocation(new VisitedLocation(userId, new Location(i / 100.0, 0), new Date(1_000L * (i + 1))));
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		log.appendUserReward(user.getUserId(), new UserReward(
+				new VisitedLocation(user.getUserId(), attraction, new Date(1_000L)), attraction, 250));
+		log.sync();
+		log.close();
+
+		WriteAheadLog restarted = open();
+		InMemoryUserRepository repository = new InMemoryUserRepository();
+		int recordCount = restarted.replay(repository, RetentionPolicy.unbounded(), List.of(attraction));
+		restarted.close();
+
+		// the locations of the users unknown to the repository are skipped
+		assertEquals(1 + 1000 + 1, recordCount);
+		User replayed = repository.findById(user.getUserId()).orElseThrow();
+		assertEquals("jon@tourGuide.com", replayed.getEmailAddress());
+		assertEquals(1000, replayed.getVisitedLocations().size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(1_000L * (i + 1), replayed.getVisitedLocations().get(i).timeVisited.getTime());
+		}
+		assertSame(attraction, replayed.getUserRewards().get(0).attraction);
+		assertEquals(250, replayed.getRewardPoints());
+	}
+
+	@Test
+	public void changesAlreadySavedAreNotAppliedTwice() throws IOException {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		WriteAheadLog log = open();
+		VisitedLocation saved = new VisitedLocation(user.getUserId(), new Location(1, 1), new Date(1_000L));
+		user.addToVisitedLocations(saved);
+		log.appendVisitedLocation(saved);
+		long segment = log.roll();
+		VisitedLocation notSaved = new VisitedLocation(user.getUserId(), new Location(2, 2), new Date(2_000L));
+		log.appendVisitedLocation(notSaved);
+		log.close();
+		// once the users are saved the segments before the roll are deleted
+		assertEquals(1, log.deleteSegmentsBefore(segment));
+
+		WriteAheadLog restarted = open();
+		InMemoryUserRepository repository = new InMemoryUserRepository();
+		repository.add(user);
+		assertEquals(1, restarted.replay(repository, RetentionPolicy.unbounded(), List.of()));
+		restarted.close();
+
+		assertEquals(2, user.getVisitedLocations().size());
+		assertEquals(2_000L, user.getLastVisitedLocation().timeVisited.getTime());
+	}
+
+	@Test
+	public void replayStopsAtATruncatedRecord() throws IOException {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		WriteAheadLog log = open();
+		for (int i = 0; i < 3; i++) {
+			log.appendVisitedLocation(new VisitedLocation(user.getUserId(), new Location(i, i), new Date(1_000L * (i + 1))));
+		}
+		log.close();
+		Path segment;
+		try (Stream<Path> segments = Files.list(directory)) {
+			segment = segments.findFirst().orElseThrow();
+		}
+		byte[] bytes = Files.readAllBytes(segment);
+		Files.write(segment, Arrays.copyOf(bytes, bytes.length - 1));
+
+		WriteAheadLog restarted = open();
+		InMemoryUserRepository repository = new InMemoryUserRepository();
+		repository.add(user);
+		assertEquals(2, restarted.replay(repository, RetentionPolicy.unbounded(), List.of()));
+		restarted.close();
+
+		assertEquals(2, user.getVisitedLocations().size());
+	}
+
+	private WriteAheadLog open() throws IOException {
+		return new WriteAheadLog(directory, 1 << 20, 4096, WriteAheadLog.FsyncPolicy.INTERVAL, Duration.ofMillis(10));
+	}
+}